@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+/**
+ * Destination limit for a JesqueJobTransporter that follows how fast the destination queue is being worked.
+ * At the start of every transporter run the jobs consumed since the end of the previous run are divided by the time
+ * between the runs, and the drain rate is smoothed with an exponentially weighted moving average.  The limit is then
+ * enough jobs to keep the workers busy for bufferSeconds, kept within minLimit and maxLimit.
+ * When the destination queue ran empty the measured rate is only a lower bound (workers were starved), so the
+ * estimate is doubled until the queue no longer empties between runs.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class AdaptiveDestinationLimit {
+  private final double bufferSeconds;
+  private final int minLimit;
+  private final int maxLimit;
+  private double smoothing = 0.5;
+
+  private double jobsPerSecond = -1;
+  private long lastDepth = -1;
+  private long lastRunEndedAt;
+  private int limit;
+
+  /**
+   * @param bufferSeconds seconds of work the destination queue should hold after a transporter run
+   * @param minLimit smallest limit used, also the limit until a drain rate has been measured
+   * @param maxLimit largest limit used, keeps enough jobs at the source to rebalance
+   */
+  public AdaptiveDestinationLimit(double bufferSeconds, int minLimit, int maxLimit) {
+    if (bufferSeconds <= 0 || minLimit < 1 || maxLimit < minLimit) {
+      throw new IllegalArgumentException("AdaptiveDestinationLimit needs bufferSeconds > 0 and 1 <= minLimit <= "
+          + "maxLimit, was " + bufferSeconds + ", " + minLimit + ", " + maxLimit + ".");
+    }
+    this.bufferSeconds = bufferSeconds;
+    this.minLimit = minLimit;
+    this.maxLimit = maxLimit;
+    this.limit = minLimit;
+  }
+
+  /**
+   * @param smoothing weight of the newest drain rate sample, between 0 (exclusive) and 1.  Default 0.5.
+   */
+  public void setSmoothing(double smoothing) {
+    if (smoothing <= 0 || smoothing > 1) {
+      throw new IllegalArgumentException("smoothing must be in (0, 1], was " + smoothing + ".");
+    }
+    this.smoothing = smoothing;
+  }
+
+  public double getSmoothing() {
+    return smoothing;
+  }
+
+  public double getBufferSeconds() {
+    return bufferSeconds;
+  }
+
+  public int getMinLimit() {
+    return minLimit;
+  }
+
+  public int getMaxLimit() {
+    return maxLimit;
+  }
+
+  /**
+   * @return smoothed jobs/second the destination queue drains at, or -1 until the first measurement
+   */
+  public synchronized double getJobsPerSecond() {
+    return jobsPerSecond;
+  }
+
+  /**
+   * @return the limit calculated at the start of the latest run
+   */
+  public synchronized int getLimit() {
+    return limit;
+  }
+
+  /**
+   * Called at the start of a transporter run.
+   * @param destDepth destination queue depth now
+   * @param now current time millis
+   * @return destination limit to use for this run
+   */
+  public synchronized int startRun(long destDepth, long now) {
+    long elapsedMillis = now - lastRunEndedAt;
+    if (lastDepth >= 0 && elapsedMillis > 0) {
+      // jobs pushed to the destination by someone else are not counted as drained
+      double sample = Math.max(0L, lastDepth - destDepth) * 1000d / elapsedMillis;
+      if (destDepth == 0 && lastDepth > 0) {
+        sample = Math.max(sample, jobsPerSecond) * 2;
+      }
+      jobsPerSecond = (jobsPerSecond < 0) ? sample : smoothing * sample + (1 - smoothing) * jobsPerSecond;
+      limit = (int) Math.max(minLimit, Math.min(maxLimit, Math.ceil(jobsPerSecond * bufferSeconds)));
+    }
+    return limit;
+  }
+
+  /**
+   * Called at the end of a transporter run.
+   * @param destDepth destination queue depth after the jobs were moved
+   * @param now current time millis
+   */
+  public synchronized void endRun(long destDepth, long now) {
+    lastDepth = destDepth;
+    lastRunEndedAt = now;
+  }
+}
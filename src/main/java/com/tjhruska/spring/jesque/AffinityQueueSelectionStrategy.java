@@ -0,0 +1,159 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * Queue selection for a node receiving jobs through an AffinityRouter.  The node's own queue is always tried first,
+ * then the shared overflow queue.  Every other queue the workers are subscribed to is a peer node's queue, and is only
+ * polled while it holds at least stealThreshold jobs, deepest first, so a node steals work only from peers that fell
+ * behind and otherwise leaves their jobs (and cache hits) to them.
+ * Peer depths are read with one pipelined LLEN round trip, and shared by all workers using this strategy for
+ * depthRefreshMillis.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class AffinityQueueSelectionStrategy implements QueueSelectionStrategy {
+  private final String ownQueue;
+  private final String overflowQueue;
+  private long stealThreshold = 100L;
+  private long depthRefreshMillis = 1000L;
+
+  private volatile Map<String, Long> depths = Collections.emptyMap();
+  private volatile long depthsReadAt;
+
+  /**
+   * @param ownQueue queue the AffinityRouter sends this node's keys to
+   * @param overflowQueue queue shared by every node, may be null
+   */
+  public AffinityQueueSelectionStrategy(String ownQueue, String overflowQueue) {
+    this.ownQueue = ownQueue;
+    this.overflowQueue = overflowQueue;
+  }
+
+  public String getOwnQueue() {
+    return ownQueue;
+  }
+
+  public String getOverflowQueue() {
+    return overflowQueue;
+  }
+
+  public long getStealThreshold() {
+    return stealThreshold;
+  }
+
+  /**
+   * @param stealThreshold depth a peer queue needs before this node takes jobs from it
+   */
+  public void setStealThreshold(long stealThreshold) {
+    this.stealThreshold = stealThreshold;
+  }
+
+  public long getDepthRefreshMillis() {
+    return depthRefreshMillis;
+  }
+
+  /**
+   * @param depthRefreshMillis how long peer queue depths are reused before being read again
+   */
+  public void setDepthRefreshMillis(long depthRefreshMillis) {
+    this.depthRefreshMillis = depthRefreshMillis;
+  }
+
+  @Override
+  public List<String> selectQueues(List<String> queueNames, Jedis jedis, String namespace) {
+    List<String> peers = new ArrayList<String>(queueNames.size());
+    for (String queueName : queueNames) {
+      if (!queueName.equals(ownQueue) && !queueName.equals(overflowQueue)) {
+        peers.add(queueName);
+      }
+    }
+    Map<String, Long> current = depths;
+    if (!peers.isEmpty()
+        && (System.currentTimeMillis() - depthsReadAt >= depthRefreshMillis || !current.keySet().containsAll(peers))) {
+      current = readDepths(peers, jedis, namespace);
+      depths = current;
+      depthsReadAt = System.currentTimeMillis();
+    }
+    return order(queueNames, ownQueue, overflowQueue, current, stealThreshold);
+  }
+
+  private Map<String, Long> readDepths(List<String> peers, Jedis jedis, String namespace) {
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<Long>> responses = new ArrayList<Response<Long>>(peers.size());
+    for (String peer : peers) {
+      responses.add(pipeline.llen(JesqueUtils.createKey(namespace, QUEUE, peer)));
+    }
+    pipeline.sync();
+
+    Map<String, Long> read = new HashMap<String, Long>();
+    for (int i = 0; i < peers.size(); i++) {
+      read.put(peers.get(i), responses.get(i).get());
+    }
+    return read;
+  }
+
+  /**
+   * @return own queue and overflow queue (if subscribed), then the peers at or above stealThreshold deepest first
+   */
+  static List<String> order(List<String> queueNames, String ownQueue, String overflowQueue,
+      final Map<String, Long> depths, long stealThreshold) {
+    List<String> ordered = new ArrayList<String>(queueNames.size());
+    if (queueNames.contains(ownQueue)) {
+      ordered.add(ownQueue);
+    }
+    if (overflowQueue != null && queueNames.contains(overflowQueue)) {
+      ordered.add(overflowQueue);
+    }
+    List<String> backlogged = new ArrayList<String>();
+    for (String queueName : queueNames) {
+      if (!ordered.contains(queueName) && depthOf(depths, queueName) >= stealThreshold) {
+        backlogged.add(queueName);
+      }
+    }
+    Collections.sort(backlogged, new Comparator<String>() {
+      @Override
+      public int compare(String a, String b) {
+        return Long.compare(depthOf(depths, b), depthOf(depths, a));
+      }
+    });
+    ordered.addAll(backlogged);
+    return ordered;
+  }
+
+  private static long depthOf(Map<String, Long> depths, String queueName) {
+    Long depth = depths.get(queueName);
+    return depth == null ? 0L : depth;
+  }
+}
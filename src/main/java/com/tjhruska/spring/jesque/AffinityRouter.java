@@ -0,0 +1,105 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+
+/**
+ * Routes jobs to node specific queues by an affinity key (eg: a tenant id), so every job for a key is run by the same
+ * node and finds that key's reference data in the node's caches.  Keys are mapped by consistent hashing, adding or
+ * removing one of n node queues only moves about 1/n of the keys.  Jobs without a key go to the shared overflow queue.
+ * Pair with an AffinityQueueSelectionStrategy on each node, so nodes that fall behind get help from the others.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class AffinityRouter {
+  private final ConsistentHashRing<String> ring;
+  private final String overflowQueue;
+  private int keyArgIndex = 1;
+
+  /**
+   * @param nodeQueues one queue per node, names must be unique
+   * @param overflowQueue queue shared by every node, for jobs without an affinity key
+   */
+  public AffinityRouter(List<String> nodeQueues, String overflowQueue) {
+    this(nodeQueues, overflowQueue, 160);
+  }
+
+  /**
+   * @param nodeQueues one queue per node, names must be unique
+   * @param overflowQueue queue shared by every node, for jobs without an affinity key
+   * @param virtualNodes points per node queue on the hash ring
+   */
+  public AffinityRouter(List<String> nodeQueues, String overflowQueue, int virtualNodes) {
+    Map<String, String> nodes = new LinkedHashMap<String, String>();
+    for (String nodeQueue : nodeQueues) {
+      nodes.put(nodeQueue, nodeQueue);
+    }
+    this.ring = new ConsistentHashRing<String>(nodes, virtualNodes);
+    this.overflowQueue = overflowQueue;
+  }
+
+  /**
+   * @param keyArgIndex index of the job argument used as affinity key, default 1 (the first BeanJob argument after
+   *          the bean id)
+   */
+  public void setKeyArgIndex(int keyArgIndex) {
+    this.keyArgIndex = keyArgIndex;
+  }
+
+  public int getKeyArgIndex() {
+    return keyArgIndex;
+  }
+
+  public String getOverflowQueue() {
+    return overflowQueue;
+  }
+
+  /**
+   * @param affinityKey key whose jobs should share a node, or null
+   * @return the node queue owning the key, or the overflow queue for a null key
+   */
+  public String getQueue(String affinityKey) {
+    return affinityKey == null ? overflowQueue : ring.get(affinityKey);
+  }
+
+  /**
+   * @return the queue for the job's affinity key argument, or the overflow queue if the job has none
+   */
+  public String getQueue(Job job) {
+    Object[] args = job.getArgs();
+    return getQueue((args == null || args.length <= keyArgIndex || args[keyArgIndex] == null) ? null : String
+        .valueOf(args[keyArgIndex]));
+  }
+
+  /**
+   * Enqueue a job on the queue of its affinity key.
+   * @return the queue the job was enqueued on
+   */
+  public String enqueue(Client client, Job job) {
+    String queue = getQueue(job);
+    client.enqueue(queue, job);
+    return queue;
+  }
+}
@@ -16,14 +16,28 @@
 
 package com.tjhruska.spring.jesque;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
 import net.greghaines.jesque.worker.JobFactory;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.BeansException;
 import org.springframework.context.ApplicationContext;
 import org.springframework.context.ApplicationContextAware;
+import org.springframework.core.annotation.AnnotationUtils;
 
 /**
  * BeanJobFactory converts a Job object back to the runnable job, if the job was
@@ -37,11 +51,22 @@ import org.springframework.context.ApplicationContextAware;
  *
  */
 public class BeanJobFactory implements JobFactory, ApplicationContextAware {
+  private static final Logger log = LoggerFactory.getLogger(BeanJobFactory.class);
+
+  public static final String BEAN_JOB_CLASS_NAME = "com.tjhruska.spring.jesque.BeanJob";
 
   ApplicationContext context;
   JobFactory fallbackJobFactory;
   boolean addLoggingProxy;
 
+  private final ConcurrentMap<String, Boolean> batchBeanIds = new ConcurrentHashMap<String, Boolean>();
+  private List<JobAdmissionPolicy> admissionPolicies = Collections.emptyList();
+  private Map<String, RetryPolicy> retryPolicies = Collections.emptyMap();
+  private Map<String, Long> timeouts = Collections.emptyMap();
+  private long timeoutGraceMillis = 5000L;
+  private final ConcurrentMap<String, Long> beanTimeouts = new ConcurrentHashMap<String, Long>();
+  private ClaimCheckStore claimCheckStore;
+
   /**
    * Construct a BeanJobFactory that can only materialize BeanJobs. Bean jobs
    * must implement either Runnable, Callable, or RunnableWithInit.
@@ -105,6 +130,113 @@ public class BeanJobFactory implements JobFactory, ApplicationContextAware {
     return fallbackJobFactory;
   }
 
+  public List<JobAdmissionPolicy> getAdmissionPolicies() {
+    return admissionPolicies;
+  }
+
+  /**
+   * Policies (eg: RateLimitAdmissionPolicy) checked in order before a bean job is materialized. A bean job that is
+   * not admitted is returned as a DeferredJob, which WorkerWithQueueStrategy puts back on its queue instead of
+   * running. Batches materialized through materializeBatch() are not checked.
+   *
+   * @param admissionPolicies
+   *          checked for every bean job
+   */
+  public void setAdmissionPolicies(List<JobAdmissionPolicy> admissionPolicies) {
+    this.admissionPolicies = admissionPolicies;
+  }
+
+  public Map<String, RetryPolicy> getRetryPolicies() {
+    return retryPolicies;
+  }
+
+  /**
+   * Failed jobs of these beans are rescheduled through the delayed queue by WorkerWithQueueStrategy (and
+   * WorkerPooled) until their policy runs out of attempts, only then are they recorded as failed.
+   *
+   * @param retryPolicies
+   *          retry policy by bean id
+   */
+  public void setRetryPolicies(Map<String, RetryPolicy> retryPolicies) {
+    this.retryPolicies = retryPolicies;
+  }
+
+  /**
+   * @param job
+   *          any job
+   * @return the retry policy of the job's bean, or null if the job is not a BeanJob or its bean has none
+   */
+  public RetryPolicy getRetryPolicy(Job job) {
+    if (!isBeanJob(job) || job.getArgs() == null || job.getArgs().length < 1) {
+      return null;
+    }
+    return retryPolicies.get(job.getArgs()[0]);
+  }
+
+  public Map<String, Long> getTimeouts() {
+    return timeouts;
+  }
+
+  /**
+   * Jobs of these beans are interrupted by JobWatchdog once they run longer than their timeout, and fail with a
+   * JobTimeoutException. Takes precedence over a JobTimeout annotation on the bean class. Batches materialized
+   * through materializeBatch() are not timed.
+   *
+   * @param timeouts
+   *          timeout in millis by bean id
+   */
+  public void setTimeouts(Map<String, Long> timeouts) {
+    this.timeouts = timeouts;
+    beanTimeouts.clear();
+  }
+
+  public long getTimeoutGraceMillis() {
+    return timeoutGraceMillis;
+  }
+
+  /**
+   * @param timeoutGraceMillis
+   *          how long a timed out job may ignore its interrupt before JesqueContainer replaces its worker
+   */
+  public void setTimeoutGraceMillis(long timeoutGraceMillis) {
+    this.timeoutGraceMillis = timeoutGraceMillis;
+  }
+
+  /**
+   * @param beanId
+   *          job bean
+   * @return timeout in millis from setTimeouts() or the bean's JobTimeout annotation, or 0 if the bean has none
+   */
+  public long getTimeoutMillis(String beanId) {
+    Long timeout = beanTimeouts.get(beanId);
+    if (timeout == null) {
+      timeout = timeouts.get(beanId);
+      if (timeout == null) {
+        Class<?> type = context.containsBean(beanId) ? context.getType(beanId) : null;
+        JobTimeout annotation = (type == null) ? null : AnnotationUtils.findAnnotation(type, JobTimeout.class);
+        timeout = (annotation == null) ? 0L : annotation.value();
+      }
+      beanTimeouts.put(beanId, timeout);
+    }
+    return timeout;
+  }
+
+  public ClaimCheckStore getClaimCheckStore() {
+    return claimCheckStore;
+  }
+
+  /**
+   * Arguments stored aside by this ClaimCheckStore are fetched right before the bean's init, so jobs that are not
+   * admitted never fetch them, and are deleted once the job succeeded. Batches fetch their arguments, but leave
+   * them to expire.
+   *
+   * @param claimCheckStore
+   *          store the enqueuing clients checked arguments into
+   */
+  public void setClaimCheckStore(ClaimCheckStore claimCheckStore) {
+    this.claimCheckStore = claimCheckStore;
+  }
+
   public boolean getAddLoggingProxy() {
     return addLoggingProxy;
   }
@@ -117,9 +249,10 @@ public class BeanJobFactory implements JobFactory, ApplicationContextAware {
   @Override
   public Object materializeJob(Job job) throws Exception {
     Object returnJob = null;
-    if (!job.getClassName().equals("com.tjhruska.spring.jesque.BeanJob") && fallbackJobFactory != null) {
+    List<JobPermit> permits = Collections.emptyList();
+    if (!isBeanJob(job) && fallbackJobFactory != null) {
       returnJob = fallbackJobFactory.materializeJob(job);
-    } else if (!job.getClassName().equals("com.tjhruska.spring.jesque.BeanJob")) {
+    } else if (!isBeanJob(job)) {
       throw new RuntimeException(
           "BeanJobFactory only knows how to materialize BeanJob bean jobs.  If you also want to load non bean based jobs then inject a fallbackJobFactory to handle those.");
     } else {
@@ -129,19 +262,34 @@ public class BeanJobFactory implements JobFactory, ApplicationContextAware {
       }
 
       String jobName = (String) job.getArgs()[0];
-      returnJob = context.getBean(jobName);
 
-      Object[] remaining = new Object[job.getArgs().length - 1];
-      for (int i = 0; i < job.getArgs().length - 1; i++) {
-        remaining[i] = job.getArgs()[i + 1];
+      if (!admissionPolicies.isEmpty()) {
+        permits = new ArrayList<JobPermit>(admissionPolicies.size());
+        JobAdmissionPolicy deniedBy = admit(jobName, job, permits);
+        if (deniedBy != null) {
+          return new DeferredJob(job, deniedBy.getDeferMillis(jobName), deniedBy.getClass().getSimpleName()
+              + " did not admit bean " + jobName);
+        }
       }
 
-      if (returnJob instanceof RunnableWithInit) {
-        ((RunnableWithInit) returnJob).init(remaining);
-      } else if (remaining.length > 0) {
-        throw new RuntimeException(
-            "Variable arguments passed into BeanJob required bean implement RunnableWithInit interface, bean "
-                + jobName + " doesn't.");
+      try {
+        returnJob = context.getBean(jobName);
+
+        Object[] remaining = getBeanArgs(job);
+        if (claimCheckStore != null) {
+          remaining = claimCheckStore.resolve(job, remaining);
+        }
+
+        if (returnJob instanceof RunnableWithInit) {
+          ((RunnableWithInit) returnJob).init(remaining);
+        } else if (remaining.length > 0) {
+          throw new RuntimeException(
+              "Variable arguments passed into BeanJob required bean implement RunnableWithInit interface, bean "
+                  + jobName + " doesn't.");
+        }
+      } catch (RuntimeException e) {
+        releaseAll(permits);
+        throw e;
       }
     }
 
@@ -153,9 +301,160 @@ public class BeanJobFactory implements JobFactory, ApplicationContextAware {
       returnJob = new LoggingProxyCallable((Callable) returnJob);
     }
 
+    if (isBeanJob(job)) {
+      String jobName = (String) job.getArgs()[0];
+      long timeoutMillis = getTimeoutMillis(jobName);
+      if (timeoutMillis > 0) {
+        returnJob = new TimeoutProxy(returnJob, timeoutMillis, timeoutGraceMillis, jobName);
+      }
+      if (claimCheckStore != null && ClaimCheckStore.hasClaimChecks(job)) {
+        returnJob = new ClaimCheckReleasingProxy(returnJob, claimCheckStore, job);
+      }
+    }
+
+    if (!permits.isEmpty()) {
+      returnJob = new PermitReleasingProxy(returnJob, permits);
+    }
+
+    return returnJob;
+  }
+
+  /**
+   * Materialize a single bean that will process all of the given jobs in one run. All jobs must be BeanJobs
+   * for the same bean, and that bean must implement RunnableWithBatchInit.
+   *
+   * @param jobs
+   *          consecutive jobs popped for the same bean
+   * @return bean initialized with the arguments of every job, in the order of jobs
+   */
+  public RunnableWithBatchInit materializeBatch(List<Job> jobs) {
+    if (jobs.isEmpty()) {
+      throw new RuntimeException("BeanJobFactory can't materialize an empty batch.");
+    }
+    String jobName = getBatchBeanId(jobs.get(0));
+    if (jobName == null) {
+      throw new RuntimeException("Batched BeanJob requires bean implement RunnableWithBatchInit interface, bean "
+          + jobs.get(0).getArgs()[0] + " doesn't.");
+    }
+
+    List<Object[]> batchArgs = new ArrayList<Object[]>(jobs.size());
+    for (Job job : jobs) {
+      if (!jobName.equals(getBatchBeanId(job))) {
+        throw new RuntimeException("All jobs in a batch must be BeanJobs for bean " + jobName + ".");
+      }
+      batchArgs.add(claimCheckStore == null ? getBeanArgs(job) : claimCheckStore.resolve(job, getBeanArgs(job)));
+    }
+
+    RunnableWithBatchInit returnJob = (RunnableWithBatchInit) context.getBean(jobName);
+    returnJob.initBatch(batchArgs);
     return returnJob;
   }
 
+  /**
+   * @param job
+   *          raw job popped from a queue
+   * @return the bean id if the job is a BeanJob whose bean implements RunnableWithBatchInit, otherwise null
+   */
+  public String getBatchBeanId(Job job) {
+    if (!isBeanJob(job) || job.getArgs() == null || job.getArgs().length < 1 || !(job.getArgs()[0] instanceof String)) {
+      return null;
+    }
+    String jobName = (String) job.getArgs()[0];
+    Boolean batch = batchBeanIds.get(jobName);
+    if (batch == null) {
+      Class<?> type = context.containsBean(jobName) ? context.getType(jobName) : null;
+      batch = type != null && RunnableWithBatchInit.class.isAssignableFrom(type);
+      batchBeanIds.put(jobName, batch);
+    }
+    return batch ? jobName : null;
+  }
+
+  /**
+   * Instantiate job beans before the first jobs need them, so bean creation, dependency injection, and class loading
+   * are not paid by the first jobs after a deploy. Beans implementing RunnableWithInit or RunnableWithBatchInit are
+   * found by type, plain Runnable and Callable job beans have to be listed. Beans that fail to instantiate are
+   * logged and skipped, the job will fail the same way when it runs.
+   *
+   * @param beanIds
+   *          additional job beans to warm up
+   * @return names of the beans instantiated
+   */
+  public List<String> warmUp(Collection<String> beanIds) {
+    Set<String> names = new LinkedHashSet<String>();
+    names.addAll(Arrays.asList(context.getBeanNamesForType(RunnableWithInit.class, true, false)));
+    names.addAll(Arrays.asList(context.getBeanNamesForType(RunnableWithBatchInit.class, true, false)));
+    names.addAll(beanIds);
+
+    List<String> warmed = new ArrayList<String>(names.size());
+    for (String name : names) {
+      try {
+        context.getBean(name);
+        getBatchBeanId(new BeanJob(name));
+        warmed.add(name);
+      } catch (RuntimeException e) {
+        log.warn("Unable to warm up job bean " + name, e);
+      }
+    }
+    try {
+      // first use of the mapper builds its serializers
+      ObjectMapperFactory.get().readValue(ObjectMapperFactory.get().writeValueAsString(new BeanJob("warmUp", 1)),
+          Job.class);
+    } catch (Exception e) {
+      log.warn("Unable to warm up job serialization", e);
+    }
+    return warmed;
+  }
+
+  /**
+   * @return the policy that did not admit the job, or null if all did and their permits were added to permits
+   */
+  private JobAdmissionPolicy admit(String jobName, Job job, List<JobPermit> permits) {
+    try {
+      for (JobAdmissionPolicy admissionPolicy : admissionPolicies) {
+        JobPermit permit = admissionPolicy.tryAcquire(jobName, job);
+        if (permit == null) {
+          releaseAll(permits);
+          return admissionPolicy;
+        }
+        if (permit != JobPermit.NONE) {
+          permits.add(permit);
+        }
+      }
+      return null;
+    } catch (RuntimeException e) {
+      releaseAll(permits);
+      throw e;
+    }
+  }
+
+  static void releaseAll(List<JobPermit> permits) {
+    for (JobPermit permit : permits) {
+      permit.release();
+    }
+  }
+
+  /**
+   * @param job
+   *          any job
+   * @return true if the job was enqueued as a BeanJob
+   */
+  public static boolean isBeanJob(Job job) {
+    return BEAN_JOB_CLASS_NAME.equals(job.getClassName());
+  }
+
+  /**
+   * @param job
+   *          a BeanJob
+   * @return the job arguments following the bean name
+   */
+  static Object[] getBeanArgs(Job job) {
+    Object[] remaining = new Object[job.getArgs().length - 1];
+    for (int i = 0; i < job.getArgs().length - 1; i++) {
+      remaining[i] = job.getArgs()[i + 1];
+    }
+    return remaining;
+  }
+
   @Override
   public void setApplicationContext(ApplicationContext applicationContext) throws BeansException {
     this.context = applicationContext;
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.greghaines.jesque.Job;
+
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+/**
+ * Bulkheads between the bean types sharing the workers of a JesqueContainer.  Each bean in maxConcurrent may occupy
+ * at most that many workers at once, so a slow bean can not tie up every worker and starve the faster jobs on the
+ * same queues.  Jobs over their limit are deferred (see JobAdmissionPolicy) and the worker moves on.
+ * Counts are kept in memory, so give the BeanJobFactory of each container its own policy to bulkhead each container
+ * separately, or share one policy for limits across the containers of a JVM.  For limits across nodes see
+ * ConcurrencyLimitAdmissionPolicy.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+@ManagedResource(description = "Per bean limits on the workers a job type may occupy")
+public class BulkheadAdmissionPolicy implements JobAdmissionPolicy {
+  private Map<String, Integer> maxConcurrent = Collections.emptyMap();
+  private long deferMillis = 500L;
+
+  private final ConcurrentMap<String, AtomicInteger> running = new ConcurrentHashMap<String, AtomicInteger>();
+  private final ConcurrentMap<String, AtomicLong> rejected = new ConcurrentHashMap<String, AtomicLong>();
+
+  /**
+   * @param maxConcurrent number of workers allowed to run a bean at once per bean id, beans not in the map are not
+   *          limited
+   */
+  public void setMaxConcurrent(Map<String, Integer> maxConcurrent) {
+    for (Map.Entry<String, Integer> entry : maxConcurrent.entrySet()) {
+      if (entry.getValue() == null || entry.getValue() < 1) {
+        throw new IllegalArgumentException("Bulkhead for bean '" + entry.getKey() + "' must be at least 1.");
+      }
+    }
+    this.maxConcurrent = new HashMap<String, Integer>(maxConcurrent);
+  }
+
+  @ManagedAttribute(description = "Workers a bean may occupy by bean id")
+  public Map<String, Integer> getMaxConcurrent() {
+    return new TreeMap<String, Integer>(maxConcurrent);
+  }
+
+  /**
+   * @param deferMillis how long a job over its bulkhead waits in the delayed queue before it is tried again, 0 puts
+   *          it straight back at the end of its queue
+   */
+  public void setDeferMillis(long deferMillis) {
+    this.deferMillis = deferMillis;
+  }
+
+  @Override
+  public long getDeferMillis(String beanId) {
+    return deferMillis;
+  }
+
+  @Override
+  public JobPermit tryAcquire(String beanId, Job job) {
+    Integer limit = maxConcurrent.get(beanId);
+    if (limit == null) {
+      return JobPermit.NONE;
+    }
+    final AtomicInteger count = runningCount(beanId);
+    while (true) {
+      int current = count.get();
+      if (current >= limit) {
+        rejectedCount(beanId).incrementAndGet();
+        return null;
+      }
+      if (count.compareAndSet(current, current + 1)) {
+        break;
+      }
+    }
+    final AtomicBoolean released = new AtomicBoolean();
+    return new JobPermit() {
+      @Override
+      public void release() {
+        if (released.compareAndSet(false, true)) {
+          count.decrementAndGet();
+        }
+      }
+    };
+  }
+
+  /**
+   * @return jobs running per bulkheaded bean id
+   */
+  @ManagedAttribute(description = "Running jobs by bulkheaded bean id")
+  public Map<String, Integer> getOccupancy() {
+    Map<String, Integer> occupancy = new TreeMap<String, Integer>();
+    for (String beanId : maxConcurrent.keySet()) {
+      occupancy.put(beanId, getOccupancy(beanId));
+    }
+    return occupancy;
+  }
+
+  /**
+   * @return jobs of the bean running now
+   */
+  @ManagedOperation(description = "Running jobs of one bean")
+  public int getOccupancy(String beanId) {
+    AtomicInteger count = running.get(beanId);
+    return count == null ? 0 : count.get();
+  }
+
+  /**
+   * @return jobs deferred because their bulkhead was full, by bean id, since start up
+   */
+  @ManagedAttribute(description = "Jobs deferred because their bulkhead was full, by bean id")
+  public Map<String, Long> getRejectedCounts() {
+    Map<String, Long> counts = new TreeMap<String, Long>();
+    for (Map.Entry<String, AtomicLong> entry : rejected.entrySet()) {
+      counts.put(entry.getKey(), entry.getValue().get());
+    }
+    return counts;
+  }
+
+  private AtomicInteger runningCount(String beanId) {
+    AtomicInteger count = running.get(beanId);
+    if (count == null) {
+      running.putIfAbsent(beanId, new AtomicInteger());
+      count = running.get(beanId);
+    }
+    return count;
+  }
+
+  private AtomicLong rejectedCount(String beanId) {
+    AtomicLong count = rejected.get(beanId);
+    if (count == null) {
+      rejected.putIfAbsent(beanId, new AtomicLong());
+      count = rejected.get(beanId);
+    }
+    return count;
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import net.greghaines.jesque.Job;
+
+/**
+ * Wraps a bean job with claim checked arguments, and deletes the stored arguments once it succeeded.
+ * A failed job keeps them, so a retry or replay can still run.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class ClaimCheckReleasingProxy extends DelegatingJobProxy {
+  private final ClaimCheckStore claimCheckStore;
+  private final Job job;
+
+  /**
+   * @param delegate Runnable or Callable bean job
+   * @param claimCheckStore store holding the job's arguments
+   * @param job job whose arguments are deleted after the delegate succeeded
+   */
+  public ClaimCheckReleasingProxy(Object delegate, ClaimCheckStore claimCheckStore, Job job) {
+    super(delegate);
+    this.claimCheckStore = claimCheckStore;
+    this.job = job;
+  }
+
+  @Override
+  public Object call() throws Exception {
+    Object result = callDelegate();
+    claimCheckStore.release(job);
+    return result;
+  }
+}
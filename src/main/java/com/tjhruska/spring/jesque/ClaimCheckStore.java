@@ -0,0 +1,268 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Claim checks for oversized BeanJob arguments.  checkIn() stores every argument whose JSON is at least thresholdBytes
+ * long under its own key with a TTL, gzip compressed, and leaves a small reference in its place, so queues,
+ * transporters, and admission decisions only move and parse the reference.  A BeanJobFactory given this store
+ * fetches the arguments right before the bean's init, after admission, and deletes them once the job succeeded.
+ * Failed jobs keep their arguments until the TTL, so retries and replays still find them.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class ClaimCheckStore {
+  private static final Logger log = LoggerFactory.getLogger(ClaimCheckStore.class);
+
+  /** Key of the map replacing a stored argument. */
+  public static final String REFERENCE = "@claimCheck";
+  static final String CLAIM_CHECK = "claimCheck";
+  private static final int COMPRESSION_MIN_BYTES = 1024;
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private int thresholdBytes = 65536;
+  private int ttlSeconds = 259200;
+
+  /**
+   * @param jedisPool redis database holding the stored arguments, shared by clients and workers
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public ClaimCheckStore(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  public int getThresholdBytes() {
+    return thresholdBytes;
+  }
+
+  /**
+   * @param thresholdBytes arguments whose JSON is at least this long are stored aside
+   */
+  public void setThresholdBytes(int thresholdBytes) {
+    this.thresholdBytes = thresholdBytes;
+  }
+
+  public int getTtlSeconds() {
+    return ttlSeconds;
+  }
+
+  /**
+   * @param ttlSeconds how long stored arguments are kept, must cover the longest a job waits in queues and retries
+   */
+  public void setTtlSeconds(int ttlSeconds) {
+    this.ttlSeconds = ttlSeconds;
+  }
+
+  /**
+   * Store the oversized arguments of a BeanJob and replace them by references.  Other jobs are left alone.  The job
+   * is only changed once every argument is stored, so a job that failed to check in still carries its arguments.
+   * @return the job
+   */
+  @SuppressWarnings("resource")
+  public <T extends Job> T checkIn(T job) {
+    if (!BeanJobFactory.isBeanJob(job) || job.getArgs() == null) {
+      return job;
+    }
+    Object[] args = job.getArgs().clone();
+    List<String> ids = new ArrayList<String>();
+    List<byte[]> blobs = new ArrayList<byte[]>();
+    for (int i = 1; i < args.length; i++) {
+      byte[] json;
+      try {
+        json = ObjectMapperFactory.get().writeValueAsBytes(args[i]);
+      } catch (Exception e) {
+        throw new RuntimeException("Unable to serialize argument " + i + " of job " + job, e);
+      }
+      if (json.length >= thresholdBytes) {
+        String id = UUID.randomUUID().toString();
+        ids.add(id);
+        blobs.add(JobPayloadCodec.compress(json, COMPRESSION_MIN_BYTES));
+        args[i] = Collections.singletonMap(REFERENCE, id);
+      }
+    }
+    if (ids.isEmpty()) {
+      return job;
+    }
+
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Pipeline pipeline = jedis.pipelined();
+      for (int i = 0; i < ids.size(); i++) {
+        pipeline.setex(SafeEncoder.encode(getKey(ids.get(i))), ttlSeconds, blobs.get(i));
+      }
+      pipeline.sync();
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+    job.setArgs(args);
+    JobVars.set(job, JobVars.CLAIM_CHECKS, ids);
+    return job;
+  }
+
+  /**
+   * Check in the job's oversized arguments and enqueue it.  Stored arguments are deleted if the enqueue fails.
+   * @param client client used to enqueue the job
+   * @param queue queue to enqueue on
+   * @param job any job
+   */
+  public void enqueue(Client client, String queue, Job job) {
+    checkIn(job);
+    try {
+      client.enqueue(queue, job);
+    } catch (RuntimeException e) {
+      release(job);
+      throw e;
+    }
+  }
+
+  /**
+   * @return true if arguments of the job were stored aside
+   */
+  public static boolean hasClaimChecks(Job job) {
+    return JobVars.get(job, JobVars.CLAIM_CHECKS) != null;
+  }
+
+  /**
+   * Fetch the stored arguments of a job in one round trip.
+   * @param job job the arguments belong to
+   * @param args bean arguments of the job, may hold references
+   * @return the arguments with every reference replaced by the stored argument
+   */
+  @SuppressWarnings("resource")
+  public Object[] resolve(Job job, Object[] args) {
+    if (!hasClaimChecks(job)) {
+      return args;
+    }
+    List<Integer> positions = new ArrayList<Integer>();
+    List<byte[]> keys = new ArrayList<byte[]>();
+    for (int i = 0; i < args.length; i++) {
+      String id = getReferenceId(args[i]);
+      if (id != null) {
+        positions.add(i);
+        keys.add(SafeEncoder.encode(getKey(id)));
+      }
+    }
+    if (keys.isEmpty()) {
+      return args;
+    }
+
+    List<byte[]> blobs;
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      blobs = jedis.mget(keys.toArray(new byte[keys.size()][]));
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+
+    Object[] resolved = args.clone();
+    for (int i = 0; i < positions.size(); i++) {
+      if (blobs.get(i) == null) {
+        throw new RuntimeException("Claim checked argument " + SafeEncoder.encode(keys.get(i))
+            + " has expired or was deleted, job " + job + " can't run.");
+      }
+      try {
+        resolved[positions.get(i)] = ObjectMapperFactory.get().readValue(JobPayloadCodec.decode(blobs.get(i)),
+            Object.class);
+      } catch (Exception e) {
+        throw new RuntimeException("Unable to read claim checked argument " + SafeEncoder.encode(keys.get(i)), e);
+      }
+    }
+    return resolved;
+  }
+
+  /**
+   * Delete the stored arguments of a job.  Failures are logged, the TTL removes the arguments eventually.
+   */
+  @SuppressWarnings("resource")
+  public void release(Job job) {
+    Object ids = JobVars.get(job, JobVars.CLAIM_CHECKS);
+    if (!(ids instanceof List) || ((List<?>) ids).isEmpty()) {
+      return;
+    }
+    String[] keys = new String[((List<?>) ids).size()];
+    for (int i = 0; i < keys.length; i++) {
+      keys[i] = getKey(String.valueOf(((List<?>) ids).get(i)));
+    }
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      jedis.del(keys);
+      hadException = false;
+    } catch (RuntimeException e) {
+      log.warn("Unable to delete claim checked arguments of job " + job, e);
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  /**
+   * @return id of the stored argument if arg is a reference, otherwise null
+   */
+  static String getReferenceId(Object arg) {
+    if (arg instanceof Map && ((Map<?, ?>) arg).size() == 1) {
+      Object id = ((Map<?, ?>) arg).get(REFERENCE);
+      return id == null ? null : id.toString();
+    }
+    return null;
+  }
+
+  String getKey(String id) {
+    return JesqueUtils.createKey(namespace, CLAIM_CHECK, id);
+  }
+}
@@ -0,0 +1,238 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Cluster wide cap on how many jobs of a bean run at once, eg: "at most 3 warehouse reports at a time" no matter how
+ * many workers the nodes have.  Each running job holds a lease in a redis sorted set per bean, scored by the time the
+ * lease expires.  Leases of a node that crashed simply expire after leaseMillis, so permits are never lost.
+ * Leases of running jobs are renewed when this policy runs as a JesqueServerTask, so it has to be added to the
+ * serverTasks of the SpringConfiguredJesqueServer as well as to the admissionPolicies of the BeanJobFactory.
+ * A job that finds every permit taken is deferred for deferMillis, the worker thread never waits for a permit.
+ * Node clocks are used for lease expiry, so they need to agree to well within leaseMillis.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class ConcurrencyLimitAdmissionPolicy implements JobAdmissionPolicy, JesqueServerTask {
+  private static final Logger log = LoggerFactory.getLogger(ConcurrencyLimitAdmissionPolicy.class);
+
+  static final RedisScript ACQUIRE_SCRIPT = new RedisScript(
+      "redis.call('ZREMRANGEBYSCORE', KEYS[1], '-inf', ARGV[1])\n"
+    + "if redis.call('ZCARD', KEYS[1]) >= tonumber(ARGV[3]) then\n"
+    + "  return 0\n"
+    + "end\n"
+    + "redis.call('ZADD', KEYS[1], ARGV[2], ARGV[4])\n"
+    + "redis.call('PEXPIRE', KEYS[1], tonumber(ARGV[2]) - tonumber(ARGV[1]))\n"
+    + "return 1");
+
+  static final RedisScript RENEW_SCRIPT = new RedisScript(
+      "local renewed = 0\n"
+    + "for i = 3, #ARGV do\n"
+    + "  if redis.call('ZSCORE', KEYS[1], ARGV[i]) then\n"
+    + "    redis.call('ZADD', KEYS[1], ARGV[2], ARGV[i])\n"
+    + "    renewed = renewed + 1\n"
+    + "  end\n"
+    + "end\n"
+    + "if renewed > 0 then\n"
+    + "  redis.call('PEXPIRE', KEYS[1], tonumber(ARGV[2]) - tonumber(ARGV[1]))\n"
+    + "end\n"
+    + "return renewed");
+
+  private static final String CONCURRENCY = "concurrency";
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private Map<String, Integer> maxConcurrent = Collections.emptyMap();
+  private long leaseMillis = 60000L;
+  private long deferMillis = 1000L;
+
+  private final ConcurrentMap<String, String> heldLeases = new ConcurrentHashMap<String, String>();
+
+  /**
+   * @param jedisPool redis database holding the leases, shared by every node enforcing the limits
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public ConcurrencyLimitAdmissionPolicy(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * @param maxConcurrent cluster wide number of jobs allowed to run at once per bean id, beans not in the map are
+   *          not limited
+   */
+  public void setMaxConcurrent(Map<String, Integer> maxConcurrent) {
+    this.maxConcurrent = new HashMap<String, Integer>(maxConcurrent);
+  }
+
+  public Map<String, Integer> getMaxConcurrent() {
+    return Collections.unmodifiableMap(maxConcurrent);
+  }
+
+  /**
+   * @param leaseMillis how long a lease lives without being renewed, this is how long a crashed node keeps its permits
+   */
+  public void setLeaseMillis(long leaseMillis) {
+    this.leaseMillis = leaseMillis;
+  }
+
+  public long getLeaseMillis() {
+    return leaseMillis;
+  }
+
+  /**
+   * @param deferMillis how long a job that found every permit taken waits before it is tried again
+   */
+  public void setDeferMillis(long deferMillis) {
+    this.deferMillis = deferMillis;
+  }
+
+  @Override
+  public long getDeferMillis(String beanId) {
+    return deferMillis;
+  }
+
+  /**
+   * Leases are renewed three times per leaseMillis, so one missed renewal does not lose a permit.
+   * @see com.tjhruska.spring.jesque.JesqueServerTask#getIntervalMillis()
+   */
+  @Override
+  public long getIntervalMillis() {
+    return Math.max(1L, leaseMillis / 3);
+  }
+
+  /**
+   * @return number of leases this node currently holds
+   */
+  public int getHeldLeaseCount() {
+    return heldLeases.size();
+  }
+
+  @Override
+  public JobPermit tryAcquire(final String beanId, Job job) {
+    Integer limit = maxConcurrent.get(beanId);
+    if (limit == null) {
+      return JobPermit.NONE;
+    }
+    final String leaseId = UUID.randomUUID().toString();
+    long now = System.currentTimeMillis();
+    Long acquired = (Long) eval(ACQUIRE_SCRIPT, beanId, Arrays.asList(String.valueOf(now),
+        String.valueOf(now + leaseMillis), String.valueOf(limit), leaseId));
+    if (acquired.longValue() == 0L) {
+      return null;
+    }
+    heldLeases.put(leaseId, beanId);
+    return new JobPermit() {
+      @Override
+      public void release() {
+        if (heldLeases.remove(leaseId) != null) {
+          releaseLease(beanId, leaseId);
+        }
+      }
+    };
+  }
+
+  /**
+   * Renew the leases of every job this node is running.
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    Map<String, List<String>> leasesByBean = new HashMap<String, List<String>>();
+    for (Map.Entry<String, String> entry : heldLeases.entrySet()) {
+      List<String> leaseIds = leasesByBean.get(entry.getValue());
+      if (leaseIds == null) {
+        leaseIds = new ArrayList<String>();
+        leasesByBean.put(entry.getValue(), leaseIds);
+      }
+      leaseIds.add(entry.getKey());
+    }
+
+    long now = System.currentTimeMillis();
+    for (Map.Entry<String, List<String>> entry : leasesByBean.entrySet()) {
+      List<String> args = new ArrayList<String>(entry.getValue().size() + 2);
+      args.add(String.valueOf(now));
+      args.add(String.valueOf(now + leaseMillis));
+      args.addAll(entry.getValue());
+      Long renewed = (Long) eval(RENEW_SCRIPT, entry.getKey(), args);
+      if (renewed.intValue() < entry.getValue().size()) {
+        log.warn("{} leases for bean {} expired before they were renewed, the concurrency limit may be exceeded",
+            entry.getValue().size() - renewed.intValue(), entry.getKey());
+      }
+    }
+  }
+
+  private void releaseLease(String beanId, String leaseId) {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      jedis.zrem(getLeaseKey(beanId), leaseId);
+      hadException = false;
+    } catch (RuntimeException e) {
+      // the lease expires on its own, so a failed release only holds the permit a little longer
+      log.warn("Unable to release concurrency lease for bean " + beanId, e);
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  private Object eval(RedisScript script, String beanId, List<String> args) {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Object result = script.eval(jedis, Arrays.asList(getLeaseKey(beanId)), args);
+      hadException = false;
+      return result;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  String getLeaseKey(String beanId) {
+    return JesqueUtils.createKey(namespace, CONCURRENCY, beanId);
+  }
+}
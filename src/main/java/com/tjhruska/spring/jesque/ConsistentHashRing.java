@@ -0,0 +1,89 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * Consistent hash ring mapping keys to nodes.  Each node is placed on the ring at virtualNodes points derived from
+ * its name, and a key belongs to the first node point at or after the key's hash.  Adding or removing one of n
+ * nodes only moves about 1/n of the keys, and a key always maps to the same node for the same set of node names.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ * @param <T> node type
+ */
+public class ConsistentHashRing<T> {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+  private final TreeMap<Long, T> ring = new TreeMap<Long, T>();
+  private final Map<String, T> nodes;
+
+  /**
+   * @param nodes nodes by unique name, the names (not the order) decide which keys each node gets
+   * @param virtualNodes points per node on the ring, more points spread keys more evenly
+   */
+  public ConsistentHashRing(Map<String, T> nodes, int virtualNodes) {
+    if (nodes.isEmpty()) {
+      throw new IllegalArgumentException("ConsistentHashRing needs at least one node.");
+    }
+    if (virtualNodes < 1) {
+      throw new IllegalArgumentException("virtualNodes must be at least 1, was " + virtualNodes + ".");
+    }
+    this.nodes = Collections.unmodifiableMap(new LinkedHashMap<String, T>(nodes));
+    for (Map.Entry<String, T> node : nodes.entrySet()) {
+      for (int i = 0; i < virtualNodes; i++) {
+        ring.put(hash(node.getKey() + "#" + i), node.getValue());
+      }
+    }
+  }
+
+  public Map<String, T> getNodes() {
+    return nodes;
+  }
+
+  /**
+   * @param key any key, null is treated as the empty string
+   * @return the node owning the key
+   */
+  public T get(String key) {
+    SortedMap<Long, T> tail = ring.tailMap(hash(key == null ? "" : key));
+    return tail.isEmpty() ? ring.firstEntry().getValue() : tail.get(tail.firstKey());
+  }
+
+  static long hash(String key) {
+    MessageDigest md5;
+    try {
+      md5 = MessageDigest.getInstance("MD5");
+    } catch (NoSuchAlgorithmException e) {
+      throw new RuntimeException(e);
+    }
+    byte[] digest = md5.digest(key.getBytes(UTF_8));
+    long hash = 0;
+    for (int i = 0; i < 8; i++) {
+      hash = (hash << 8) | (digest[i] & 0xff);
+    }
+    return hash;
+  }
+}
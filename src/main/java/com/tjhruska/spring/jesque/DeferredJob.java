@@ -0,0 +1,66 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import net.greghaines.jesque.Job;
+
+/**
+ * Returned by BeanJobFactory in place of a bean job that a JobAdmissionPolicy did not admit.
+ * WorkerWithQueueStrategy (and its subclasses) recognize it and put the job back on the queue it came from,
+ * either directly or through the delayed queue (see DelayedJobPromoter), instead of running it.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class DeferredJob implements Runnable {
+  private final Job job;
+  private final long deferMillis;
+  private final String reason;
+
+  /**
+   * @param job job that was not admitted
+   * @param deferMillis how long the job should wait before running again, 0 to requeue at the end of its queue
+   * @param reason logged when the job is deferred
+   */
+  public DeferredJob(Job job, long deferMillis, String reason) {
+    this.job = job;
+    this.deferMillis = deferMillis;
+    this.reason = reason;
+  }
+
+  public Job getJob() {
+    return job;
+  }
+
+  public long getDeferMillis() {
+    return deferMillis;
+  }
+
+  public String getReason() {
+    return reason;
+  }
+
+  /**
+   * Workers that don't know about deferred jobs have no way to requeue them, so fail loudly rather than drop them.
+   */
+  @Override
+  public void run() {
+    throw new IllegalStateException("Job was deferred (" + reason + ") but this worker can't requeue it, use a "
+        + "WorkerWithQueueStrategy when configuring JobAdmissionPolicies: " + job);
+  }
+}
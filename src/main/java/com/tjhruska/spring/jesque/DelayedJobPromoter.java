@@ -0,0 +1,175 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.UUID;
+
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanNameAware;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * DelayedJobPromoter moves every due job scheduled by DelayedJobScheduler to its target queue.
+ * Each tick is a single lua script call that promotes up to batchSize due jobs per queue in bulk, so the cost
+ * depends on the number of due jobs, not the millions that may still be waiting.  The script also takes a
+ * lease, so when several nodes run the promoter only one of them promotes at a time.
+ * Add it to the serverTasks of a SpringConfiguredJesqueServer.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class DelayedJobPromoter implements JesqueServerTask, BeanNameAware {
+  private static final Logger log = LoggerFactory.getLogger(DelayedJobPromoter.class);
+
+  static final RedisScript PROMOTE_SCRIPT = new RedisScript(
+      "local owner = redis.call('GET', KEYS[1])\n"
+    + "if owner and owner ~= ARGV[3] then return -1 end\n"
+    + "redis.call('SET', KEYS[1], ARGV[3], 'PX', ARGV[4])\n"
+    + "local moved = 0\n"
+    + "for _, queue in ipairs(redis.call('SMEMBERS', KEYS[2])) do\n"
+    + "  local delayedKey = ARGV[5] .. ':delayed:' .. queue\n"
+    + "  local due = redis.call('ZRANGEBYSCORE', delayedKey, '-inf', ARGV[1], 'LIMIT', 0, ARGV[2])\n"
+    + "  if #due > 0 then\n"
+    + "    local jobs = {}\n"
+    + "    for i, member in ipairs(due) do\n"
+    + "      jobs[i] = string.sub(member, string.find(member, '|', 1, true) + 1)\n"
+    + "    end\n"
+    + "    redis.call('ZREM', delayedKey, unpack(due))\n"
+    + "    redis.call('RPUSH', ARGV[5] .. ':queue:' .. queue, unpack(jobs))\n"
+    + "    redis.call('SADD', ARGV[5] .. ':queues', queue)\n"
+    + "    moved = moved + #due\n"
+    + "  end\n"
+    + "  if redis.call('ZCARD', delayedKey) == 0 then\n"
+    + "    redis.call('SREM', KEYS[2], queue)\n"
+    + "  end\n"
+    + "end\n"
+    + "return moved");
+
+  private static final String DELAYED_LEASE = "delayedPromoterLease";
+  private static final int MAX_ROUNDS_PER_TICK = 100;
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private final String ownerId;
+  private String beanName;
+
+  private long intervalMillis = 1000L;
+  private int batchSize = 1000;
+  private int leaseMillis = 5000;
+
+  /**
+   * @param jedisPool redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public DelayedJobPromoter(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+    this.ownerId = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID();
+  }
+
+  /**
+   * Promote due jobs.  If a full batch was moved for any queue another round runs right away, so a backlog of due
+   * jobs drains without waiting for the next tick.
+   */
+  @SuppressWarnings("resource")
+  @Override
+  public void run() {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      long total = 0;
+      for (int round = 0; round < MAX_ROUNDS_PER_TICK; round++) {
+        Long moved = promote(jedis, System.currentTimeMillis());
+        if (moved < 0) {
+          log.debug("{} another node holds the promoter lease, skipping", beanName);
+          break;
+        }
+        total += moved;
+        if (moved < batchSize) {
+          break;
+        }
+      }
+      if (total > 0) {
+        log.info("{} promoted {} delayed jobs", beanName, total);
+      }
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  /**
+   * @return number of jobs promoted, or -1 when another node holds the lease
+   */
+  Long promote(Jedis jedis, long now) {
+    return (Long) PROMOTE_SCRIPT.eval(jedis,
+        Arrays.asList(JesqueUtils.createKey(namespace, DELAYED_LEASE),
+            JesqueUtils.createKey(namespace, DelayedJobScheduler.DELAYED_QUEUES)),
+        Arrays.asList(String.valueOf(now), String.valueOf(batchSize), ownerId, String.valueOf(leaseMillis), namespace));
+  }
+
+  @Override
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public void setIntervalMillis(long intervalMillis) {
+    this.intervalMillis = intervalMillis;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param batchSize most jobs promoted per queue in one script call, keeps each call short (lua unpack() limits
+   *          this to a few thousand)
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public int getLeaseMillis() {
+    return leaseMillis;
+  }
+
+  /**
+   * @param leaseMillis how long this node keeps promoting exclusively after its last tick, must exceed
+   *          intervalMillis.  Another node takes over when the lease runs out.
+   */
+  public void setLeaseMillis(int leaseMillis) {
+    this.leaseMillis = leaseMillis;
+  }
+
+  @Override
+  public void setBeanName(String name) {
+    this.beanName = name;
+  }
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.UUID;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Transaction;
+
+/**
+ * DelayedJobScheduler enqueues jobs that should run later, eg: BeanJobs that should run "in 10 minutes".
+ * Jobs are held in a redis sorted set per queue scored by their due time, and DelayedJobPromoter moves
+ * them to the real queue once they are due.  No worker is tied up while a job waits.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class DelayedJobScheduler {
+  static final String DELAYED = "delayed";
+  static final String DELAYED_QUEUES = "delayedQueues";
+  static final char MEMBER_SEPARATOR = '|';
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+
+  /**
+   * @param jedisPool redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public DelayedJobScheduler(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * @param queue queue the job will be moved to once it is due
+   * @param job job to run later
+   * @param delayMillis how long from now the job should wait
+   */
+  public void enqueueIn(String queue, Job job, long delayMillis) {
+    enqueueAt(queue, job, System.currentTimeMillis() + delayMillis);
+  }
+
+  /**
+   * @param queue queue the job will be moved to once it is due
+   * @param job job to run later
+   * @param dueMillis epoch millis when the job becomes due
+   */
+  @SuppressWarnings("resource")
+  public void enqueueAt(String queue, Job job, long dueMillis) {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      schedule(jedis, namespace, queue, toPayload(job), dueMillis);
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  /**
+   * Schedule an already serialized job using a connection the caller owns, eg: from within a worker.
+   * @param jedis connection to the redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   * @param queue queue the job will be moved to once it is due
+   * @param payload serialized job
+   * @param dueMillis epoch millis when the job becomes due
+   */
+  public static void schedule(Jedis jedis, String namespace, String queue, String payload, long dueMillis) {
+    // unique prefix so identical payloads don't collapse into one sorted set member
+    String member = UUID.randomUUID().toString() + MEMBER_SEPARATOR + payload;
+    Transaction transaction = jedis.multi();
+    transaction.zadd(getDelayedQueueKey(namespace, queue), dueMillis, member);
+    transaction.sadd(JesqueUtils.createKey(namespace, DELAYED_QUEUES), queue);
+    transaction.exec();
+  }
+
+  /**
+   * @param job job to serialize
+   * @return json payload as stored in jesque queues
+   */
+  public static String toPayload(Job job) {
+    try {
+      return ObjectMapperFactory.get().writeValueAsString(job);
+    } catch (Exception e) {
+      throw new RuntimeException("Failed to serialize job " + job, e);
+    }
+  }
+
+  /**
+   * @param namespace jesque namespace, typically "resque"
+   * @param queue target queue name
+   * @return key of the sorted set holding delayed jobs for the queue
+   */
+  public static String getDelayedQueueKey(String namespace, String queue) {
+    return JesqueUtils.createKey(namespace, DELAYED, queue);
+  }
+
+  public String getNamespace() {
+    return namespace;
+  }
+}
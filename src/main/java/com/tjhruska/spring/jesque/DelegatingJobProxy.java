@@ -0,0 +1,65 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.concurrent.Callable;
+
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerAware;
+
+/**
+ * Base for the proxies BeanJobFactory wraps around a bean job.  The delegate can be a Runnable or a Callable (or
+ * another proxy); Runnable delegates return a null result.  The worker is passed on to WorkerAware delegates, so
+ * wrapping a bean job does not hide the worker from it.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public abstract class DelegatingJobProxy implements Callable<Object>, WorkerAware {
+  protected final Object delegate;
+
+  /**
+   * @param delegate Runnable or Callable bean job
+   */
+  protected DelegatingJobProxy(Object delegate) {
+    this.delegate = delegate;
+  }
+
+  public Object getDelegate() {
+    return delegate;
+  }
+
+  @Override
+  public void setWorker(Worker worker) {
+    if (delegate instanceof WorkerAware) {
+      ((WorkerAware) delegate).setWorker(worker);
+    }
+  }
+
+  /**
+   * Run the delegate.
+   * @return result of a Callable delegate, null for a Runnable
+   */
+  @SuppressWarnings("rawtypes")
+  protected Object callDelegate() throws Exception {
+    if (delegate instanceof Callable) {
+      return ((Callable) delegate).call();
+    }
+    ((Runnable) delegate).run();
+    return null;
+  }
+}
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+
+/**
+ * The first queue is picked at random with a probability proportional to its current depth, so a queue holding
+ * 90% of the waiting jobs gets roughly 90% of the polls.  The remaining queues follow deepest first.
+ * Depths are read with one pipelined LLEN round trip, and shared by all workers using this strategy for
+ * depthRefreshMillis.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class DepthProportionalQueueSelectionStrategy implements QueueSelectionStrategy {
+  private final long depthRefreshMillis;
+  private final Random random = new Random();
+
+  private volatile Map<String, Long> depths = Collections.emptyMap();
+  private volatile long depthsReadAt;
+
+  /**
+   * Depths will be refreshed at most once a second.
+   */
+  public DepthProportionalQueueSelectionStrategy() {
+    this(1000L);
+  }
+
+  /**
+   * @param depthRefreshMillis how long queue depths are reused before being read again
+   */
+  public DepthProportionalQueueSelectionStrategy(long depthRefreshMillis) {
+    this.depthRefreshMillis = depthRefreshMillis;
+  }
+
+  @Override
+  public List<String> selectQueues(List<String> queueNames, Jedis jedis, String namespace) {
+    if (queueNames.size() < 2) {
+      return queueNames;
+    }
+    Map<String, Long> current = depths;
+    if (System.currentTimeMillis() - depthsReadAt >= depthRefreshMillis || !current.keySet().containsAll(queueNames)) {
+      current = readDepths(queueNames, jedis, namespace);
+      depths = current;
+      depthsReadAt = System.currentTimeMillis();
+    }
+    double roll;
+    synchronized (random) {
+      roll = random.nextDouble();
+    }
+    return order(queueNames, current, roll);
+  }
+
+  private Map<String, Long> readDepths(List<String> queueNames, Jedis jedis, String namespace) {
+    Pipeline pipeline = jedis.pipelined();
+    List<Response<Long>> responses = new ArrayList<Response<Long>>(queueNames.size());
+    for (String queueName : queueNames) {
+      responses.add(pipeline.llen(JesqueUtils.createKey(namespace, QUEUE, queueName)));
+    }
+    pipeline.sync();
+
+    Map<String, Long> read = new HashMap<String, Long>();
+    for (int i = 0; i < queueNames.size(); i++) {
+      read.put(queueNames.get(i), responses.get(i).get());
+    }
+    return read;
+  }
+
+  /**
+   * @param roll uniform random number in [0, 1) used to pick the first queue
+   * @return queue names with the depth weighted pick first, then the rest deepest first
+   */
+  static List<String> order(List<String> queueNames, final Map<String, Long> depths, double roll) {
+    List<String> ordered = new ArrayList<String>(queueNames);
+    Collections.sort(ordered, new Comparator<String>() {
+      @Override
+      public int compare(String a, String b) {
+        return Long.compare(depthOf(depths, b), depthOf(depths, a));
+      }
+    });
+
+    long total = 0;
+    for (String queueName : ordered) {
+      total += depthOf(depths, queueName);
+    }
+    if (total == 0) {
+      return queueNames;
+    }
+
+    long target = (long) (roll * total);
+    for (int i = 0; i < ordered.size(); i++) {
+      target -= depthOf(depths, ordered.get(i));
+      if (target < 0) {
+        ordered.add(0, ordered.remove(i));
+        break;
+      }
+    }
+    return ordered;
+  }
+
+  private static long depthOf(Map<String, Long> depths, String queueName) {
+    Long depth = depths.get(queueName);
+    return depth == null ? 0L : depth;
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.text.ParseException;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.greghaines.jesque.utils.ResqueDateFormatThreadLocal;
+
+/**
+ * Selects entries of the failed list for FailedJobReplayer.  Every criterion that is set must match, a filter with
+ * nothing set matches every entry.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class FailedJobFilter {
+  private Set<String> beanIds;
+  private Set<String> exceptionClasses;
+  private Set<String> queues;
+  private Date failedAfter;
+  private Date failedBefore;
+
+  /**
+   * @param failure failed list entry read as a map (keys: queue, payload, exception, failed_at, ...)
+   * @return true if the entry should be replayed
+   */
+  @SuppressWarnings("unchecked")
+  public boolean matches(Map<String, Object> failure) {
+    if (queues != null && !queues.contains(failure.get("queue"))) {
+      return false;
+    }
+    if (exceptionClasses != null && !matchesException((String) failure.get("exception"))) {
+      return false;
+    }
+    if (beanIds != null) {
+      Object payload = failure.get("payload");
+      if (!(payload instanceof Map)) {
+        return false;
+      }
+      Map<String, Object> job = (Map<String, Object>) payload;
+      Object args = job.get("args");
+      if (!BeanJobFactory.BEAN_JOB_CLASS_NAME.equals(job.get("class")) || !(args instanceof List)
+          || ((List<Object>) args).isEmpty() || !beanIds.contains(((List<Object>) args).get(0))) {
+        return false;
+      }
+    }
+    if (failedAfter != null || failedBefore != null) {
+      Date failedAt = parseDate((String) failure.get("failed_at"));
+      if (failedAt == null || (failedAfter != null && failedAt.before(failedAfter))
+          || (failedBefore != null && !failedAt.before(failedBefore))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private boolean matchesException(String exception) {
+    if (exception == null) {
+      return false;
+    }
+    return exceptionClasses.contains(exception)
+        || exceptionClasses.contains(exception.substring(exception.lastIndexOf('.') + 1));
+  }
+
+  private static Date parseDate(String date) {
+    if (date == null) {
+      return null;
+    }
+    try {
+      return ResqueDateFormatThreadLocal.getInstance().parse(date);
+    } catch (ParseException e) {
+      return null;
+    }
+  }
+
+  private static Set<String> toSet(Collection<String> values) {
+    return values == null ? null : new HashSet<String>(values);
+  }
+
+  public Set<String> getBeanIds() {
+    return beanIds;
+  }
+
+  /**
+   * @param beanIds only BeanJobs of these beans match
+   */
+  public void setBeanIds(Collection<String> beanIds) {
+    this.beanIds = toSet(beanIds);
+  }
+
+  public Set<String> getExceptionClasses() {
+    return exceptionClasses;
+  }
+
+  /**
+   * @param exceptionClasses only failures with one of these exceptions match, full or simple class names
+   */
+  public void setExceptionClasses(Collection<String> exceptionClasses) {
+    this.exceptionClasses = toSet(exceptionClasses);
+  }
+
+  public Set<String> getQueues() {
+    return queues;
+  }
+
+  /**
+   * @param queues only jobs that failed on these queues match
+   */
+  public void setQueues(Collection<String> queues) {
+    this.queues = toSet(queues);
+  }
+
+  public Date getFailedAfter() {
+    return failedAfter;
+  }
+
+  /**
+   * @param failedAfter only jobs that failed at or after this time match
+   */
+  public void setFailedAfter(Date failedAfter) {
+    this.failedAfter = failedAfter;
+  }
+
+  public Date getFailedBefore() {
+    return failedBefore;
+  }
+
+  /**
+   * @param failedBefore only jobs that failed before this time match
+   */
+  public void setFailedBefore(Date failedBefore) {
+    this.failedBefore = failedBefore;
+  }
+}
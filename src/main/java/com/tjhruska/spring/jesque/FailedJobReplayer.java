@@ -0,0 +1,279 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.FAILED;
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUES;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Transaction;
+
+/**
+ * Replays entries of the resque failed list back onto the queues they failed on.
+ * The list is read in chunks of chunkSize with LRANGE, so redis is never blocked by one huge read, and matching
+ * jobs of a chunk are requeued with one round trip of multi-value RPUSHes.  maxJobsPerSecond spreads a large replay
+ * out so the recovering downstream isn't hit by everything at once.
+ * With removeReplayed, the failed list is renamed to failed:replaying when the replay starts and consumed from its
+ * head a chunk at a time: in one transaction matching jobs are requeued, the other entries are pushed back onto the
+ * failed list and the chunk is trimmed off, so every step costs O(chunkSize) no matter how long the list is.  Only
+ * entries present when the replay starts are considered, jobs that fail again during the replay are not replayed a
+ * second time.  A replay interrupted part way leaves the rest of failed:replaying, which the next replay finishes
+ * before it looks at the failed list again.  Run one replay of a namespace at a time.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class FailedJobReplayer {
+  private static final Logger log = LoggerFactory.getLogger(FailedJobReplayer.class);
+
+  static final String REPLAYING = "replaying";
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private int chunkSize = 1000;
+  private int maxJobsPerSecond;
+  private boolean removeReplayed = true;
+
+  /**
+   * @param jedisPool redis database holding the failed list and queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public FailedJobReplayer(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * @param filter selects the entries to replay
+   * @return number of jobs requeued
+   */
+  public long replay(FailedJobFilter filter) throws InterruptedException {
+    return scan(filter, false);
+  }
+
+  /**
+   * @param filter selects the entries to count
+   * @return number of jobs replay() would requeue right now
+   */
+  public long count(FailedJobFilter filter) throws InterruptedException {
+    return scan(filter, true);
+  }
+
+  @SuppressWarnings("resource")
+  private long scan(FailedJobFilter filter, boolean dryRun) throws InterruptedException {
+    String failedKey = JesqueUtils.createKey(namespace, FAILED);
+    int effectiveChunkSize = maxJobsPerSecond > 0 ? Math.min(chunkSize, maxJobsPerSecond) : chunkSize;
+    boolean drain = !dryRun && removeReplayed;
+    long started = System.currentTimeMillis();
+    long matched = 0;
+    long scanned = 0;
+
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      String sourceKey = drain ? startDrain(jedis, failedKey) : failedKey;
+      long length = jedis.llen(sourceKey);
+      for (long start = 0; start < length; start += effectiveChunkSize) {
+        // a drained chunk is trimmed off, so the next one is always at the head
+        long first = drain ? 0 : start;
+        List<String> entries = jedis.lrange(sourceKey, first, first + effectiveChunkSize - 1);
+        Map<String, List<String>> payloadsByQueue = new LinkedHashMap<String, List<String>>();
+        List<String> kept = new ArrayList<String>();
+        long chunkMatched = 0;
+        for (String entry : entries) {
+          Map<String, Object> failure = readFailure(entry);
+          if (failure == null || !filter.matches(failure)) {
+            kept.add(entry);
+            continue;
+          }
+          String queue = (String) failure.get("queue");
+          List<String> payloads = payloadsByQueue.get(queue);
+          if (payloads == null) {
+            payloads = new ArrayList<String>();
+            payloadsByQueue.put(queue, payloads);
+          }
+          payloads.add(writePayload(resetAttempts(failure.get("payload"))));
+          chunkMatched++;
+        }
+        scanned += entries.size();
+        matched += chunkMatched;
+
+        if (drain) {
+          drainChunk(jedis, failedKey, sourceKey, payloadsByQueue, kept, entries.size());
+        } else if (!dryRun && chunkMatched > 0) {
+          requeue(jedis, payloadsByQueue);
+        }
+        if (!dryRun && chunkMatched > 0) {
+          throttle(started, matched);
+        }
+      }
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+    log.info("{} {} of {} failed jobs in {} millis", new Object[] { dryRun ? "Counted" : "Replayed", matched,
+        scanned, System.currentTimeMillis() - started });
+    return matched;
+  }
+
+  /**
+   * Move the failed list aside to be drained, unless an interrupted replay left a list to finish first.
+   *
+   * @return key of the list to drain
+   */
+  private String startDrain(Jedis jedis, String failedKey) {
+    String replayingKey = JesqueUtils.createKey(namespace, FAILED, REPLAYING);
+    if (jedis.exists(replayingKey)) {
+      log.warn("Finishing the interrupted replay left in {}, the failed list is left for the next replay",
+          replayingKey);
+    } else if (jedis.exists(failedKey)) {
+      jedis.rename(failedKey, replayingKey);
+    }
+    return replayingKey;
+  }
+
+  private void requeue(Jedis jedis, Map<String, List<String>> payloadsByQueue) {
+    Pipeline pipeline = jedis.pipelined();
+    for (Map.Entry<String, List<String>> entry : payloadsByQueue.entrySet()) {
+      List<String> payloads = entry.getValue();
+      pipeline.sadd(JesqueUtils.createKey(namespace, QUEUES), entry.getKey());
+      pipeline.rpush(JesqueUtils.createKey(namespace, QUEUE, entry.getKey()),
+          payloads.toArray(new String[payloads.size()]));
+    }
+    pipeline.sync();
+  }
+
+  /**
+   * Requeue the matching jobs of a chunk, push the rest back onto the failed list and trim the chunk off the list
+   * being drained, all in one transaction so an interrupted replay neither loses nor duplicates a chunk.
+   */
+  private void drainChunk(Jedis jedis, String failedKey, String sourceKey, Map<String, List<String>> payloadsByQueue,
+      List<String> kept, int taken) {
+    Transaction transaction = jedis.multi();
+    for (Map.Entry<String, List<String>> entry : payloadsByQueue.entrySet()) {
+      List<String> payloads = entry.getValue();
+      transaction.sadd(JesqueUtils.createKey(namespace, QUEUES), entry.getKey());
+      transaction.rpush(JesqueUtils.createKey(namespace, QUEUE, entry.getKey()),
+          payloads.toArray(new String[payloads.size()]));
+    }
+    if (!kept.isEmpty()) {
+      transaction.rpush(failedKey, kept.toArray(new String[kept.size()]));
+    }
+    transaction.ltrim(sourceKey, taken, -1);
+    transaction.exec();
+  }
+
+  /**
+   * Sleep until the jobs replayed so far fit within maxJobsPerSecond.
+   */
+  private void throttle(long started, long replayed) throws InterruptedException {
+    if (maxJobsPerSecond <= 0) {
+      return;
+    }
+    long due = started + replayed * 1000L / maxJobsPerSecond;
+    long wait = due - System.currentTimeMillis();
+    if (wait > 0) {
+      Thread.sleep(wait);
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private static Map<String, Object> readFailure(String entry) {
+    try {
+      return ObjectMapperFactory.get().readValue(entry, Map.class);
+    } catch (IOException e) {
+      log.warn("Skipping unreadable failed list entry: {}", entry);
+      return null;
+    }
+  }
+
+  /**
+   * A replay starts over with a fresh retry budget, so the attempt count of the failed run is dropped.
+   */
+  @SuppressWarnings("unchecked")
+  private static Object resetAttempts(Object payload) {
+    if (payload instanceof Map) {
+      Object vars = ((Map<String, Object>) payload).get("vars");
+      if (vars instanceof Map) {
+        ((Map<String, Object>) vars).remove(JobVars.ATTEMPT);
+      }
+    }
+    return payload;
+  }
+
+  private static String writePayload(Object payload) {
+    try {
+      return ObjectMapperFactory.get().writeValueAsString(payload);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to write replayed job " + payload, e);
+    }
+  }
+
+  public int getChunkSize() {
+    return chunkSize;
+  }
+
+  /**
+   * @param chunkSize failed list entries read per LRANGE
+   */
+  public void setChunkSize(int chunkSize) {
+    this.chunkSize = chunkSize;
+  }
+
+  public int getMaxJobsPerSecond() {
+    return maxJobsPerSecond;
+  }
+
+  /**
+   * @param maxJobsPerSecond most jobs requeued per second, 0 for no limit
+   */
+  public void setMaxJobsPerSecond(int maxJobsPerSecond) {
+    this.maxJobsPerSecond = maxJobsPerSecond;
+  }
+
+  public boolean isRemoveReplayed() {
+    return removeReplayed;
+  }
+
+  /**
+   * @param removeReplayed if true (default) requeued entries are removed from the failed list
+   */
+  public void setRemoveReplayed(boolean removeReplayed) {
+    this.removeReplayed = removeReplayed;
+  }
+}
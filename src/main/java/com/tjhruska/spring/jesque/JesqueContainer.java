@@ -16,21 +16,35 @@
 
 package com.tjhruska.spring.jesque;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
 import java.util.concurrent.Callable;
 
 import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerListener;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedOperation;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import redis.clients.jedis.JedisPool;
 
 /**
  * JesqueContainer maintains a group of workers that are all created using the
- * same injected workerFactory.
+ * same injected workerFactory. The number of workers, and the queues they
+ * serve, can be changed while running (eg: through JMX).
  *
  * @author Timothy Hruska <https://github.com/tjhruska>
  *
  */
+@ManagedResource(description = "Group of jesque workers created by one worker factory")
 public class JesqueContainer implements BeanNameAware {
   private static final Logger log = LoggerFactory.getLogger(JesqueContainer.class);
 
@@ -39,21 +53,175 @@ public class JesqueContainer implements BeanNameAware {
   private Integer maxWorkerCount;
   private Worker[] workers;
   private Thread[] workerThreads;
+  private final List<Worker> retiringWorkers = new ArrayList<Worker>();
+  private final List<Thread> retiringThreads = new ArrayList<Thread>();
+  private final Set<String> pausedQueues = new LinkedHashSet<String>();
   private boolean paused;
   private String beanName;
+  private QueueSelectionStrategy queueSelectionStrategy;
+  private List<WorkerListener> workerListeners = Collections.emptyList();
+  private JedisPool jedisPool;
 
-  public Worker[] getWorkers() {
+  public synchronized Worker[] getWorkers() {
     return workers;
   }
 
-  public Thread[] getWorkerThreads() {
+  public synchronized Thread[] getWorkerThreads() {
     return workerThreads;
   }
 
-  public Integer getMaxWorkerCount() {
+  @ManagedAttribute(description = "Number of workers this container keeps running")
+  public synchronized Integer getMaxWorkerCount() {
     return maxWorkerCount;
   }
 
+  /**
+   * Grow or shrink the container while it runs. New slots are filled by the
+   * next checkWorkers(). Workers in removed slots are ended gracefully, they
+   * finish their current job first, and join() still waits for them.
+   *
+   * @param maxWorkerCount
+   *          number of workers to keep running, at least 0
+   */
+  @ManagedAttribute(description = "Number of workers this container keeps running")
+  public synchronized void setMaxWorkerCount(Integer maxWorkerCount) {
+    if (maxWorkerCount == null || maxWorkerCount < 0) {
+      throw new IllegalArgumentException("maxWorkerCount must be at least 0: " + maxWorkerCount);
+    }
+    for (int i = maxWorkerCount; i < this.maxWorkerCount; i++) {
+      if (workerThreads[i] != null && workerThreads[i].isAlive()) {
+        log.info(beanName + " retiring worker(s) '{}' with queues '{}'", workers[i].getName(), workers[i].getQueues());
+        workers[i].end(false);
+        retiringWorkers.add(workers[i]);
+        retiringThreads.add(workerThreads[i]);
+      }
+    }
+    log.info(beanName + " resizing from {} to {} workers", this.maxWorkerCount, maxWorkerCount);
+    this.workers = Arrays.copyOf(workers, maxWorkerCount);
+    this.workerThreads = Arrays.copyOf(workerThreads, maxWorkerCount);
+    this.maxWorkerCount = maxWorkerCount;
+  }
+
+  /**
+   * @return number of worker threads alive, including retiring workers
+   *         finishing their last job
+   */
+  @ManagedAttribute(description = "Worker threads alive, including retiring workers")
+  public synchronized int getLiveWorkerCount() {
+    int live = 0;
+    for (Thread workerThread : workerThreads) {
+      if (workerThread != null && workerThread.isAlive()) {
+        live++;
+      }
+    }
+    for (Thread retiringThread : retiringThreads) {
+      if (retiringThread.isAlive()) {
+        live++;
+      }
+    }
+    return live;
+  }
+
+  @ManagedAttribute(description = "Queues no worker of this container takes jobs from")
+  public synchronized String[] getPausedQueues() {
+    return pausedQueues.toArray(new String[pausedQueues.size()]);
+  }
+
+  /**
+   * Stop taking jobs from one queue, the workers keep serving their other
+   * queues. Jobs already running are not affected. Only WorkerWithQueueStrategy
+   * (and its subclasses) and WorkerPooled workers skip paused queues, other
+   * workers keep taking jobs from them: changing the queues of a running
+   * WorkerImpl races with its poll.
+   *
+   * @param queue
+   *          queue name to pause
+   */
+  @ManagedOperation(description = "Stop taking jobs from one queue on every worker of this container")
+  public synchronized void pauseQueue(String queue) {
+    if (pausedQueues.add(queue)) {
+      log.info(beanName + " pausing queue '{}'", queue);
+      applyPausedQueues();
+    }
+  }
+
+  /**
+   * Take jobs from a paused queue again, in the queue's configured position.
+   *
+   * @param queue
+   *          queue name to resume
+   */
+  @ManagedOperation(description = "Resume taking jobs from a paused queue")
+  public synchronized void resumeQueue(String queue) {
+    if (pausedQueues.remove(queue)) {
+      log.info(beanName + " resuming queue '{}'", queue);
+      applyPausedQueues();
+    }
+  }
+
+  private void applyPausedQueues() {
+    for (int i = 0; i < maxWorkerCount; i++) {
+      if (workers[i] != null) {
+        applyPausedQueues(workers[i]);
+      }
+    }
+  }
+
+  private void applyPausedQueues(Worker worker) {
+    if (worker instanceof WorkerWithQueueStrategy) {
+      ((WorkerWithQueueStrategy) worker).setPausedQueues(new LinkedHashSet<String>(pausedQueues));
+    } else if (worker instanceof WorkerPooled) {
+      ((WorkerPooled) worker).setPausedQueues(new LinkedHashSet<String>(pausedQueues));
+    } else if (!pausedQueues.isEmpty()) {
+      log.warn(beanName + " worker(s) '{}' can't skip paused queues '{}', it keeps taking their jobs",
+          worker.getName(), pausedQueues);
+    }
+  }
+
+  public QueueSelectionStrategy getQueueSelectionStrategy() {
+    return queueSelectionStrategy;
+  }
+
+  /**
+   * Strategy handed to every WorkerWithQueueStrategy this container starts, so latency sensitive queues can be
+   * favored without a dedicated pool of workers. Other worker types keep their own queue rotation.
+   *
+   * @param queueSelectionStrategy
+   *          shared by all workers of this container, null leaves each worker with its own strategy
+   */
+  public void setQueueSelectionStrategy(QueueSelectionStrategy queueSelectionStrategy) {
+    this.queueSelectionStrategy = queueSelectionStrategy;
+  }
+
+  public List<WorkerListener> getWorkerListeners() {
+    return workerListeners;
+  }
+
+  /**
+   * Listeners added to every worker this container starts (eg: JobResultStore).
+   *
+   * @param workerListeners
+   *          notified of all events of every worker in this container
+   */
+  public void setWorkerListeners(List<WorkerListener> workerListeners) {
+    this.workerListeners = workerListeners;
+  }
+
+  public JedisPool getJedisPool() {
+    return jedisPool;
+  }
+
+  /**
+   * Pool shared by every WorkerPooled this container starts that has no pool of its own. Its maxTotal caps the
+   * redis connections of the whole container, however many workers it runs.
+   *
+   * @param jedisPool
+   *          connections borrowed by the workers of this container
+   */
+  public void setJedisPool(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+  }
+
   /**
    * This JesqueContainer that will hold exactly one worker.
    *
@@ -87,10 +255,22 @@ public class JesqueContainer implements BeanNameAware {
   /**
    * Spin through to attempt to replace any dead/missing workers. WorkerFactory
    * is not required to return a worker. (This is mostly useful when the workers
-   * are tied to limited resources.)
+   * are tied to limited resources.) Workers stuck in a job that ignored the
+   * interrupt for its timeout (see JobWatchdog) are retired and replaced too.
+   * Retired workers whose threads finished are forgotten.
    */
-  public void checkWorkers() {
+  public synchronized void checkWorkers() {
+    pruneRetiring();
     for (int i = 0; i < maxWorkerCount; i++) {
+      if (workerThreads[i] != null && workerThreads[i].isAlive() && JobWatchdog.isStuck(workerThreads[i])) {
+        log.warn(beanName + " replacing worker(s) '{}' with queues '{}', its job ignored the interrupt for its timeout",
+            workers[i].getName(), workers[i].getQueues());
+        workers[i].end(true);
+        retiringWorkers.add(workers[i]);
+        retiringThreads.add(workerThreads[i]);
+        workers[i] = null;
+        workerThreads[i] = null;
+      }
       if (!paused && (workerThreads[i] == null || !workerThreads[i].isAlive())) {
         Worker worker;
         try {
@@ -99,6 +279,24 @@ public class JesqueContainer implements BeanNameAware {
           throw new RuntimeException("Failed to get a worker from the workerFactory", e);
         }
         if (worker != null) {
+          if (queueSelectionStrategy != null && worker instanceof WorkerWithQueueStrategy) {
+            ((WorkerWithQueueStrategy) worker).setQueueSelectionStrategy(queueSelectionStrategy);
+          }
+          if (worker instanceof WorkerPooled) {
+            WorkerPooled workerPooled = (WorkerPooled) worker;
+            if (queueSelectionStrategy != null) {
+              workerPooled.setQueueSelectionStrategy(queueSelectionStrategy);
+            }
+            if (workerPooled.getJedisPool() == null) {
+              workerPooled.setJedisPool(jedisPool);
+            }
+          }
+          for (WorkerListener workerListener : workerListeners) {
+            worker.getWorkerEventEmitter().addListener(workerListener);
+          }
+          if (!pausedQueues.isEmpty()) {
+            applyPausedQueues(worker);
+          }
           log.info(beanName + " started worker(s) of type '{}' with queues: '{}'", worker.getName(), worker.getQueues());
 
           Thread workerThread = new Thread(worker);
@@ -117,7 +315,8 @@ public class JesqueContainer implements BeanNameAware {
    *
    * @return current pause state of the container.
    */
-  public boolean isPaused() {
+  @ManagedAttribute(description = "Whether every worker of this container is paused")
+  public synchronized boolean isPaused() {
     return paused;
   }
 
@@ -128,7 +327,8 @@ public class JesqueContainer implements BeanNameAware {
    * @param paused
    *          state to send to the workers if changing
    */
-  public void togglePause(boolean paused) {
+  @ManagedOperation(description = "Pause or unpause every worker of this container")
+  public synchronized void togglePause(boolean paused) {
     if (this.paused == paused) {
       return;
     }
@@ -153,17 +353,23 @@ public class JesqueContainer implements BeanNameAware {
    * @param now
    *          if true will abort currently running jobs.
    */
-  public void stop(boolean now) {
+  public synchronized void stop(boolean now) {
     for (int i = 0; i < maxWorkerCount; i++) {
       if (workerThreads[i] != null && workerThreads[i].isAlive()) {
         log.info(beanName + " stopping worker(s) '{}' with queues '{}'", workers[i].getName(), workers[i].getQueues());
         workers[i].end(now);
       }
     }
+    for (int i = 0; i < retiringWorkers.size(); i++) {
+      if (now && retiringThreads.get(i).isAlive()) {
+        retiringWorkers.get(i).end(true);
+      }
+    }
   }
 
   /**
-   * Wait on any currently live worker threads until they exit.
+   * Wait on any currently live worker threads until they exit. Workers stuck in
+   * a timed out job are not waited on.
    *
    * @param millis
    *          how long to wait for each worker before moving on to join the next
@@ -171,15 +377,49 @@ public class JesqueContainer implements BeanNameAware {
    * @throws InterruptedException
    */
   public void join(long millis) throws InterruptedException {
-    for (int i = 0; i < maxWorkerCount; i++) {
-      if (workerThreads[i] != null && workerThreads[i].isAlive()) {
-        log.info(beanName + " joinging against worker(s) '{}' with queues '{}'", workers[i].getName(),
-            workers[i].getQueues());
-        workers[i].join(millis);
+    List<Worker> joinWorkers = new ArrayList<Worker>();
+    List<Thread> joinThreads = new ArrayList<Thread>();
+    synchronized (this) {
+      for (int i = 0; i < maxWorkerCount; i++) {
+        joinWorkers.add(workers[i]);
+        joinThreads.add(workerThreads[i]);
+      }
+      joinWorkers.addAll(retiringWorkers);
+      joinThreads.addAll(retiringThreads);
+    }
+    for (int i = 0; i < joinWorkers.size(); i++) {
+      if (joinThreads.get(i) != null && joinThreads.get(i).isAlive() && JobWatchdog.isStuck(joinThreads.get(i))) {
+        log.warn(beanName + " not joining worker(s) '{}' stuck in a timed out job", joinWorkers.get(i).getName());
+      } else if (joinThreads.get(i) != null && joinThreads.get(i).isAlive()) {
+        log.info(beanName + " joinging against worker(s) '{}' with queues '{}'", joinWorkers.get(i).getName(),
+            joinWorkers.get(i).getQueues());
+        joinWorkers.get(i).join(millis);
+      }
+    }
+    synchronized (this) {
+      pruneRetiring();
+    }
+  }
+
+  /**
+   * Drop retired workers whose threads finished, caller must hold the lock.
+   */
+  private void pruneRetiring() {
+    for (int i = retiringThreads.size() - 1; i >= 0; i--) {
+      if (!retiringThreads.get(i).isAlive()) {
+        retiringThreads.remove(i);
+        retiringWorkers.remove(i);
       }
     }
   }
 
+  /**
+   * @return number of retired workers still tracked, finished ones are pruned by checkWorkers() and join()
+   */
+  synchronized int getRetiringWorkerCount() {
+    return retiringWorkers.size();
+  }
+
   @Override
   public void setBeanName(String name) {
     this.beanName = name;
@@ -16,20 +16,28 @@
 
 package com.tjhruska.spring.jesque;
 
+import java.util.concurrent.atomic.AtomicLong;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.util.SafeEncoder;
 
 /**
  * JesqueJobTransporter moves jobs from one queue to another.  
  * Those queues can be on the same redis instance, or different ones.
+ * Throughput, redis round trips, run times, queue depths, and time spent at the destination limit are exposed as
+ * JMX attributes when the context exports annotated beans (eg: &lt;context:mbean-export/&gt;).
  * 
  * @author Timothy Hruska <https://github.com/tjhruska>
  *
  */
+@ManagedResource(description = "Moves jobs from a source queue to a destination queue")
 public class JesqueJobTransporter implements Runnable, BeanNameAware{
   private static final Logger log = LoggerFactory.getLogger(JesqueJobTransporter.class);
 
@@ -43,6 +51,27 @@ public class JesqueJobTransporter implements Runnable, BeanNameAware{
    
   private String queueNamePrefix;
   private Integer destinationLimit;
+  private AdaptiveDestinationLimit adaptiveDestinationLimit;
+  private Integer compressionMinBytes;
+  private RedisLeaderLease leaderLease;
+  private boolean stampHops;
+  private boolean smileEncoding;
+  
+  private final AtomicLong runs = new AtomicLong();
+  private final AtomicLong jobsMoved = new AtomicLong();
+  private final AtomicLong roundTrips = new AtomicLong();
+  private final AtomicLong totalRunMillis = new AtomicLong();
+  private final AtomicLong blockedAtLimitMillis = new AtomicLong();
+  private final AtomicLong failedPushesReturned = new AtomicLong();
+  private final AtomicLong bytesRead = new AtomicLong();
+  private final AtomicLong bytesWritten = new AtomicLong();
+  private final AtomicLong runsSkippedNotLeader = new AtomicLong();
+  private volatile long lastRunJobCount;
+  private volatile long lastRunMillis;
+  private volatile long lastRunRoundTrips;
+  private volatile long sourceDepth = -1;
+  private volatile long destDepth = -1;
+  private volatile long blockedSince;
   
   /**
    * Greedy transporter.  This transporter will not stop moving any source jobs found to the destination queue.
@@ -89,6 +118,78 @@ public class JesqueJobTransporter implements Runnable, BeanNameAware{
     this.destinationLimit = destinationLimit;
   }
 
+  public Integer getDestinationLimit() {
+    return destinationLimit;
+  }
+
+  /**
+   * Adaptive mode.  When set, the destination limit is recalculated at the start of every run from the measured
+   * drain rate of the destination queue, replacing any fixed destinationLimit.
+   * @param adaptiveDestinationLimit
+   */
+  public void setAdaptiveDestinationLimit(AdaptiveDestinationLimit adaptiveDestinationLimit) {
+    this.adaptiveDestinationLimit = adaptiveDestinationLimit;
+  }
+
+  public AdaptiveDestinationLimit getAdaptiveDestinationLimit() {
+    return adaptiveDestinationLimit;
+  }
+
+  /**
+   * Compress payloads of at least this many bytes with gzip when pushing them to the destination.
+   * Workers extending WorkerWithQueueStrategy decompress them transparently.  Null (default) moves payloads as is.
+   * @param compressionMinBytes
+   */
+  public void setCompressionMinBytes(Integer compressionMinBytes) {
+    this.compressionMinBytes = compressionMinBytes;
+  }
+
+  public Integer getCompressionMinBytes() {
+    return compressionMinBytes;
+  }
+
+  /**
+   * Single leader mode for transporters scheduled on every node.  A run only moves jobs when this node holds the
+   * lease, other nodes skip the run after one round trip.  Pops from the source are fenced by the lease, so the lease
+   * must be kept in the source redis database.
+   * @param leaderLease lease for this route, shared by the same transporter bean on every node
+   */
+  public void setLeaderLease(RedisLeaderLease leaderLease) {
+    this.leaderLease = leaderLease;
+  }
+
+  public RedisLeaderLease getLeaderLease() {
+    return leaderLease;
+  }
+
+  /**
+   * Append a hop with the destination queue and the time of the move to every traced job (see JobTracing), so
+   * JobTraceListener can tell transport time from queue time.  Traced jobs are parsed and rewritten, untraced jobs
+   * only scanned for a trace id.
+   * @param stampHops
+   */
+  public void setStampHops(boolean stampHops) {
+    this.stampHops = stampHops;
+  }
+
+  public boolean isStampHops() {
+    return stampHops;
+  }
+
+  /**
+   * Re-encode JSON payloads as Smile (see JobPayloadCodec) when pushing them to the destination, so producers still
+   * writing JSON get the smaller payloads at their destination.  Only workers extending WorkerWithQueueStrategy (or
+   * WorkerPooled) can read Smile payloads.
+   * @param smileEncoding
+   */
+  public void setSmileEncoding(boolean smileEncoding) {
+    this.smileEncoding = smileEncoding;
+  }
+
+  public boolean isSmileEncoding() {
+    return smileEncoding;
+  }
+
   /**
    * Each execution of the run method will result in moving jobs from the source to the destination queues.
    * Jobs will be moved until the source queue is empty, or the destination queue limit has been reached (if provided).
@@ -98,32 +199,85 @@ public class JesqueJobTransporter implements Runnable, BeanNameAware{
     Jedis sourceJedis = null;
     Jedis destJedis = null;
     
+    long leaderToken = 0;
+    if (leaderLease != null) {
+      roundTrips.incrementAndGet();
+      leaderToken = leaderLease.tryAcquire();
+      if (leaderToken == 0) {
+        runsSkippedNotLeader.incrementAndGet();
+        log.debug("{} is not the leader for source queue '{}', skipping run", beanName, sourceQueueName);
+        return;
+      }
+    }
+    
+    long start = System.currentTimeMillis();
+    long roundTripsAtStart = roundTrips.get();
+    if (blockedSince > 0) {
+      blockedAtLimitMillis.addAndGet(start - blockedSince);
+      blockedSince = 0;
+    }
+    
     boolean hadException = true;
     try {
       sourceJedis = sourceJedisPool.getResource();
       destJedis = destJedisPool.getResource();
       
+      if (adaptiveDestinationLimit != null) {
+        roundTrips.incrementAndGet();
+        destinationLimit = adaptiveDestinationLimit.startRun(destJedis.llen(getQualifiedQueueName(destQueueName)),
+            System.currentTimeMillis());
+      }
+      
       int jobCount = 0;
       while (needToPullJob(sourceJedis, destJedis)) {
-        String jobString = sourceJedis.lpop(getQualifiedQueueName(sourceQueueName));
-        if (jobString != null) {
+        roundTrips.incrementAndGet();
+        byte[] payload;
+        try {
+          payload = (leaderLease == null) ? sourceJedis.lpop(SafeEncoder.encode(getQualifiedQueueName(sourceQueueName)))
+              : leaderLease.fencedLpop(sourceJedis, getQualifiedQueueName(sourceQueueName), leaderToken);
+        } catch (RedisLeaderLease.LeaseLostException e) {
+          log.warn("{} lost leadership, stopping run: {}", beanName, e.getMessage());
+          break;
+        }
+        if (payload != null) {
+          byte[] pushed;
           try {
-            destJedis.rpush(getQualifiedQueueName(destQueueName), jobString);
+            pushed = encode(payload);
+            roundTrips.incrementAndGet();
+            destJedis.rpush(SafeEncoder.encode(getQualifiedQueueName(destQueueName)), pushed);
           } catch (Exception e) {
-            log.error("Failed to push job (will attempt to return to source) to '{}' queue: '{}'", getQualifiedQueueName(destQueueName), jobString);
-            sourceJedis.lpush(getQualifiedQueueName(sourceQueueName), jobString);
+            log.error("Failed to push job (will attempt to return to source) to '{}' queue: '{}'", getQualifiedQueueName(destQueueName), JobPayloadCodec.decode(payload));
+            sourceJedis.lpush(SafeEncoder.encode(getQualifiedQueueName(sourceQueueName)), payload);
+            failedPushesReturned.incrementAndGet();
             log.error("returned job to source queue");
             throw e;
           }
+          bytesRead.addAndGet(payload.length);
+          bytesWritten.addAndGet(pushed.length);
           jobCount++;
+          jobsMoved.incrementAndGet();
+          destDepth++;
         }
       }
       
+      if (adaptiveDestinationLimit != null) {
+        // the last needToPullJob check saw the destination after the last push
+        adaptiveDestinationLimit.endRun(destDepth, System.currentTimeMillis());
+      }
+      if (sourceDepth > 0) {
+        blockedSince = System.currentTimeMillis();
+      }
+      
       log.info("{} job copied {} jobs from source queue '{}' to destination queue '{}'", new Object[] {beanName, jobCount, sourceQueueName, destQueueName});
+      lastRunJobCount = jobCount;
       
       hadException = false;
       
     } finally {
+      lastRunMillis = System.currentTimeMillis() - start;
+      lastRunRoundTrips = roundTrips.get() - roundTripsAtStart;
+      totalRunMillis.addAndGet(lastRunMillis);
+      runs.incrementAndGet();
       if (hadException) {
         sourceJedisPool.returnBrokenResource(sourceJedis);
         destJedisPool.returnBrokenResource(destJedis);
@@ -134,9 +288,28 @@ public class JesqueJobTransporter implements Runnable, BeanNameAware{
     }
   }
    
+  /**
+   * Stamp, re-encode and compress a popped payload for the destination.  A payload that can't be read as a job is
+   * moved without Smile encoding rather than lost between the LPOP and the RPUSH.
+   */
+  private byte[] encode(byte[] payload) {
+    byte[] pushed = stampHops ? JobTracing.stampHop(payload, destQueueName) : payload;
+    if (smileEncoding) {
+      try {
+        pushed = JobPayloadCodec.toSmile(pushed);
+      } catch (RuntimeException e) {
+        log.warn("{} moving unreadable job without Smile encoding: '{}'", beanName, JobPayloadCodec.decode(payload));
+      }
+    }
+    return (compressionMinBytes == null) ? pushed : JobPayloadCodec.compress(pushed, compressionMinBytes);
+  }
+
   public boolean needToPullJob(Jedis sourceJedis, Jedis destJedis) {
       Long sourceSize = sourceJedis.llen(getQualifiedQueueName(sourceQueueName));
       Long destSize = destJedis.llen(getQualifiedQueueName(destQueueName));
+      roundTrips.addAndGet(2);
+      sourceDepth = sourceSize;
+      destDepth = destSize;
       
       boolean destinationNeedsARow = destinationLimit == null || (destinationLimit != null && destinationLimit > destSize);
     
@@ -162,4 +335,98 @@ public class JesqueJobTransporter implements Runnable, BeanNameAware{
   public String getDestQueueName() {
     return destQueueName;
   }
-} 
\ No newline at end of file
+
+  @ManagedAttribute(description = "Number of runs since start")
+  public long getRuns() {
+    return runs.get();
+  }
+
+  @ManagedAttribute(description = "Jobs moved since start")
+  public long getJobsMoved() {
+    return jobsMoved.get();
+  }
+
+  @ManagedAttribute(description = "Jobs moved by the latest run")
+  public long getLastRunJobCount() {
+    return lastRunJobCount;
+  }
+
+  @ManagedAttribute(description = "Jobs moved per second of run time by the latest run")
+  public double getLastRunJobsPerSecond() {
+    return lastRunMillis == 0 ? lastRunJobCount : lastRunJobCount * 1000d / lastRunMillis;
+  }
+
+  @ManagedAttribute(description = "Jobs moved per second of run time since start")
+  public double getJobsPerSecond() {
+    long millis = totalRunMillis.get();
+    return millis == 0 ? jobsMoved.get() : jobsMoved.get() * 1000d / millis;
+  }
+
+  @ManagedAttribute(description = "Redis round trips since start, both source and destination")
+  public long getRoundTrips() {
+    return roundTrips.get();
+  }
+
+  @ManagedAttribute(description = "Redis round trips made by the latest run")
+  public long getLastRunRoundTrips() {
+    return lastRunRoundTrips;
+  }
+
+  @ManagedAttribute(description = "Redis round trips per job moved since start")
+  public double getRoundTripsPerJob() {
+    long moved = jobsMoved.get();
+    return moved == 0 ? 0d : (double) roundTrips.get() / moved;
+  }
+
+  @ManagedAttribute(description = "Millis taken by the latest run")
+  public long getLastRunMillis() {
+    return lastRunMillis;
+  }
+
+  @ManagedAttribute(description = "Average millis per run since start")
+  public double getAverageRunMillis() {
+    long count = runs.get();
+    return count == 0 ? 0d : (double) totalRunMillis.get() / count;
+  }
+
+  @ManagedAttribute(description = "Source queue depth as of the latest check, -1 before the first run")
+  public long getSourceDepth() {
+    return sourceDepth;
+  }
+
+  @ManagedAttribute(description = "Destination queue depth as of the latest check, -1 before the first run")
+  public long getDestDepth() {
+    return destDepth;
+  }
+
+  @ManagedAttribute(description = "Millis jobs waited at the source because the destination was at its limit")
+  public long getBlockedAtLimitMillis() {
+    long since = blockedSince;
+    return blockedAtLimitMillis.get() + (since > 0 ? System.currentTimeMillis() - since : 0L);
+  }
+
+  @ManagedAttribute(description = "Payload bytes popped from the source since start")
+  public long getBytesRead() {
+    return bytesRead.get();
+  }
+
+  @ManagedAttribute(description = "Payload bytes pushed to the destination since start, after compression")
+  public long getBytesWritten() {
+    return bytesWritten.get();
+  }
+
+  @ManagedAttribute(description = "True if this node held the leader lease at its latest run, or no lease is used")
+  public boolean isLeader() {
+    return leaderLease == null || leaderLease.getToken() > 0;
+  }
+
+  @ManagedAttribute(description = "Runs skipped because another node held the leader lease")
+  public long getRunsSkippedNotLeader() {
+    return runsSkippedNotLeader.get();
+  }
+
+  @ManagedAttribute(description = "Jobs that failed to push to the destination and were returned to the source")
+  public long getFailedPushesReturned() {
+    return failedPushesReturned.get();
+  }
+}
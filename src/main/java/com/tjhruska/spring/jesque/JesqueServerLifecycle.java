@@ -0,0 +1,182 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.context.SmartLifecycle;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Starts a SpringConfiguredJesqueServer once the application context has refreshed, instead of while it is still
+ * being built.  Before the server starts consuming, job beans can be instantiated through a BeanJobFactory and
+ * jedis pools can be filled with open connections, so the first jobs after a deploy don't pay for them.
+ * On shutdown the server is stopped first (highest phase), and spring waits for running jobs to finish.
+ * SpringConfiguredJesqueServer is a Thread, whose final stop() rules out implementing SmartLifecycle on it directly;
+ * set startOnInit to false on the server this lifecycle manages.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JesqueServerLifecycle implements SmartLifecycle {
+  private static final Logger log = LoggerFactory.getLogger(JesqueServerLifecycle.class);
+
+  private final SpringConfiguredJesqueServer server;
+  private int phase = Integer.MAX_VALUE;
+  private boolean autoStartup = true;
+  private BeanJobFactory beanJobFactory;
+  private Collection<String> warmUpBeanIds = Collections.emptyList();
+  private Collection<JedisPool> jedisPools = Collections.emptyList();
+  private int connectionsPerPool = 8;
+
+  /**
+   * @param server server to start, with startOnInit set to false
+   */
+  public JesqueServerLifecycle(SpringConfiguredJesqueServer server) {
+    this.server = server;
+  }
+
+  public SpringConfiguredJesqueServer getServer() {
+    return server;
+  }
+
+  /**
+   * @param phase spring lifecycle phase, default Integer.MAX_VALUE so the server starts last and stops first
+   */
+  public void setPhase(int phase) {
+    this.phase = phase;
+  }
+
+  @Override
+  public int getPhase() {
+    return phase;
+  }
+
+  public void setAutoStartup(boolean autoStartup) {
+    this.autoStartup = autoStartup;
+  }
+
+  @Override
+  public boolean isAutoStartup() {
+    return autoStartup;
+  }
+
+  /**
+   * @param beanJobFactory factory whose job beans are instantiated before the server starts, null to skip
+   */
+  public void setBeanJobFactory(BeanJobFactory beanJobFactory) {
+    this.beanJobFactory = beanJobFactory;
+  }
+
+  /**
+   * @param warmUpBeanIds plain Runnable or Callable job beans to instantiate as well
+   * @see BeanJobFactory#warmUp(Collection)
+   */
+  public void setWarmUpBeanIds(Collection<String> warmUpBeanIds) {
+    this.warmUpBeanIds = warmUpBeanIds;
+  }
+
+  /**
+   * @param jedisPools pools to fill with open connections before the server starts
+   */
+  public void setJedisPools(Collection<JedisPool> jedisPools) {
+    this.jedisPools = jedisPools;
+  }
+
+  /**
+   * @param connectionsPerPool connections opened in each pool, keep it at or below the pool's maxIdle
+   */
+  public void setConnectionsPerPool(int connectionsPerPool) {
+    this.connectionsPerPool = connectionsPerPool;
+  }
+
+  @Override
+  public void start() {
+    if (beanJobFactory != null) {
+      long startMillis = System.currentTimeMillis();
+      List<String> warmed = beanJobFactory.warmUp(warmUpBeanIds);
+      log.info("Warmed up {} job beans in {} millis", warmed.size(), System.currentTimeMillis() - startMillis);
+    }
+    for (JedisPool jedisPool : jedisPools) {
+      fill(jedisPool);
+    }
+    server.startServer();
+  }
+
+  @SuppressWarnings("resource")
+  private void fill(JedisPool jedisPool) {
+    List<Jedis> borrowed = new ArrayList<Jedis>(connectionsPerPool);
+    try {
+      for (int i = 0; i < connectionsPerPool; i++) {
+        Jedis jedis = jedisPool.getResource();
+        borrowed.add(jedis);
+        jedis.ping();
+      }
+    } catch (RuntimeException e) {
+      log.warn("Unable to fill jedis pool, " + borrowed.size() + " connections opened", e);
+    } finally {
+      for (Jedis jedis : borrowed) {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  @Override
+  public void stop() {
+    server.destroy();
+    try {
+      server.join();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+
+  /**
+   * Signals the server to stop, and tells spring it is done once the server thread has joined its workers.
+   * @see org.springframework.context.SmartLifecycle#stop(java.lang.Runnable)
+   */
+  @Override
+  public void stop(final Runnable callback) {
+    server.destroy();
+    Thread waiter = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        try {
+          server.join();
+        } catch (InterruptedException e) {
+          log.info("Interrupted while waiting for jesque server to stop.");
+        } finally {
+          callback.run();
+        }
+      }
+    }, "JesqueServerLifecycle-stop");
+    waiter.setDaemon(true);
+    waiter.start();
+  }
+
+  @Override
+  public boolean isRunning() {
+    return server.isServerStarted() && !server.isShutdown();
+  }
+}
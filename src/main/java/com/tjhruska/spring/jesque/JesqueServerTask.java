@@ -0,0 +1,33 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+/**
+ * Periodic housekeeping that SpringConfiguredJesqueServer runs for as long as the server is started.
+ * eg: promoting due delayed jobs.  An exception thrown from run() is logged, and the task runs again
+ * after the next interval.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public interface JesqueServerTask extends Runnable {
+  /**
+   * @return millis to wait between the end of one run and the start of the next
+   */
+  public long getIntervalMillis();
+}
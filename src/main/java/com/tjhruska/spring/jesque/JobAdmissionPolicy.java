@@ -0,0 +1,43 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import net.greghaines.jesque.Job;
+
+/**
+ * Checked by BeanJobFactory before a bean job is materialized.  A job that is not admitted is not run and not
+ * failed, it is returned as a DeferredJob that the worker puts back on its queue.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public interface JobAdmissionPolicy {
+  /**
+   * @param beanId bean the job will run
+   * @param job job about to be materialized
+   * @return permit to release after the job finishes, JobPermit.NONE if nothing needs releasing, or null if the job
+   *         has to be deferred
+   */
+  public JobPermit tryAcquire(String beanId, Job job);
+
+  /**
+   * @param beanId bean of a job that was not admitted
+   * @return millis the job should wait before it is run again, 0 to put it straight back at the end of its queue
+   */
+  public long getDeferMillis(String beanId);
+}
@@ -0,0 +1,173 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUES;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Fan-out/fan-in for jobs split into many children.  enqueueGroup() records the group in a redis hash (children
+ * remaining, children failed, and the completion job), then enqueues the children with the group id and their child id
+ * in their vars.  Workers with a JobGroupListener count each finished child down with one script call, once per child
+ * id, and the last child to finish enqueues the completion job.  The completion job gets the group id in its vars, so
+ * it can read the group's status (eg: how many children failed) until the group expires.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JobGroupClient {
+  static final String GROUP = "group";
+  static final String DONE = "done";
+  static final String REMAINING = "remaining";
+  static final String FAILED = "failed";
+  static final String TOTAL = "total";
+  static final String COMPLETION_QUEUE = "completionQueue";
+  static final String COMPLETION_JOB = "completionJob";
+
+  private static final int PUSH_CHUNK_SIZE = 1000;
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private int ttlSeconds = 86400;
+
+  /**
+   * @param jedisPool redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public JobGroupClient(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * @param ttlSeconds how long group bookkeeping is kept, must be longer than the group takes to run.  Default 1 day.
+   */
+  public void setTtlSeconds(int ttlSeconds) {
+    this.ttlSeconds = ttlSeconds;
+  }
+
+  public int getTtlSeconds() {
+    return ttlSeconds;
+  }
+
+  /**
+   * @param queue queue for the children
+   * @param children jobs of the group, their vars are updated with the group id
+   * @param completionQueue queue for the completion job
+   * @param completionJob job enqueued once every child finished, successfully or not
+   * @return the group id
+   */
+  @SuppressWarnings("resource")
+  public String enqueueGroup(String queue, List<? extends Job> children, String completionQueue, Job completionJob) {
+    if (children.isEmpty()) {
+      throw new IllegalArgumentException("A job group needs at least one child.");
+    }
+    String groupId = UUID.randomUUID().toString();
+    JobVars.set(completionJob, JobVars.GROUP_ID, groupId);
+    JobVars.set(completionJob, JobVars.GROUP_COMPLETION, Boolean.TRUE);
+    List<String> payloads = new ArrayList<String>(children.size());
+    for (int i = 0; i < children.size(); i++) {
+      Job child = children.get(i);
+      JobVars.set(child, JobVars.GROUP_ID, groupId);
+      JobVars.set(child, JobVars.GROUP_CHILD_ID, String.valueOf(i));
+      payloads.add(DelayedJobScheduler.toPayload(child));
+    }
+
+    Map<String, String> group = new HashMap<String, String>();
+    group.put(TOTAL, String.valueOf(children.size()));
+    group.put(REMAINING, String.valueOf(children.size()));
+    group.put(FAILED, "0");
+    group.put(COMPLETION_QUEUE, completionQueue);
+    group.put(COMPLETION_JOB, DelayedJobScheduler.toPayload(completionJob));
+
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Pipeline pipeline = jedis.pipelined();
+      // the group must exist before the first child can finish
+      pipeline.hmset(getGroupKey(namespace, groupId), group);
+      pipeline.expire(getGroupKey(namespace, groupId), ttlSeconds);
+      pipeline.sadd(JesqueUtils.createKey(namespace, QUEUES), queue);
+      for (int i = 0; i < payloads.size(); i += PUSH_CHUNK_SIZE) {
+        List<String> chunk = payloads.subList(i, Math.min(payloads.size(), i + PUSH_CHUNK_SIZE));
+        pipeline.rpush(JesqueUtils.createKey(namespace, QUEUE, queue), chunk.toArray(new String[chunk.size()]));
+      }
+      pipeline.sync();
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+    return groupId;
+  }
+
+  /**
+   * @param groupId id returned by enqueueGroup, or the group id var of a child or completion job
+   * @return total, remaining, and failed child counts, or an empty map if the group is unknown or expired
+   */
+  @SuppressWarnings("resource")
+  public Map<String, Long> getGroupStatus(String groupId) {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      List<String> counts = jedis.hmget(getGroupKey(namespace, groupId), TOTAL, REMAINING, FAILED);
+      hadException = false;
+      Map<String, Long> status = new HashMap<String, Long>();
+      if (counts.get(0) != null) {
+        status.put(TOTAL, Long.valueOf(counts.get(0)));
+        status.put(REMAINING, Long.valueOf(counts.get(1)));
+        status.put(FAILED, Long.valueOf(counts.get(2)));
+      }
+      return status;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  static String getGroupKey(String namespace, String groupId) {
+    return JesqueUtils.createKey(namespace, GROUP, groupId);
+  }
+
+  /**
+   * @return key of the set of child ids already counted down, it expires with the group
+   */
+  static String getDoneKey(String namespace, String groupId) {
+    return JesqueUtils.createKey(namespace, GROUP, groupId, DONE);
+  }
+}
@@ -0,0 +1,133 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUES;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_FAILURE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_SUCCESS;
+
+import java.util.Arrays;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerEvent;
+import net.greghaines.jesque.worker.WorkerListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Worker listener counting down the job groups enqueued by JobGroupClient.  Every finished child costs one script
+ * call, which decrements the group's remaining count (and counts failures), and when it reaches zero enqueues the
+ * completion job in the same atomic step, so exactly one child triggers the completion.  A child that finishes
+ * more than once (eg: it was requeued by a ProcessingListReaper or replayed) is only counted the first time.
+ * Register it with JesqueContainer.setWorkerListeners().
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JobGroupListener implements WorkerListener {
+  private static final Logger log = LoggerFactory.getLogger(JobGroupListener.class);
+
+  /**
+   * Children are counted once per child id, recorded in a set that expires with the group.  Children without a
+   * child id (enqueued before child ids existed) are counted every time they finish.
+   */
+  static final RedisScript CHILD_DONE_SCRIPT = new RedisScript(
+      "if redis.call('EXISTS', KEYS[1]) == 0 then\n"
+    + "  return -1\n"
+    + "end\n"
+    + "if ARGV[3] ~= '' then\n"
+    + "  if redis.call('SADD', KEYS[3], ARGV[3]) == 0 then\n"
+    + "    return -2\n"
+    + "  end\n"
+    + "  local ttl = redis.call('PTTL', KEYS[1])\n"
+    + "  if ttl > 0 then\n"
+    + "    redis.call('PEXPIRE', KEYS[3], ttl)\n"
+    + "  end\n"
+    + "end\n"
+    + "if ARGV[1] == '1' then\n"
+    + "  redis.call('HINCRBY', KEYS[1], 'failed', 1)\n"
+    + "end\n"
+    + "local remaining = redis.call('HINCRBY', KEYS[1], 'remaining', -1)\n"
+    + "if remaining == 0 then\n"
+    + "  local completion = redis.call('HMGET', KEYS[1], 'completionQueue', 'completionJob')\n"
+    + "  redis.call('SADD', KEYS[2], completion[1])\n"
+    + "  redis.call('RPUSH', ARGV[2] .. completion[1], completion[2])\n"
+    + "end\n"
+    + "return remaining");
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+
+  /**
+   * @param jedisPool redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public JobGroupListener(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  @SuppressWarnings("resource")
+  @Override
+  public void onEvent(WorkerEvent event, Worker worker, String queue, Job job, Object runner, Object result,
+      Throwable t) {
+    if ((event != JOB_SUCCESS && event != JOB_FAILURE) || job == null) {
+      return;
+    }
+    String groupId = JobVars.getString(job, JobVars.GROUP_ID);
+    if (groupId == null || isCompletionJob(job)) {
+      return;
+    }
+
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      String childId = JobVars.getString(job, JobVars.GROUP_CHILD_ID);
+      Long remaining = (Long) CHILD_DONE_SCRIPT.eval(jedis,
+          Arrays.asList(JobGroupClient.getGroupKey(namespace, groupId), JesqueUtils.createKey(namespace, QUEUES),
+              JobGroupClient.getDoneKey(namespace, groupId)),
+          Arrays.asList(event == JOB_FAILURE ? "1" : "0", JesqueUtils.createKey(namespace, QUEUE, ""),
+              childId == null ? "" : childId));
+      hadException = false;
+      if (remaining == 0) {
+        log.info("Job group {} finished, enqueued its completion job", groupId);
+      } else if (remaining == -2) {
+        log.info("Job group {} child {} finished again, it was already counted", groupId, childId);
+      } else if (remaining < 0) {
+        log.warn("Job group {} is unknown, expired, or already complete, child finished without being counted", groupId);
+      }
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  private boolean isCompletionJob(Job job) {
+    return Boolean.TRUE.equals(JobVars.get(job, JobVars.GROUP_COMPLETION));
+  }
+}
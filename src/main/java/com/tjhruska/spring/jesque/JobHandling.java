@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+import net.greghaines.jesque.worker.JobFactory;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Job handling shared by WorkerWithQueueStrategy and WorkerPooled: popping payloads (onto a processing list with
+ * reliableDequeue on), rescheduling jobs their RetryPolicy retries, and putting DeferredJobs back on their queue.
+ * The workers only differ in where the connection comes from.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+final class JobHandling {
+  private static final Logger log = LoggerFactory.getLogger(JobHandling.class);
+
+  private JobHandling() {
+  }
+
+  /**
+   * Pops the raw bytes so compressed payloads survive, and decodes them with JobPayloadCodec.
+   * With reliableDequeue on the job is moved onto the worker's processing list in the same step.
+   * @return decoded payload, null if the queue was empty
+   */
+  static String pop(Jedis jedis, String namespace, String queue, String workerName, boolean reliableDequeue,
+      int heartbeatMillis) {
+    if (reliableDequeue) {
+      return JobPayloadCodec.decode(ProcessingListReaper.pop(jedis, namespace, queue, workerName, heartbeatMillis));
+    }
+    return JobPayloadCodec.decode(jedis.lpop(SafeEncoder.encode(JesqueUtils.createKey(namespace, QUEUE, queue))));
+  }
+
+  /**
+   * Reschedule a failed job through the delayed queue if its RetryPolicy retries it.
+   * @return true if the job was rescheduled, false if the failure should be recorded
+   */
+  static boolean retry(Jedis jedis, String namespace, JobFactory jobFactory, Job job, String queue,
+      Throwable thrwbl, String workerName) {
+    try {
+      RetryPolicy.Retry retry = RetryPolicy.nextAttempt(jobFactory, job);
+      if (retry == null) {
+        return false;
+      }
+      DelayedJobScheduler.schedule(jedis, namespace, queue, DelayedJobScheduler.toPayload(retry.job),
+          System.currentTimeMillis() + retry.delayMillis);
+      log.info("{} retrying job on queue '{}' in {} millis, attempt {}: {}", new Object[] { workerName, queue,
+          retry.delayMillis, RetryPolicy.getAttempt(retry.job) + 1, thrwbl.toString() });
+      return true;
+    } catch (RuntimeException e) {
+      log.warn("{} unable to schedule retry of job {}", new Object[] { workerName, job, e });
+      return false;
+    }
+  }
+
+  /**
+   * Jobs deferred for a time go through the delayed queue, so a DelayedJobPromoter must be running for them to come
+   * back.  Jobs deferred without a time go straight to the end of the queue.
+   */
+  static void defer(Jedis jedis, String namespace, DeferredJob deferredJob, String queue, String workerName) {
+    String payload = DelayedJobScheduler.toPayload(deferredJob.getJob());
+    if (deferredJob.getDeferMillis() > 0) {
+      DelayedJobScheduler.schedule(jedis, namespace, queue, payload, System.currentTimeMillis()
+          + deferredJob.getDeferMillis());
+    } else {
+      jedis.rpush(JesqueUtils.createKey(namespace, QUEUE, queue), payload);
+    }
+    log.debug("{} deferred job on queue '{}' for {} millis: {}", new Object[] { workerName, queue,
+        deferredJob.getDeferMillis(), deferredJob.getReason() });
+  }
+}
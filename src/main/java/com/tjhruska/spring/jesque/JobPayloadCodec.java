@@ -0,0 +1,203 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.utils.CompositeDateFormat;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+
+/**
+ * Encodes job payloads as stored in redis queues.  A payload is either the plain JSON jesque writes, the same job in
+ * Smile (binary JSON), or either of those gzip compressed.  Compressed payloads are recognized by the gzip header
+ * (0x1f 0x8b), Smile payloads by the Smile header (":)\n"), and neither can start a JSON document, so all formats
+ * can share a queue and readers need no configuration.
+ * Smile payloads are smaller and cheaper to parse.  To keep the String based worker hooks, decode() hands them on
+ * as ISO-8859-1 strings holding the raw bytes, which readJob() parses without going through JSON.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public final class JobPayloadCodec {
+  private static final Charset UTF_8 = Charset.forName("UTF-8");
+  private static final Charset ISO_8859_1 = Charset.forName("ISO-8859-1");
+  private static final int GZIP_MAGIC_1 = 0x1f;
+  private static final int GZIP_MAGIC_2 = 0x8b;
+  private static final String SMILE_HEADER = ":)\n";
+  private static final ObjectMapper SMILE_MAPPER = new ObjectMapper(new SmileFactory());
+
+  static {
+    // same settings as jesque's JSON mapper
+    SMILE_MAPPER.configure(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS, false);
+    SMILE_MAPPER.setDateFormat(new CompositeDateFormat());
+  }
+
+  private JobPayloadCodec() {
+  }
+
+  /**
+   * @param payload raw payload as read from redis
+   * @return true if the payload carries the gzip header
+   */
+  public static boolean isCompressed(byte[] payload) {
+    return payload != null && payload.length > 2 && (payload[0] & 0xff) == GZIP_MAGIC_1
+        && (payload[1] & 0xff) == GZIP_MAGIC_2;
+  }
+
+  /**
+   * @param payload raw payload as read from redis, uncompressed
+   * @return true if the payload carries the Smile header
+   */
+  public static boolean isSmile(byte[] payload) {
+    return payload != null && payload.length > 3 && payload[0] == SMILE_HEADER.charAt(0)
+        && payload[1] == SMILE_HEADER.charAt(1) && payload[2] == SMILE_HEADER.charAt(2);
+  }
+
+  /**
+   * @param payload payload as returned by decode()
+   * @return true if the payload is a Smile job
+   */
+  public static boolean isSmile(String payload) {
+    return payload != null && payload.startsWith(SMILE_HEADER);
+  }
+
+  /**
+   * @param payload raw payload as read from redis, in any format
+   * @return the JSON job (Smile jobs as an ISO-8859-1 string of their bytes, see readJob()), or null for a null
+   *         payload
+   */
+  public static String decode(byte[] payload) {
+    if (payload == null) {
+      return null;
+    }
+    byte[] uncompressed = isCompressed(payload) ? decompress(payload) : payload;
+    return new String(uncompressed, isSmile(uncompressed) ? ISO_8859_1 : UTF_8);
+  }
+
+  /**
+   * @param payload payload as returned by decode(), JSON or Smile
+   * @return the job
+   */
+  public static Job readJob(String payload) throws IOException {
+    if (isSmile(payload)) {
+      return SMILE_MAPPER.readValue(payload.getBytes(ISO_8859_1), Job.class);
+    }
+    return ObjectMapperFactory.get().readValue(payload, Job.class);
+  }
+
+  /**
+   * @param payload raw payload as read from redis, in any format
+   * @return the job
+   */
+  public static Job readJob(byte[] payload) throws IOException {
+    byte[] uncompressed = isCompressed(payload) ? decompress(payload) : payload;
+    if (isSmile(uncompressed)) {
+      return SMILE_MAPPER.readValue(uncompressed, Job.class);
+    }
+    return ObjectMapperFactory.get().readValue(uncompressed, Job.class);
+  }
+
+  /**
+   * @return the job encoded as Smile
+   */
+  public static byte[] toSmile(Job job) {
+    try {
+      return SMILE_MAPPER.writeValueAsBytes(job);
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to encode job as Smile.", e);
+    }
+  }
+
+  /**
+   * Re-encode a payload as Smile, eg: while transporting jobs of producers that still write JSON.
+   * @param payload raw payload as read from redis, in any format
+   * @return the uncompressed Smile payload
+   */
+  public static byte[] toSmile(byte[] payload) {
+    if (isSmile(payload)) {
+      return payload;
+    }
+    try {
+      return toSmile(readJob(payload));
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to read job payload.", e);
+    }
+  }
+
+  private static byte[] decompress(byte[] payload) {
+    try {
+      GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(payload));
+      try {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length * 4);
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+          out.write(buffer, 0, read);
+        }
+        return out.toByteArray();
+      } finally {
+        in.close();
+      }
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to decompress job payload.", e);
+    }
+  }
+
+  /**
+   * Compress a payload that is not already compressed and is at least minBytes long.
+   * @param payload raw payload as read from redis
+   * @param minBytes smaller payloads are returned as is, compressing them costs more than it saves
+   * @return the payload to store
+   */
+  public static byte[] compress(byte[] payload, int minBytes) {
+    if (payload == null || payload.length < minBytes || isCompressed(payload)) {
+      return payload;
+    }
+    try {
+      ByteArrayOutputStream out = new ByteArrayOutputStream(payload.length / 4 + 32);
+      GZIPOutputStream gzip = new GZIPOutputStream(out);
+      try {
+        gzip.write(payload);
+      } finally {
+        gzip.close();
+      }
+      byte[] compressed = out.toByteArray();
+      return compressed.length < payload.length ? compressed : payload;
+    } catch (IOException e) {
+      throw new RuntimeException("Unable to compress job payload.", e);
+    }
+  }
+
+  /**
+   * @param json job as written by jesque
+   * @param minBytes smaller payloads are returned uncompressed
+   * @return the payload to store
+   */
+  public static byte[] compress(String json, int minBytes) {
+    return compress(json.getBytes(UTF_8), minBytes);
+  }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+/**
+ * Permit handed out by a JobAdmissionPolicy for one job.  It is released once the job has finished,
+ * whether it succeeded or not.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public interface JobPermit {
+  /**
+   * Permit for policies that have nothing to give back when the job finishes (eg: rate limits).
+   */
+  public static final JobPermit NONE = new JobPermit() {
+    @Override
+    public void release() {
+    }
+  };
+
+  public void release();
+}
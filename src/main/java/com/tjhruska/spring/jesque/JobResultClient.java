@@ -0,0 +1,307 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.JedisPubSub;
+
+/**
+ * Enqueues jobs whose results are wanted, and hands back a JobResultFuture for each.  The result id and this
+ * client's pub/sub channel are added to the job's vars; workers with a JobResultStore listener store the result
+ * and publish it to the channel, where one subscriber thread per client completes the waiting futures.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JobResultClient implements InitializingBean, DisposableBean {
+  private static final Logger log = LoggerFactory.getLogger(JobResultClient.class);
+
+  private static final long SUBSCRIBE_TIMEOUT_SECONDS = 10;
+  private static final long RESUBSCRIBE_SLEEP_MILLIS = 1000;
+  private static final long PRUNE_INTERVAL_MILLIS = 1000;
+
+  private final JedisPool jedisPool;
+  private final Client jesqueClient;
+  private final String namespace;
+  private final String channel;
+
+  private final ConcurrentMap<String, JobResultFuture> waiting = new ConcurrentHashMap<String, JobResultFuture>();
+  private final Subscriber subscriber = new Subscriber();
+  private volatile CountDownLatch subscribed = new CountDownLatch(1);
+  private volatile boolean running;
+  private Thread subscriberThread;
+  private volatile long storeCheckMillis = 5000;
+  private volatile int resultTtlSeconds = 3600;
+  private volatile long lastPrunedMillis = System.currentTimeMillis();
+
+  /**
+   * @param jedisPool redis database the JobResultStore writes results to
+   * @param jesqueClient client used to enqueue the jobs
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public JobResultClient(JedisPool jedisPool, Client jesqueClient, String namespace) {
+    this.jedisPool = jedisPool;
+    this.jesqueClient = jesqueClient;
+    this.namespace = namespace;
+    this.channel = JesqueUtils.createKey(namespace, JobResultStore.RESULT, "channel",
+        ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString());
+  }
+
+  public String getChannel() {
+    return channel;
+  }
+
+  public long getStoreCheckMillis() {
+    return storeCheckMillis;
+  }
+
+  /**
+   * @param storeCheckMillis how often an untimed JobResultFuture.get() reads the store in case a notification was
+   *          missed, default 5 seconds
+   */
+  public void setStoreCheckMillis(long storeCheckMillis) {
+    this.storeCheckMillis = storeCheckMillis;
+  }
+
+  public int getResultTtlSeconds() {
+    return resultTtlSeconds;
+  }
+
+  /**
+   * @param resultTtlSeconds ttlSeconds of the JobResultStore, default one hour.  Futures nobody read are forgotten
+   *          once a result enqueued with them would have expired.
+   */
+  public void setResultTtlSeconds(int resultTtlSeconds) {
+    this.resultTtlSeconds = resultTtlSeconds;
+  }
+
+  /**
+   * @return futures not yet completed and read
+   */
+  public int getWaitingCount() {
+    return waiting.size();
+  }
+
+  @Override
+  public void afterPropertiesSet() throws InterruptedException {
+    running = true;
+    subscriberThread = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        subscribeLoop();
+      }
+    }, "JobResultClient-" + namespace);
+    subscriberThread.setDaemon(true);
+    subscriberThread.start();
+    if (!subscribed.await(SUBSCRIBE_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+      log.warn("JobResultClient not subscribed to {} yet, results will be read from the store on timeout", channel);
+    }
+  }
+
+  @Override
+  public void destroy() throws InterruptedException {
+    running = false;
+    if (subscriber.isSubscribed()) {
+      subscriber.unsubscribe();
+    }
+    if (subscriberThread != null) {
+      subscriberThread.join(SUBSCRIBE_TIMEOUT_SECONDS * 1000);
+    }
+  }
+
+  /**
+   * Enqueue a job, and get a future for its result.  The job's vars are updated with the result id and channel.
+   * @param queue queue to enqueue on
+   * @param job usually a BeanJob for a Callable bean
+   * @return future completed when the job finished
+   */
+  public JobResultFuture enqueue(String queue, Job job) {
+    pruneExpired();
+    String resultId = UUID.randomUUID().toString();
+    JobVars.set(job, JobVars.RESULT_ID, resultId);
+    JobVars.set(job, JobVars.RESULT_CHANNEL, channel);
+    JobResultFuture future = new JobResultFuture(resultId, this);
+    waiting.put(resultId, future);
+    try {
+      jesqueClient.enqueue(queue, job);
+    } catch (RuntimeException e) {
+      waiting.remove(resultId);
+      throw e;
+    }
+    return future;
+  }
+
+  /**
+   * Read a stored result, eg: of a job enqueued by another client.
+   * @param resultId result id from the job's vars
+   * @return future that is done if the result was stored, null if there is no stored result
+   */
+  public JobResultFuture getStoredResult(String resultId) {
+    String envelope = readStored(resultId);
+    if (envelope == null) {
+      return null;
+    }
+    JobResultFuture future = new JobResultFuture(resultId, this);
+    complete(future, envelope);
+    return future;
+  }
+
+  boolean completeFromStore(JobResultFuture future) {
+    String envelope = readStored(future.getResultId());
+    if (envelope == null) {
+      return false;
+    }
+    complete(future, envelope);
+    return true;
+  }
+
+  void forget(String resultId) {
+    waiting.remove(resultId);
+  }
+
+  /**
+   * Forget futures whose result has expired from the store without them being completed, so jobs that never
+   * finished (or whose notification was missed and never read) don't pile up in waiting.
+   */
+  void pruneExpired() {
+    long now = System.currentTimeMillis();
+    if (now - lastPrunedMillis < PRUNE_INTERVAL_MILLIS) {
+      return;
+    }
+    lastPrunedMillis = now;
+    long expiredBefore = now - resultTtlSeconds * 1000L;
+    for (JobResultFuture future : waiting.values()) {
+      if (future.getCreatedMillis() < expiredBefore) {
+        waiting.remove(future.getResultId(), future);
+      }
+    }
+  }
+
+  @SuppressWarnings("resource")
+  private String readStored(String resultId) {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      String envelope = jedis.get(JobResultStore.getResultKey(namespace, resultId));
+      hadException = false;
+      return envelope;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  private void complete(JobResultFuture future, String envelope) {
+    try {
+      complete(future, ObjectMapperFactory.get().readValue(envelope, Map.class));
+    } catch (Exception e) {
+      future.complete(null, "Unreadable result: " + e);
+    }
+  }
+
+  private void complete(JobResultFuture future, Map<?, ?> envelope) {
+    future.complete(envelope.get("result"), (String) envelope.get("error"));
+  }
+
+  @SuppressWarnings("resource")
+  private void subscribeLoop() {
+    while (running) {
+      Jedis jedis = null;
+      boolean hadException = true;
+      try {
+        jedis = jedisPool.getResource();
+        jedis.subscribe(subscriber, channel);
+        hadException = false;
+      } catch (Exception e) {
+        if (running) {
+          log.warn("JobResultClient lost its subscription to " + channel + ", resubscribing", e);
+          subscribed = new CountDownLatch(1);
+          try {
+            Thread.sleep(RESUBSCRIBE_SLEEP_MILLIS);
+          } catch (InterruptedException ie) {
+            return;
+          }
+        }
+      } finally {
+        if (hadException) {
+          jedisPool.returnBrokenResource(jedis);
+        } else {
+          jedisPool.returnResource(jedis);
+        }
+      }
+    }
+  }
+
+  private class Subscriber extends JedisPubSub {
+    @Override
+    public void onMessage(String channel, String message) {
+      try {
+        Map<?, ?> envelope = ObjectMapperFactory.get().readValue(message, Map.class);
+        JobResultFuture future = waiting.remove(envelope.get("id"));
+        if (future != null) {
+          complete(future, envelope);
+        }
+      } catch (Exception e) {
+        log.warn("JobResultClient ignoring unreadable result message: " + message, e);
+      }
+    }
+
+    @Override
+    public void onSubscribe(String channel, int subscribedChannels) {
+      subscribed.countDown();
+    }
+
+    @Override
+    public void onPMessage(String pattern, String channel, String message) {
+    }
+
+    @Override
+    public void onUnsubscribe(String channel, int subscribedChannels) {
+    }
+
+    @Override
+    public void onPUnsubscribe(String pattern, int subscribedChannels) {
+    }
+
+    @Override
+    public void onPSubscribe(String pattern, int subscribedChannels) {
+    }
+  }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * Result of a job enqueued through JobResultClient.  Completed when the result store notifies the client, so
+ * waiting for it costs almost no polling; the store is only read in case a notification was missed.  A job that
+ * failed completes the future with an ExecutionException.
+ * Jobs can't be taken back once enqueued, so cancel() always returns false.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JobResultFuture implements Future<Object> {
+  private final String resultId;
+  private final JobResultClient client;
+  private final CountDownLatch done = new CountDownLatch(1);
+  private final long createdMillis = System.currentTimeMillis();
+  private volatile Object result;
+  private volatile String error;
+
+  JobResultFuture(String resultId, JobResultClient client) {
+    this.resultId = resultId;
+    this.client = client;
+  }
+
+  public String getResultId() {
+    return resultId;
+  }
+
+  long getCreatedMillis() {
+    return createdMillis;
+  }
+
+  void complete(Object result, String error) {
+    if (done.getCount() > 0) {
+      this.result = result;
+      this.error = error;
+      done.countDown();
+    }
+  }
+
+  @Override
+  public boolean cancel(boolean mayInterruptIfRunning) {
+    return false;
+  }
+
+  @Override
+  public boolean isCancelled() {
+    return false;
+  }
+
+  @Override
+  public boolean isDone() {
+    return done.getCount() == 0;
+  }
+
+  /**
+   * Waits for the notification, reading the result store every storeCheckMillis of the client in case the
+   * notification was missed.
+   * @see java.util.concurrent.Future#get()
+   */
+  @Override
+  public Object get() throws InterruptedException, ExecutionException {
+    while (!done.await(client.getStoreCheckMillis(), TimeUnit.MILLISECONDS)) {
+      client.completeFromStore(this);
+    }
+    return getResult();
+  }
+
+  /**
+   * Waits for the notification, and before giving up reads the result store once in case the notification was
+   * missed (eg: the client reconnected while the job finished).
+   * @see java.util.concurrent.Future#get(long, java.util.concurrent.TimeUnit)
+   */
+  @Override
+  public Object get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+    if (!done.await(timeout, unit) && !client.completeFromStore(this)) {
+      throw new TimeoutException("No result for job " + resultId + " yet.");
+    }
+    return getResult();
+  }
+
+  private Object getResult() throws ExecutionException {
+    client.forget(resultId);
+    if (error != null) {
+      throw new ExecutionException(new RuntimeException(error));
+    }
+    return result;
+  }
+}
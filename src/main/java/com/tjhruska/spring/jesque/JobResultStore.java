@@ -0,0 +1,219 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_FAILURE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_SUCCESS;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.utils.JesqueUtils;
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerEvent;
+import net.greghaines.jesque.worker.WorkerListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Worker listener that stores the result (the return value of a Callable bean job, or its failure) of every job
+ * enqueued through JobResultClient.  Results are written to redis under "namespace:result:resultId" with a TTL, and
+ * the client that enqueued the job is notified on its pub/sub channel.  Writes are handed to a background thread,
+ * which writes everything waiting in one pipelined round trip, so under load many results share a round trip and
+ * workers never wait on the result store.
+ * Register it with JesqueContainer.setWorkerListeners().  Jobs without a result id are ignored.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JobResultStore implements WorkerListener, InitializingBean, DisposableBean {
+  private static final Logger log = LoggerFactory.getLogger(JobResultStore.class);
+
+  static final String RESULT = "result";
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private int ttlSeconds = 3600;
+  private int batchSize = 100;
+
+  private final BlockingQueue<String[]> pending = new LinkedBlockingQueue<String[]>();
+  private volatile boolean running;
+  private Thread writer;
+
+  /**
+   * @param jedisPool redis database results are kept in, the same one JobResultClient reads
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public JobResultStore(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * @param ttlSeconds how long a result is kept, default one hour
+   */
+  public void setTtlSeconds(int ttlSeconds) {
+    this.ttlSeconds = ttlSeconds;
+  }
+
+  public int getTtlSeconds() {
+    return ttlSeconds;
+  }
+
+  /**
+   * @param batchSize most results written in one pipelined round trip, default 100
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @return results waiting to be written
+   */
+  public int getPendingCount() {
+    return pending.size();
+  }
+
+  @Override
+  public void afterPropertiesSet() {
+    running = true;
+    writer = new Thread(new Runnable() {
+      @Override
+      public void run() {
+        writeLoop();
+      }
+    }, "JobResultStore-" + namespace);
+    writer.setDaemon(true);
+    writer.start();
+  }
+
+  /**
+   * Stops the writer after writing the results already waiting.
+   * @see org.springframework.beans.factory.DisposableBean#destroy()
+   */
+  @Override
+  public void destroy() throws InterruptedException {
+    running = false;
+    if (writer != null) {
+      writer.interrupt();
+      writer.join();
+    }
+  }
+
+  @Override
+  public void onEvent(WorkerEvent event, Worker worker, String queue, Job job, Object runner, Object result,
+      Throwable t) {
+    if ((event != JOB_SUCCESS && event != JOB_FAILURE) || job == null) {
+      return;
+    }
+    String resultId = JobVars.getString(job, JobVars.RESULT_ID);
+    if (resultId == null) {
+      return;
+    }
+    pending.add(new String[] { resultId, JobVars.getString(job, JobVars.RESULT_CHANNEL),
+        toEnvelope(resultId, event == JOB_SUCCESS ? result : null, t) });
+  }
+
+  static String toEnvelope(String resultId, Object result, Throwable t) {
+    Map<String, Object> envelope = new LinkedHashMap<String, Object>();
+    envelope.put("id", resultId);
+    if (t != null) {
+      envelope.put("error", t.toString());
+    } else {
+      envelope.put("result", result);
+    }
+    try {
+      return ObjectMapperFactory.get().writeValueAsString(envelope);
+    } catch (Exception e) {
+      envelope.remove("result");
+      envelope.put("error", "Result of type " + result.getClass().getName() + " could not be serialized: " + e);
+      try {
+        return ObjectMapperFactory.get().writeValueAsString(envelope);
+      } catch (Exception e2) {
+        throw new RuntimeException(e2);
+      }
+    }
+  }
+
+  private void writeLoop() {
+    List<String[]> batch = new ArrayList<String[]>(batchSize);
+    while (running || !pending.isEmpty()) {
+      try {
+        if (batch.isEmpty()) {
+          String[] first = running ? pending.take() : pending.poll();
+          if (first == null) {
+            break;
+          }
+          batch.add(first);
+          pending.drainTo(batch, batchSize - 1);
+        }
+        write(batch);
+        batch.clear();
+      } catch (InterruptedException e) {
+        // destroy() was called, the loop writes whatever is left before exiting
+      } catch (Exception e) {
+        log.error("Failed to store " + batch.size() + " job results, they are lost", e);
+        batch.clear();
+      }
+    }
+  }
+
+  @SuppressWarnings("resource")
+  private void write(List<String[]> batch) {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Pipeline pipeline = jedis.pipelined();
+      for (String[] item : batch) {
+        pipeline.setex(getResultKey(namespace, item[0]), ttlSeconds, item[2]);
+        if (item[1] != null) {
+          pipeline.publish(item[1], item[2]);
+        }
+      }
+      pipeline.sync();
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  static String getResultKey(String namespace, String resultId) {
+    return JesqueUtils.createKey(namespace, RESULT, resultId);
+  }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import net.greghaines.jesque.Job;
+
+/**
+ * Timeline of one traced job, as handed to a JobTraceExporter once the job finished.  The spans cover the job's life
+ * in order: a transport span per hop, the wait in the queue the worker popped it from, and its execution.
+ * Times come from the clocks of the enqueuing client, the transporters, and the worker, so spans across machines are
+ * only as accurate as their clocks are synchronized.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JobTrace {
+  private final String traceId;
+  private final String spanId;
+  private final String jobName;
+  private final String queue;
+  private final Throwable failure;
+  private final List<Span> spans;
+
+  JobTrace(Job job, String queue, long dequeuedAt, long finishedAt, Throwable failure) {
+    this.traceId = JobVars.getString(job, JobVars.TRACE_ID);
+    this.spanId = JobVars.getString(job, JobVars.SPAN_ID);
+    this.jobName = (BeanJobFactory.isBeanJob(job) && job.getArgs() != null && job.getArgs().length > 0) ? String
+        .valueOf(job.getArgs()[0]) : job.getClassName();
+    this.queue = queue;
+    this.failure = failure;
+
+    List<Span> spans = new ArrayList<Span>();
+    Object enqueuedAt = JobVars.get(job, JobVars.ENQUEUED_AT);
+    long arrivedAt = (enqueuedAt instanceof Number) ? ((Number) enqueuedAt).longValue() : dequeuedAt;
+    for (Object hop : JobTracing.getHops(job)) {
+      if (hop instanceof Map) {
+        Object at = ((Map<?, ?>) hop).get(JobTracing.HOP_AT);
+        if (at instanceof Number) {
+          long hopAt = ((Number) at).longValue();
+          spans.add(new Span("transport:" + ((Map<?, ?>) hop).get(JobTracing.HOP_QUEUE), arrivedAt, hopAt));
+          arrivedAt = hopAt;
+        }
+      }
+    }
+    spans.add(new Span("wait:" + queue, arrivedAt, dequeuedAt));
+    spans.add(new Span("execute:" + jobName, dequeuedAt, finishedAt));
+    this.spans = Collections.unmodifiableList(spans);
+  }
+
+  public String getTraceId() {
+    return traceId;
+  }
+
+  public String getSpanId() {
+    return spanId;
+  }
+
+  /**
+   * @return bean id of a BeanJob, class name of any other job
+   */
+  public String getJobName() {
+    return jobName;
+  }
+
+  /**
+   * @return queue the job was popped from
+   */
+  public String getQueue() {
+    return queue;
+  }
+
+  /**
+   * @return what the job threw, or null if it succeeded
+   */
+  public Throwable getFailure() {
+    return failure;
+  }
+
+  public List<Span> getSpans() {
+    return spans;
+  }
+
+  /**
+   * @return millis from enqueue until a worker popped the job, including transport
+   */
+  public long getQueuedMillis() {
+    return spans.get(spans.size() - 2).getEndMillis() - spans.get(0).getStartMillis();
+  }
+
+  /**
+   * @return millis the job ran
+   */
+  public long getExecutionMillis() {
+    return spans.get(spans.size() - 1).getDurationMillis();
+  }
+
+  @Override
+  public String toString() {
+    return "JobTrace [traceId=" + traceId + ", spanId=" + spanId + ", jobName=" + jobName + ", spans=" + spans
+        + ", failed=" + (failure != null) + "]";
+  }
+
+  /**
+   * One phase of a job's life.
+   */
+  public static class Span {
+    private final String name;
+    private final long startMillis;
+    private final long endMillis;
+
+    Span(String name, long startMillis, long endMillis) {
+      this.name = name;
+      this.startMillis = startMillis;
+      this.endMillis = endMillis;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public long getStartMillis() {
+      return startMillis;
+    }
+
+    public long getEndMillis() {
+      return endMillis;
+    }
+
+    public long getDurationMillis() {
+      return endMillis - startMillis;
+    }
+
+    @Override
+    public String toString() {
+      return name + "=" + getDurationMillis() + "ms";
+    }
+  }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import org.slf4j.LoggerFactory;
+
+/**
+ * Destination of the traces collected by JobTraceListener (eg: a tracing system, or metrics).
+ * Called on the worker thread after each traced job, so exporters should hand traces off rather than block.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public interface JobTraceExporter {
+  /**
+   * Drops every trace, JobTraceListener does no work at all with this exporter.
+   */
+  public static final JobTraceExporter NONE = new JobTraceExporter() {
+    @Override
+    public void export(JobTrace trace) {
+    }
+  };
+
+  /**
+   * Logs every trace at info level.
+   */
+  public static final JobTraceExporter LOG = new JobTraceExporter() {
+    @Override
+    public void export(JobTrace trace) {
+      LoggerFactory.getLogger(JobTraceExporter.class).info("{}", trace);
+    }
+  };
+
+  public void export(JobTrace trace);
+}
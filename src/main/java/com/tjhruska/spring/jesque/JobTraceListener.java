@@ -0,0 +1,95 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_FAILURE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_PROCESS;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_SUCCESS;
+import static net.greghaines.jesque.worker.WorkerEvent.WORKER_STOP;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerEvent;
+import net.greghaines.jesque.worker.WorkerListener;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Worker listener exporting a JobTrace for every finished job that carries a trace id (see JobTracing).  The dequeue
+ * time is taken when the worker starts processing the job, the finish time on success or failure.
+ * Register it with JesqueContainer.setWorkerListeners().
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class JobTraceListener implements WorkerListener {
+  private static final Logger log = LoggerFactory.getLogger(JobTraceListener.class);
+
+  private volatile JobTraceExporter exporter = JobTraceExporter.NONE;
+  // a worker processes one job (or batch) at a time, so its latest dequeue time is the one of its current job
+  private final ConcurrentMap<Worker, Long> dequeuedAt = new ConcurrentHashMap<Worker, Long>();
+
+  public JobTraceListener() {
+  }
+
+  /**
+   * @param exporter receives the trace of every traced job
+   */
+  public JobTraceListener(JobTraceExporter exporter) {
+    this.exporter = exporter;
+  }
+
+  public JobTraceExporter getExporter() {
+    return exporter;
+  }
+
+  public void setExporter(JobTraceExporter exporter) {
+    this.exporter = exporter;
+  }
+
+  @Override
+  public void onEvent(WorkerEvent event, Worker worker, String queue, Job job, Object runner, Object result,
+      Throwable t) {
+    JobTraceExporter current = exporter;
+    if (current == JobTraceExporter.NONE) {
+      return;
+    }
+    if (event == WORKER_STOP) {
+      dequeuedAt.remove(worker);
+    }
+    if (job == null || !JobTracing.isTraced(job)) {
+      return;
+    }
+    long now = System.currentTimeMillis();
+    if (event == JOB_PROCESS) {
+      dequeuedAt.put(worker, now);
+    } else if (event == JOB_SUCCESS || event == JOB_FAILURE) {
+      // kept until the next job, the jobs of a batch all finish after one dequeue
+      Long start = dequeuedAt.get(worker);
+      try {
+        current.export(new JobTrace(job, queue, start == null ? now : start, now, event == JOB_FAILURE ? t : null));
+      } catch (RuntimeException e) {
+        log.warn("Unable to export trace of job " + job, e);
+      }
+    }
+  }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+/**
+ * Trace metadata carried in a job's vars, so the time a job spends queued, in transport, and running can be told
+ * apart.  startTrace() stamps the enqueue time and trace ids before a job is enqueued, transporters with stampHops on
+ * append a hop for every queue they move a traced job to, and a JobTraceListener on the workers exports the spans.
+ * Untraced jobs carry nothing extra, and workers and transporters that know nothing of tracing pass the vars along.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public final class JobTracing {
+  static final String HOP_QUEUE = "queue";
+  static final String HOP_AT = "at";
+  private static final String TRACE_ID_MARKER = "\"" + JobVars.TRACE_ID + "\"";
+
+  private JobTracing() {
+  }
+
+  /**
+   * Start a new trace for a job about to be enqueued.
+   * @return the job
+   */
+  public static <T extends Job> T startTrace(T job) {
+    return startTrace(job, newId());
+  }
+
+  /**
+   * Trace a job about to be enqueued as part of an existing trace (eg: a job enqueued by another job).
+   * @param traceId trace the job belongs to
+   * @return the job
+   */
+  public static <T extends Job> T startTrace(T job, String traceId) {
+    JobVars.set(job, JobVars.TRACE_ID, traceId);
+    JobVars.set(job, JobVars.SPAN_ID, newId());
+    JobVars.set(job, JobVars.ENQUEUED_AT, System.currentTimeMillis());
+    return job;
+  }
+
+  /**
+   * @return true if the job carries a trace id
+   */
+  public static boolean isTraced(Job job) {
+    return JobVars.get(job, JobVars.TRACE_ID) != null;
+  }
+
+  /**
+   * Record that a transporter moved a job to a queue.  JSON payloads without a trace id are returned as is, without
+   * being parsed.  Smile payloads do not quote their field names, so they are always parsed to find the trace id.
+   * @param payload raw payload as read from redis, compressed or not
+   * @param queue queue the job is moved to
+   * @return payload to push in its original format, uncompressed if a hop was added
+   */
+  public static byte[] stampHop(byte[] payload, String queue) {
+    String json = JobPayloadCodec.decode(payload);
+    if (json == null || (!JobPayloadCodec.isSmile(json) && !json.contains(TRACE_ID_MARKER))) {
+      return payload;
+    }
+    try {
+      Job job = JobPayloadCodec.readJob(json);
+      if (!isTraced(job)) {
+        return payload;
+      }
+      List<Object> hops = new ArrayList<Object>(getHops(job));
+      Map<String, Object> hop = new LinkedHashMap<String, Object>();
+      hop.put(HOP_QUEUE, queue);
+      hop.put(HOP_AT, System.currentTimeMillis());
+      hops.add(hop);
+      JobVars.set(job, JobVars.HOPS, hops);
+      return JobPayloadCodec.isSmile(json) ? JobPayloadCodec.toSmile(job) : ObjectMapperFactory.get()
+          .writeValueAsBytes(job);
+    } catch (Exception e) {
+      // tracing must never lose a job
+      return payload;
+    }
+  }
+
+  /**
+   * @return hops recorded for the job, each a map with the queue and the millis it was moved there
+   */
+  @SuppressWarnings("unchecked")
+  static List<Object> getHops(Job job) {
+    Object hops = JobVars.get(job, JobVars.HOPS);
+    return hops instanceof List ? (List<Object>) hops : new ArrayList<Object>();
+  }
+
+  private static String newId() {
+    return Long.toHexString(ThreadLocalRandom.current().nextLong());
+  }
+}
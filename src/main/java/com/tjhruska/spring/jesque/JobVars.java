@@ -0,0 +1,87 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import net.greghaines.jesque.Job;
+
+/**
+ * Named values spring-jesque keeps in a job's vars, next to its args, so they travel with the job through queues,
+ * transporters, and retries without changing what the bean receives.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public final class JobVars {
+  /** Id the result of the job is stored under, see JobResultStore. */
+  public static final String RESULT_ID = "resultId";
+  /** Pub/sub channel notified when the result is stored. */
+  public static final String RESULT_CHANNEL = "resultChannel";
+  /** Job group the job belongs to, see JobGroupClient. */
+  public static final String GROUP_ID = "groupId";
+  /** Id of a child within its job group, so a child that runs twice is only counted once. */
+  public static final String GROUP_CHILD_ID = "groupChildId";
+  /** Set on the completion job of a job group. */
+  public static final String GROUP_COMPLETION = "groupCompletion";
+  /** Number of retries already made of a failed job, see RetryPolicy. */
+  public static final String ATTEMPT = "attempt";
+  /** Trace the job belongs to, see JobTracing. */
+  public static final String TRACE_ID = "traceId";
+  /** Span of this job within its trace. */
+  public static final String SPAN_ID = "spanId";
+  /** Millis at which a traced job was enqueued. */
+  public static final String ENQUEUED_AT = "enqueuedAt";
+  /** Queues a traced job was moved to by transporters, with the millis of each move. */
+  public static final String HOPS = "hops";
+  /** Ids of the arguments of the job stored aside by ClaimCheckStore. */
+  public static final String CLAIM_CHECKS = "claimChecks";
+
+  private JobVars() {
+  }
+
+  /**
+   * @return the var, or null if the job has no such var
+   */
+  public static Object get(Job job, String name) {
+    Map<String, Object> vars = job.getVars();
+    return vars == null ? null : vars.get(name);
+  }
+
+  /**
+   * @return the var as a string, or null if the job has no such var
+   */
+  public static String getString(Job job, String name) {
+    Object value = get(job, name);
+    return value == null ? null : value.toString();
+  }
+
+  /**
+   * Set a var, creating the job's vars if it has none yet.
+   */
+  public static void set(Job job, String name, Object value) {
+    Map<String, Object> vars = job.getVars();
+    if (vars == null) {
+      vars = new HashMap<String, Object>();
+      vars.put(name, value);
+      job.setVars(vars);
+    } else {
+      vars.put(name, value);
+    }
+  }
+}
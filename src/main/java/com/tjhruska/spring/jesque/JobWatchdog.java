@@ -0,0 +1,145 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.Collections;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Interrupts bean jobs that run past their timeout (see JobTimeout).  A job still running graceMillis after the
+ * interrupt is ignoring it, and its thread is reported as stuck, so JesqueContainer retires that worker and starts a
+ * replacement instead of silently losing capacity.  One daemon thread serves every watched job of the JVM.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public final class JobWatchdog {
+  private static final Logger log = LoggerFactory.getLogger(JobWatchdog.class);
+
+  private static final Set<Thread> stuckThreads = Collections.newSetFromMap(new ConcurrentHashMap<Thread, Boolean>());
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "JobWatchdog");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private JobWatchdog() {
+  }
+
+  /**
+   * @return true if the thread runs a job that ignored being interrupted for its timeout
+   */
+  public static boolean isStuck(Thread thread) {
+    return stuckThreads.contains(thread);
+  }
+
+  /**
+   * Start watching a job about to run on the current thread.
+   * @param timeoutMillis time after which the thread is interrupted
+   * @param graceMillis time after the interrupt after which the thread is reported stuck
+   * @param description names the job in log messages
+   * @return watch to finish once the job returned
+   */
+  static Watch watch(long timeoutMillis, long graceMillis, String description) {
+    final Watch watch = new Watch(Thread.currentThread(), timeoutMillis, graceMillis, description);
+    watch.timeoutFuture = scheduler.schedule(new Runnable() {
+      @Override
+      public void run() {
+        watch.timeout();
+      }
+    }, timeoutMillis, TimeUnit.MILLISECONDS);
+    return watch;
+  }
+
+  /**
+   * One running job.
+   */
+  static class Watch {
+    private final Thread thread;
+    private final long timeoutMillis;
+    private final long graceMillis;
+    private final String description;
+    private ScheduledFuture<?> timeoutFuture;
+    private ScheduledFuture<?> stuckFuture;
+    private boolean finished;
+    private boolean timedOut;
+
+    Watch(Thread thread, long timeoutMillis, long graceMillis, String description) {
+      this.thread = thread;
+      this.timeoutMillis = timeoutMillis;
+      this.graceMillis = graceMillis;
+      this.description = description;
+    }
+
+    synchronized void timeout() {
+      if (finished) {
+        return;
+      }
+      timedOut = true;
+      log.warn("Interrupting job {} on thread {}, it ran longer than {} millis", new Object[] { description,
+          thread.getName(), timeoutMillis });
+      thread.interrupt();
+      stuckFuture = scheduler.schedule(new Runnable() {
+        @Override
+        public void run() {
+          stuck();
+        }
+      }, graceMillis, TimeUnit.MILLISECONDS);
+    }
+
+    synchronized void stuck() {
+      if (finished) {
+        return;
+      }
+      log.error("Job {} on thread {} ignored its interrupt for {} millis, its worker will be replaced",
+          new Object[] { description, thread.getName(), graceMillis });
+      stuckThreads.add(thread);
+    }
+
+    /**
+     * Called on the job's thread once the job returned.  Clears an interrupt meant for the job, so it does not hit
+     * the worker.
+     * @return true if the job was interrupted for overrunning
+     */
+    synchronized boolean finish() {
+      finished = true;
+      timeoutFuture.cancel(false);
+      if (stuckFuture != null) {
+        stuckFuture.cancel(false);
+      }
+      if (timedOut) {
+        stuckThreads.remove(thread);
+        Thread.interrupted();
+      }
+      return timedOut;
+    }
+  }
+}
@@ -0,0 +1,379 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanNameAware;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Response;
+import redis.clients.jedis.Transaction;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Greedy transporter that spreads the jobs of one source queue over several destination partitions (queues on the
+ * same or different redis instances) while keeping the jobs of each key in order.  The key is one argument of the
+ * job, by default argument 1 which is the first BeanJob argument after the bean id (eg: a customer id).  Keys are
+ * mapped to partitions with a ConsistentHashRing, so adding a partition only moves a small share of the keys.
+ * Jobs without the key argument all go to the partition of the empty key.
+ * Jobs are taken from the source batchSize at a time in one atomic round trip, and each partition gets the jobs
+ * of a batch in one multi value RPUSH.  If a push fails the jobs of that partition are returned to the head of the
+ * source queue in their original order.
+ * The jobs of a key stay in order only while one run at a time takes from the source: schedule the transporter on
+ * a single node, or give it a leaderLease so only the node holding the lease moves jobs.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+@ManagedResource(description = "Moves jobs from a source queue to key partitioned destination queues")
+public class PartitionedJesqueJobTransporter implements Runnable, BeanNameAware {
+  private static final Logger log = LoggerFactory.getLogger(PartitionedJesqueJobTransporter.class);
+
+  private String beanName;
+
+  private final JedisPool sourceJedisPool;
+  private final String sourceQueueName;
+  private final String queueNamePrefix;
+  private final ConsistentHashRing<TransportPartition> ring;
+
+  private int keyArgIndex = 1;
+  private int batchSize = 100;
+  private Integer compressionMinBytes;
+  private boolean stampHops;
+  private RedisLeaderLease leaderLease;
+
+  private final AtomicLong jobsMoved = new AtomicLong();
+  private final AtomicLong roundTrips = new AtomicLong();
+  private final AtomicLong failedPushesReturned = new AtomicLong();
+  private final AtomicLong runsSkippedNotLeader = new AtomicLong();
+  private final Map<String, AtomicLong> jobsMovedByPartition = new ConcurrentHashMap<String, AtomicLong>();
+  private volatile long lastRunMillis;
+
+  /**
+   * @param sourceJedisPool redis source database
+   * @param sourceQueueName take jobs from this queue (greedy)
+   * @param partitions destination queues, partition names must be unique
+   * @param queueNamePrefix typically this will be the standard resque prefix "resque:queue:"
+   * @param virtualNodes points per partition on the hash ring, eg: 160
+   */
+  public PartitionedJesqueJobTransporter(JedisPool sourceJedisPool, String sourceQueueName,
+      List<TransportPartition> partitions, String queueNamePrefix, int virtualNodes) {
+    this.sourceJedisPool = sourceJedisPool;
+    this.sourceQueueName = sourceQueueName;
+    this.queueNamePrefix = queueNamePrefix;
+
+    Map<String, TransportPartition> byName = new LinkedHashMap<String, TransportPartition>();
+    for (TransportPartition partition : partitions) {
+      if (byName.put(partition.getName(), partition) != null) {
+        throw new IllegalArgumentException("Partition name '" + partition.getName() + "' is used more than once.");
+      }
+      jobsMovedByPartition.put(partition.getName(), new AtomicLong());
+    }
+    this.ring = new ConsistentHashRing<TransportPartition>(byName, virtualNodes);
+  }
+
+  /**
+   * @param sourceJedisPool redis source database
+   * @param sourceQueueName take jobs from this queue (greedy)
+   * @param partitions destination queues, partition names must be unique
+   * @param queueNamePrefix typically this will be the standard resque prefix "resque:queue:"
+   */
+  public PartitionedJesqueJobTransporter(JedisPool sourceJedisPool, String sourceQueueName,
+      List<TransportPartition> partitions, String queueNamePrefix) {
+    this(sourceJedisPool, sourceQueueName, partitions, queueNamePrefix, 160);
+  }
+
+  @Override
+  public void setBeanName(String name) {
+    this.beanName = name;
+  }
+
+  /**
+   * @param keyArgIndex index of the job argument used as partition key, default 1
+   */
+  public void setKeyArgIndex(int keyArgIndex) {
+    this.keyArgIndex = keyArgIndex;
+  }
+
+  public int getKeyArgIndex() {
+    return keyArgIndex;
+  }
+
+  /**
+   * @param batchSize jobs taken from the source per round trip, default 100
+   */
+  public void setBatchSize(int batchSize) {
+    this.batchSize = batchSize;
+  }
+
+  public int getBatchSize() {
+    return batchSize;
+  }
+
+  /**
+   * @param compressionMinBytes gzip payloads of at least this many bytes when pushing them, null (default) to never
+   * @see JesqueJobTransporter#setCompressionMinBytes(Integer)
+   */
+  public void setCompressionMinBytes(Integer compressionMinBytes) {
+    this.compressionMinBytes = compressionMinBytes;
+  }
+
+  public Integer getCompressionMinBytes() {
+    return compressionMinBytes;
+  }
+
+  /**
+   * @param stampHops append a hop with the partition's queue to every traced job moved (see JobTracing)
+   */
+  public void setStampHops(boolean stampHops) {
+    this.stampHops = stampHops;
+  }
+
+  public boolean isStampHops() {
+    return stampHops;
+  }
+
+  /**
+   * Single leader mode for transporters scheduled on every node, which keeps the jobs of each key in order.  A run
+   * only moves jobs when this node holds the lease, other nodes skip the run after one round trip.  Takes from the
+   * source are fenced by the lease, so the lease must be kept in the source redis database.
+   * @param leaderLease lease for this route, shared by the same transporter bean on every node
+   * @see JesqueJobTransporter#setLeaderLease(RedisLeaderLease)
+   */
+  public void setLeaderLease(RedisLeaderLease leaderLease) {
+    this.leaderLease = leaderLease;
+  }
+
+  public RedisLeaderLease getLeaderLease() {
+    return leaderLease;
+  }
+
+  /**
+   * @param key partition key
+   * @return the partition jobs with this key are sent to
+   */
+  public TransportPartition getPartition(String key) {
+    return ring.get(key);
+  }
+
+  /**
+   * Move jobs until the source queue is empty.
+   */
+  @SuppressWarnings("resource")
+  @Override
+  public void run() {
+    long leaderToken = 0;
+    if (leaderLease != null) {
+      roundTrips.incrementAndGet();
+      leaderToken = leaderLease.tryAcquire();
+      if (leaderToken == 0) {
+        runsSkippedNotLeader.incrementAndGet();
+        log.debug("{} is not the leader for source queue '{}', skipping run", beanName, sourceQueueName);
+        return;
+      }
+    }
+
+    long start = System.currentTimeMillis();
+    Jedis sourceJedis = null;
+    Map<TransportPartition, Jedis> destJedis = new HashMap<TransportPartition, Jedis>();
+    Set<TransportPartition> broken = new HashSet<TransportPartition>();
+
+    boolean hadException = true;
+    try {
+      sourceJedis = sourceJedisPool.getResource();
+      int jobCount = 0;
+      List<byte[]> batch;
+      do {
+        try {
+          batch = takeBatch(sourceJedis, leaderToken);
+        } catch (RedisLeaderLease.LeaseLostException e) {
+          log.warn("{} lost leadership, stopping run: {}", beanName, e.getMessage());
+          break;
+        }
+        jobCount += pushBatch(sourceJedis, batch, destJedis, broken);
+      } while (batch.size() == batchSize);
+
+      log.info("{} job copied {} jobs from source queue '{}' to {} partitions", new Object[] { beanName, jobCount,
+          sourceQueueName, ring.getNodes().size() });
+      hadException = false;
+    } finally {
+      if (hadException) {
+        sourceJedisPool.returnBrokenResource(sourceJedis);
+      } else {
+        sourceJedisPool.returnResource(sourceJedis);
+      }
+      for (Map.Entry<TransportPartition, Jedis> entry : destJedis.entrySet()) {
+        if (broken.contains(entry.getKey())) {
+          entry.getKey().getJedisPool().returnBrokenResource(entry.getValue());
+        } else {
+          entry.getKey().getJedisPool().returnResource(entry.getValue());
+        }
+      }
+      lastRunMillis = System.currentTimeMillis() - start;
+    }
+  }
+
+  @SuppressWarnings("unchecked")
+  private List<byte[]> takeBatch(Jedis sourceJedis, long leaderToken) {
+    if (leaderLease != null) {
+      roundTrips.incrementAndGet();
+      return leaderLease.fencedTake(sourceJedis, queueNamePrefix + sourceQueueName, batchSize, leaderToken);
+    }
+    byte[] sourceKey = SafeEncoder.encode(queueNamePrefix + sourceQueueName);
+    Transaction transaction = sourceJedis.multi();
+    Response<List<byte[]>> taken = transaction.lrange(sourceKey, 0, batchSize - 1);
+    transaction.ltrim(sourceKey, batchSize, -1);
+    transaction.exec();
+    roundTrips.incrementAndGet();
+    return taken.get();
+  }
+
+  /**
+   * @return number of jobs pushed
+   */
+  private int pushBatch(Jedis sourceJedis, List<byte[]> batch, Map<TransportPartition, Jedis> destJedis,
+      Set<TransportPartition> broken) {
+    if (batch.isEmpty()) {
+      return 0;
+    }
+    List<TransportPartition> owners = new ArrayList<TransportPartition>(batch.size());
+    Map<TransportPartition, List<byte[]>> byPartition = new LinkedHashMap<TransportPartition, List<byte[]>>();
+    for (byte[] payload : batch) {
+      TransportPartition partition = ring.get(getKey(payload));
+      owners.add(partition);
+      List<byte[]> payloads = byPartition.get(partition);
+      if (payloads == null) {
+        payloads = new ArrayList<byte[]>();
+        byPartition.put(partition, payloads);
+      }
+      byte[] pushed = stampHops ? JobTracing.stampHop(payload, partition.getQueueName()) : payload;
+      payloads.add(compressionMinBytes == null ? pushed : JobPayloadCodec.compress(pushed, compressionMinBytes));
+    }
+
+    int pushed = 0;
+    RuntimeException failure = null;
+    Set<TransportPartition> failed = new HashSet<TransportPartition>();
+    for (Map.Entry<TransportPartition, List<byte[]>> entry : byPartition.entrySet()) {
+      TransportPartition partition = entry.getKey();
+      List<byte[]> payloads = entry.getValue();
+      try {
+        Jedis jedis = destJedis.get(partition);
+        if (jedis == null) {
+          jedis = partition.getJedisPool().getResource();
+          destJedis.put(partition, jedis);
+        }
+        jedis.rpush(SafeEncoder.encode(queueNamePrefix + partition.getQueueName()),
+            payloads.toArray(new byte[payloads.size()][]));
+        roundTrips.incrementAndGet();
+        pushed += payloads.size();
+        jobsMoved.addAndGet(payloads.size());
+        jobsMovedByPartition.get(partition.getName()).addAndGet(payloads.size());
+      } catch (RuntimeException e) {
+        log.error("{} failed to push {} jobs to partition '{}', will return them to source", new Object[] { beanName,
+            payloads.size(), partition.getName() });
+        broken.add(partition);
+        failed.add(partition);
+        failure = e;
+      }
+    }
+
+    if (failure != null) {
+      // LPUSH puts each job at the head, so push the failed jobs last to first to keep their order
+      for (int i = batch.size() - 1; i >= 0; i--) {
+        if (failed.contains(owners.get(i))) {
+          sourceJedis.lpush(SafeEncoder.encode(queueNamePrefix + sourceQueueName), batch.get(i));
+          failedPushesReturned.incrementAndGet();
+        }
+      }
+      log.error("{} returned jobs of failed partitions to source queue", beanName);
+      throw failure;
+    }
+    return pushed;
+  }
+
+  private String getKey(byte[] payload) {
+    try {
+      Object[] args = JobPayloadCodec.readJob(payload).getArgs();
+      return (args == null || args.length <= keyArgIndex || args[keyArgIndex] == null) ? null : String
+          .valueOf(args[keyArgIndex]);
+    } catch (Exception e) {
+      log.warn("{} could not read partition key of job, sending it to the partition of the empty key", beanName);
+      return null;
+    }
+  }
+
+  @ManagedAttribute(description = "Jobs moved since start")
+  public long getJobsMoved() {
+    return jobsMoved.get();
+  }
+
+  @ManagedAttribute(description = "Jobs moved since start by partition name")
+  public Map<String, Long> getJobsMovedByPartition() {
+    Map<String, Long> moved = new LinkedHashMap<String, Long>();
+    for (String name : ring.getNodes().keySet()) {
+      moved.put(name, jobsMovedByPartition.get(name).get());
+    }
+    return moved;
+  }
+
+  @ManagedAttribute(description = "Redis round trips since start, both source and destinations")
+  public long getRoundTrips() {
+    return roundTrips.get();
+  }
+
+  @ManagedAttribute(description = "Millis taken by the latest run")
+  public long getLastRunMillis() {
+    return lastRunMillis;
+  }
+
+  @ManagedAttribute(description = "Jobs that failed to push to their partition and were returned to the source")
+  public long getFailedPushesReturned() {
+    return failedPushesReturned.get();
+  }
+
+  @ManagedAttribute(description = "True if this node held the leader lease at its latest run, or no lease is used")
+  public boolean isLeader() {
+    return leaderLease == null || leaderLease.getToken() > 0;
+  }
+
+  @ManagedAttribute(description = "Runs skipped because another node held the leader lease")
+  public long getRunsSkippedNotLeader() {
+    return runsSkippedNotLeader.get();
+  }
+
+  public String getSourceQueueName() {
+    return sourceQueueName;
+  }
+
+  public String getQueueNamePrefix() {
+    return queueNamePrefix;
+  }
+}
@@ -0,0 +1,48 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.List;
+
+/**
+ * Wraps an admitted bean job, and releases the permits it was admitted with once it finishes.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class PermitReleasingProxy extends DelegatingJobProxy {
+  private final List<JobPermit> permits;
+
+  /**
+   * @param delegate Runnable or Callable bean job
+   * @param permits released after the delegate finished
+   */
+  public PermitReleasingProxy(Object delegate, List<JobPermit> permits) {
+    super(delegate);
+    this.permits = permits;
+  }
+
+  @Override
+  public Object call() throws Exception {
+    try {
+      return callDelegate();
+    } finally {
+      BeanJobFactory.releaseAll(permits);
+    }
+  }
+}
@@ -0,0 +1,243 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import net.greghaines.jesque.utils.JesqueUtils;
+import net.greghaines.jesque.worker.Worker;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.BeanNameAware;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Reliable dequeue for workers that have reliableDequeue turned on (WorkerWithQueueStrategy and its subclasses,
+ * WorkerPooled).  Such a worker moves each job it pops into its own processing list in the same atomic step, and
+ * clears the list once the job is done, so a job is never only in the memory of a worker.
+ * The worker refreshes a heartbeat key on every poll, and keeps it alive while it runs a job (see WorkerHeartbeat).
+ * This reaper, added to the serverTasks of a SpringConfiguredJesqueServer, puts the jobs of every processing list
+ * whose worker has no heartbeat back at the head of the queue they came from, and also refreshes the heartbeats of
+ * the live workers of its optional jesqueContainers.  A node killed mid job therefore loses nothing, its jobs run
+ * again on other nodes once heartbeatMillis has passed.  Jobs can run twice, so they should be idempotent.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class ProcessingListReaper implements JesqueServerTask, BeanNameAware {
+  private static final Logger log = LoggerFactory.getLogger(ProcessingListReaper.class);
+
+  static final String PROCESSING = "processing";
+  static final String PROCESSING_LISTS = "processingLists";
+  static final String HEARTBEAT = "heartbeat";
+  public static final int DEFAULT_HEARTBEAT_MILLIS = 30000;
+
+  /**
+   * Lua has no LMOVE in redis 2.8, and RPOPLPUSH would take the newest job, so the pop from the head of the queue
+   * and the push onto the processing list happen in one script.  Also refreshes the heartbeat of the worker and
+   * records which queue the processing list draws from.
+   */
+  static final RedisScript POP_SCRIPT = new RedisScript(
+      "redis.call('SET', KEYS[3], '1', 'PX', ARGV[1])\n"
+    + "local job = redis.call('LPOP', KEYS[1])\n"
+    + "if job then\n"
+    + "  redis.call('LPUSH', KEYS[2], job)\n"
+    + "  redis.call('HSET', KEYS[4], KEYS[2], KEYS[1])\n"
+    + "end\n"
+    + "return job");
+
+  /**
+   * Requeue a processing list if its worker has no heartbeat.  The list holds the newest job at its head, so pushing
+   * from the head down leaves the oldest job first in the queue, where it was popped from.
+   */
+  static final RedisScript REAP_SCRIPT = new RedisScript(
+      "if redis.call('EXISTS', KEYS[3]) == 1 then return -1 end\n"
+    + "local queue = redis.call('HGET', KEYS[1], KEYS[2])\n"
+    + "local jobs = redis.call('LRANGE', KEYS[2], 0, -1)\n"
+    + "if queue then\n"
+    + "  for i = 1, #jobs do\n"
+    + "    redis.call('LPUSH', queue, jobs[i])\n"
+    + "  end\n"
+    + "end\n"
+    + "redis.call('DEL', KEYS[2])\n"
+    + "redis.call('HDEL', KEYS[1], KEYS[2])\n"
+    + "return #jobs");
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private Collection<JesqueContainer> jesqueContainers = Collections.emptyList();
+  private long intervalMillis = 5000L;
+  private int heartbeatMillis = DEFAULT_HEARTBEAT_MILLIS;
+  private String beanName;
+
+  /**
+   * @param jedisPool redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public ProcessingListReaper(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * Atomically pop the head of a queue onto the processing list of a worker.
+   * @return raw payload, or null when the queue is empty
+   */
+  static byte[] pop(Jedis jedis, String namespace, String queue, String workerName, int heartbeatMillis) {
+    String processingKey = getProcessingKey(namespace, workerName);
+    return (byte[]) POP_SCRIPT.evalBinary(jedis,
+        Arrays.asList(SafeEncoder.encode(JesqueUtils.createKey(namespace, QUEUE, queue)),
+            SafeEncoder.encode(processingKey), SafeEncoder.encode(getHeartbeatKey(processingKey)),
+            SafeEncoder.encode(JesqueUtils.createKey(namespace, PROCESSING_LISTS))),
+        Arrays.asList(SafeEncoder.encode(String.valueOf(heartbeatMillis))));
+  }
+
+  /**
+   * Called once every job popped onto the processing list of a worker has been handled.
+   */
+  static void complete(Jedis jedis, String namespace, String workerName) {
+    jedis.del(getProcessingKey(namespace, workerName));
+  }
+
+  static String getProcessingKey(String namespace, String workerName) {
+    return JesqueUtils.createKey(namespace, PROCESSING, workerName);
+  }
+
+  static String getHeartbeatKey(String processingKey) {
+    return processingKey + ":" + HEARTBEAT;
+  }
+
+  /**
+   * Refresh the heartbeats of local workers, then requeue the processing lists of dead workers.
+   */
+  @SuppressWarnings("resource")
+  @Override
+  public void run() {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      refreshHeartbeats(jedis);
+      long requeued = reap(jedis);
+      if (requeued > 0) {
+        log.info("{} requeued {} jobs of workers without a heartbeat", beanName, requeued);
+      }
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  void refreshHeartbeats(Jedis jedis) {
+    List<String> workerNames = new ArrayList<String>();
+    for (JesqueContainer jesqueContainer : jesqueContainers) {
+      Worker[] workers = jesqueContainer.getWorkers();
+      Thread[] workerThreads = jesqueContainer.getWorkerThreads();
+      for (int i = 0; i < Math.min(workers.length, workerThreads.length); i++) {
+        if (workers[i] != null && workerThreads[i] != null && workerThreads[i].isAlive()
+            && isReliable(workers[i])) {
+          workerNames.add(workers[i].getName());
+        }
+      }
+    }
+    if (workerNames.isEmpty()) {
+      return;
+    }
+    Pipeline pipeline = jedis.pipelined();
+    for (String workerName : workerNames) {
+      pipeline.psetex(getHeartbeatKey(getProcessingKey(namespace, workerName)), heartbeatMillis, "1");
+    }
+    pipeline.sync();
+  }
+
+  private static boolean isReliable(Worker worker) {
+    return (worker instanceof WorkerWithQueueStrategy && ((WorkerWithQueueStrategy) worker).isReliableDequeue())
+        || (worker instanceof WorkerPooled && ((WorkerPooled) worker).isReliableDequeue());
+  }
+
+  /**
+   * @return number of jobs requeued
+   */
+  long reap(Jedis jedis) {
+    String registryKey = JesqueUtils.createKey(namespace, PROCESSING_LISTS);
+    Set<String> processingKeys = jedis.hkeys(registryKey);
+    long requeued = 0;
+    for (String processingKey : processingKeys) {
+      Long moved = (Long) REAP_SCRIPT.eval(jedis,
+          Arrays.asList(registryKey, processingKey, getHeartbeatKey(processingKey)), Collections.<String> emptyList());
+      if (moved > 0) {
+        log.warn("{} requeued {} jobs from {}", new Object[] { beanName, moved, processingKey });
+        requeued += moved;
+      }
+    }
+    return requeued;
+  }
+
+  public Collection<JesqueContainer> getJesqueContainers() {
+    return jesqueContainers;
+  }
+
+  /**
+   * @param jesqueContainers containers on this node whose live workers get their heartbeats refreshed on every run,
+   *          on top of the refreshes of the workers themselves
+   */
+  public void setJesqueContainers(Collection<JesqueContainer> jesqueContainers) {
+    this.jesqueContainers = jesqueContainers;
+  }
+
+  @Override
+  public long getIntervalMillis() {
+    return intervalMillis;
+  }
+
+  public void setIntervalMillis(long intervalMillis) {
+    this.intervalMillis = intervalMillis;
+  }
+
+  public int getHeartbeatMillis() {
+    return heartbeatMillis;
+  }
+
+  /**
+   * @param heartbeatMillis how long a refreshed heartbeat lives, must be well above intervalMillis
+   */
+  public void setHeartbeatMillis(int heartbeatMillis) {
+    this.heartbeatMillis = heartbeatMillis;
+  }
+
+  @Override
+  public void setBeanName(String name) {
+    this.beanName = name;
+  }
+}
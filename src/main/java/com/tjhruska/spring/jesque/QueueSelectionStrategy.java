@@ -0,0 +1,39 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Decides the order in which a WorkerWithQueueStrategy tries its queues on each poll.
+ * A single strategy instance may be shared by every worker in a JesqueContainer, so implementations must be thread safe.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public interface QueueSelectionStrategy {
+  /**
+   * @param queueNames queues the worker is subscribed to, in configured order
+   * @param jedis connection of the calling worker, for strategies that need to look at queue depths
+   * @param namespace jesque namespace of the worker (typically "resque")
+   * @return queues in the order they should be popped for this poll, the worker takes the first job found.  Queues
+   *         left out are not polled this time.
+   */
+  public List<String> selectQueues(List<String> queueNames, Jedis jedis, String namespace);
+}
@@ -0,0 +1,289 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.FAILED;
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUES;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jmx.export.annotation.ManagedAttribute;
+import org.springframework.jmx.export.annotation.ManagedResource;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.Response;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Queue depths and job mix for dashboards.  The known queues are read with SMEMBERS, then one pipelined round trip
+ * reads the depth of every queue, a sample of the jobs at the head of each queue, and the size of the failed list.
+ * Unlike a script, the pipeline does not block redis while it walks every queue.  The result is cached for
+ * ttlMillis, and concurrent callers wait for a single collection, so any number of dashboard clients cost redis one
+ * collection per interval.
+ * The mix of each queue is estimated by counting the bean ids (class names for non bean jobs) of its sampled head
+ * and scaling the counts to the depth of the queue.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+@ManagedResource(description = "Cached queue depths and job mix")
+public class QueueStatistics {
+  private static final Logger log = LoggerFactory.getLogger(QueueStatistics.class);
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private long ttlMillis = 5000L;
+  private int sampleSize = 100;
+
+  private volatile Snapshot snapshot;
+
+  /**
+   * @param jedisPool redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public QueueStatistics(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * @return statistics no older than ttlMillis
+   */
+  public Snapshot getSnapshot() {
+    Snapshot current = snapshot;
+    if (current != null && System.currentTimeMillis() - current.collectedAt < ttlMillis) {
+      return current;
+    }
+    synchronized (this) {
+      current = snapshot;
+      if (current == null || System.currentTimeMillis() - current.collectedAt >= ttlMillis) {
+        current = collect();
+        snapshot = current;
+      }
+      return current;
+    }
+  }
+
+  @ManagedAttribute(description = "Jobs waiting in all queues")
+  public long getTotalDepth() {
+    long total = 0;
+    for (QueueStats queueStats : getSnapshot().getQueues().values()) {
+      total += queueStats.getDepth();
+    }
+    return total;
+  }
+
+  @ManagedAttribute(description = "Entries in the failed list")
+  public long getFailedCount() {
+    return getSnapshot().getFailedCount();
+  }
+
+  @ManagedAttribute(description = "Depth by queue name")
+  public Map<String, Long> getDepths() {
+    Map<String, Long> depths = new TreeMap<String, Long>();
+    for (QueueStats queueStats : getSnapshot().getQueues().values()) {
+      depths.put(queueStats.getQueue(), queueStats.getDepth());
+    }
+    return depths;
+  }
+
+  @SuppressWarnings("resource")
+  Snapshot collect() {
+    long started = System.currentTimeMillis();
+    Map<String, Response<Long>> depthReplies = new TreeMap<String, Response<Long>>();
+    Map<String, Response<List<byte[]>>> headReplies = new HashMap<String, Response<List<byte[]>>>();
+    Response<Long> failedReply;
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Set<String> queueNames = jedis.smembers(JesqueUtils.createKey(namespace, QUEUES));
+      Pipeline pipeline = jedis.pipelined();
+      for (String queue : queueNames) {
+        byte[] key = SafeEncoder.encode(JesqueUtils.createKey(namespace, QUEUE, queue));
+        depthReplies.put(queue, pipeline.llen(key));
+        if (sampleSize > 0) {
+          headReplies.put(queue, pipeline.lrange(key, 0, sampleSize - 1));
+        }
+      }
+      failedReply = pipeline.llen(JesqueUtils.createKey(namespace, FAILED));
+      pipeline.sync();
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+
+    Map<String, QueueStats> queues = new TreeMap<String, QueueStats>();
+    for (Map.Entry<String, Response<Long>> depthReply : depthReplies.entrySet()) {
+      String queue = depthReply.getKey();
+      Response<List<byte[]>> headReply = headReplies.get(queue);
+      List<byte[]> head = headReply == null ? Collections.<byte[]> emptyList() : headReply.get();
+      queues.put(queue, new QueueStats(queue, depthReply.getValue().get(), head.size(), countJobTypes(head)));
+    }
+    long failedCount = failedReply.get();
+    log.debug("Collected statistics of {} queues in {} millis", queues.size(), System.currentTimeMillis() - started);
+    return new Snapshot(System.currentTimeMillis(), Collections.unmodifiableMap(queues), failedCount);
+  }
+
+  private static Map<String, Long> countJobTypes(List<byte[]> head) {
+    Map<String, Long> counts = new HashMap<String, Long>();
+    for (byte[] payload : head) {
+      String type = getJobType(payload);
+      Long count = counts.get(type);
+      counts.put(type, count == null ? 1L : count + 1L);
+    }
+    return counts;
+  }
+
+  /**
+   * @return bean id of a BeanJob, class name of other jobs, or "unreadable"
+   */
+  static String getJobType(byte[] payload) {
+    try {
+      Job job = JobPayloadCodec.readJob(payload);
+      if (BeanJobFactory.isBeanJob(job) && job.getArgs() != null && job.getArgs().length > 0) {
+        return String.valueOf(job.getArgs()[0]);
+      }
+      return job.getClassName();
+    } catch (Exception e) {
+      return "unreadable";
+    }
+  }
+
+  public long getTtlMillis() {
+    return ttlMillis;
+  }
+
+  /**
+   * @param ttlMillis how long collected statistics are served from the cache
+   */
+  public void setTtlMillis(long ttlMillis) {
+    this.ttlMillis = ttlMillis;
+  }
+
+  public int getSampleSize() {
+    return sampleSize;
+  }
+
+  /**
+   * @param sampleSize jobs read from the head of each queue to estimate its mix, 0 to only read depths
+   */
+  public void setSampleSize(int sampleSize) {
+    this.sampleSize = sampleSize;
+  }
+
+  /**
+   * Statistics of all queues at one point in time.
+   */
+  public static class Snapshot {
+    private final long collectedAt;
+    private final Map<String, QueueStats> queues;
+    private final long failedCount;
+
+    Snapshot(long collectedAt, Map<String, QueueStats> queues, long failedCount) {
+      this.collectedAt = collectedAt;
+      this.queues = queues;
+      this.failedCount = failedCount;
+    }
+
+    /**
+     * @return epoch millis when the statistics were read
+     */
+    public long getCollectedAt() {
+      return collectedAt;
+    }
+
+    /**
+     * @return statistics by queue name
+     */
+    public Map<String, QueueStats> getQueues() {
+      return queues;
+    }
+
+    public long getFailedCount() {
+      return failedCount;
+    }
+  }
+
+  /**
+   * Depth and estimated job mix of one queue.
+   */
+  public static class QueueStats {
+    private final String queue;
+    private final long depth;
+    private final int sampled;
+    private final Map<String, Long> sampledJobTypes;
+
+    QueueStats(String queue, long depth, int sampled, Map<String, Long> sampledJobTypes) {
+      this.queue = queue;
+      this.depth = depth;
+      this.sampled = sampled;
+      this.sampledJobTypes = Collections.unmodifiableMap(sampledJobTypes);
+    }
+
+    public String getQueue() {
+      return queue;
+    }
+
+    public long getDepth() {
+      return depth;
+    }
+
+    /**
+     * @return number of jobs read from the head of the queue
+     */
+    public int getSampled() {
+      return sampled;
+    }
+
+    /**
+     * @return count by bean id (or class name) among the sampled jobs
+     */
+    public Map<String, Long> getSampledJobTypes() {
+      return sampledJobTypes;
+    }
+
+    /**
+     * @return sampled counts scaled to the depth of the queue, exact when the whole queue was sampled
+     */
+    public Map<String, Long> getEstimatedJobTypes() {
+      Map<String, Long> estimated = new HashMap<String, Long>();
+      for (Map.Entry<String, Long> entry : sampledJobTypes.entrySet()) {
+        estimated.put(entry.getKey(), sampled == 0 ? 0L : Math.round((double) entry.getValue() * depth / sampled));
+      }
+      return estimated;
+    }
+  }
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Cluster wide rate limit per bean, eg: "500 calls/sec total" for a bean that calls a rate limited partner API
+ * from workers on 40 nodes.  The limit is an atomic token bucket in redis, refilled at permitsPerSecond and holding
+ * at most one second worth of permits.  Each node leases permits from the bucket in chunks of leaseSize and spends
+ * them locally, so most jobs never touch redis.  Leased permits that are not spent within leaseMillis are dropped,
+ * which keeps a quiet node from hoarding permits.  Jobs over the limit are deferred for deferMillis, not failed.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class RateLimitAdmissionPolicy implements JobAdmissionPolicy {
+  static final RedisScript TOKEN_BUCKET_SCRIPT = new RedisScript(
+      "local rate = tonumber(ARGV[1])\n"
+    + "local capacity = tonumber(ARGV[2])\n"
+    + "local requested = tonumber(ARGV[3])\n"
+    + "local now = tonumber(ARGV[4])\n"
+    + "local bucket = redis.call('HMGET', KEYS[1], 'tokens', 'ts')\n"
+    + "local tokens = tonumber(bucket[1])\n"
+    + "local ts = tonumber(bucket[2])\n"
+    + "if tokens == nil or ts == nil then\n"
+    + "  tokens = capacity\n"
+    + "  ts = now\n"
+    + "end\n"
+    + "if now > ts then\n"
+    + "  tokens = math.min(capacity, tokens + (now - ts) * rate / 1000)\n"
+    + "  ts = now\n"
+    + "end\n"
+    + "local granted = math.min(requested, math.floor(tokens))\n"
+    + "tokens = tokens - granted\n"
+    + "redis.call('HMSET', KEYS[1], 'tokens', tostring(tokens), 'ts', tostring(ts))\n"
+    + "redis.call('PEXPIRE', KEYS[1], math.ceil(capacity * 1000 / rate) + 1000)\n"
+    + "return granted");
+
+  private static final String RATE_LIMIT = "rateLimit";
+
+  private final JedisPool jedisPool;
+  private final String namespace;
+  private Map<String, Integer> permitsPerSecond = Collections.emptyMap();
+  private int leaseSize = 0;
+  private long leaseMillis = 1000L;
+  private long deferMillis = 1000L;
+
+  private final ConcurrentMap<String, LeasedPermits> leasedPermits = new ConcurrentHashMap<String, LeasedPermits>();
+
+  /**
+   * @param jedisPool redis database holding the token buckets, shared by every node enforcing the limits
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public RateLimitAdmissionPolicy(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * @param permitsPerSecond cluster wide limit per bean id, beans not in the map are not limited
+   */
+  public void setPermitsPerSecond(Map<String, Integer> permitsPerSecond) {
+    this.permitsPerSecond = new HashMap<String, Integer>(permitsPerSecond);
+  }
+
+  public Map<String, Integer> getPermitsPerSecond() {
+    return Collections.unmodifiableMap(permitsPerSecond);
+  }
+
+  /**
+   * @param leaseSize permits a node takes from redis at a time, 0 (default) uses a tenth of the bean's limit.
+   *          Larger leases mean fewer round trips, smaller leases spread permits more evenly across nodes.
+   */
+  public void setLeaseSize(int leaseSize) {
+    this.leaseSize = leaseSize;
+  }
+
+  public int getLeaseSize() {
+    return leaseSize;
+  }
+
+  /**
+   * @param leaseMillis how long leased permits may be spent locally before they are dropped
+   */
+  public void setLeaseMillis(long leaseMillis) {
+    this.leaseMillis = leaseMillis;
+  }
+
+  public long getLeaseMillis() {
+    return leaseMillis;
+  }
+
+  /**
+   * @param deferMillis how long a job over the limit waits before it is tried again
+   */
+  public void setDeferMillis(long deferMillis) {
+    this.deferMillis = deferMillis;
+  }
+
+  @Override
+  public long getDeferMillis(String beanId) {
+    return deferMillis;
+  }
+
+  @Override
+  public JobPermit tryAcquire(String beanId, Job job) {
+    Integer limit = permitsPerSecond.get(beanId);
+    if (limit == null) {
+      return JobPermit.NONE;
+    }
+    LeasedPermits leased = leasedPermits.get(beanId);
+    if (leased == null) {
+      leasedPermits.putIfAbsent(beanId, new LeasedPermits());
+      leased = leasedPermits.get(beanId);
+    }
+
+    synchronized (leased) {
+      long now = System.currentTimeMillis();
+      if (leased.available <= 0 || now >= leased.expiresAt) {
+        if (now < leased.emptyUntil) {
+          // bucket was empty a moment ago, don't ask redis again before a permit can have been refilled
+          return null;
+        }
+        leased.available = lease(beanId, limit, now);
+        leased.expiresAt = now + leaseMillis;
+        if (leased.available <= 0) {
+          leased.emptyUntil = now + Math.max(1L, 1000L / limit);
+          return null;
+        }
+      }
+      leased.available--;
+      return JobPermit.NONE;
+    }
+  }
+
+  @SuppressWarnings("resource")
+  private int lease(String beanId, int limit, long now) {
+    int requested = leaseSize > 0 ? leaseSize : Math.max(1, limit / 10);
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Long granted = (Long) TOKEN_BUCKET_SCRIPT.eval(jedis,
+          Arrays.asList(JesqueUtils.createKey(namespace, RATE_LIMIT, beanId)),
+          Arrays.asList(String.valueOf(limit), String.valueOf(limit), String.valueOf(requested), String.valueOf(now)));
+      hadException = false;
+      return granted.intValue();
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  private static class LeasedPermits {
+    private int available;
+    private long expiresAt;
+    private long emptyUntil;
+  }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Leader election through an expiring lease in redis, so exactly one node does some work (eg: running a
+ * transporter route) while the same bean is scheduled on every node.  The node holding the lease renews it on
+ * every tryAcquire(); when it dies the lease expires after leaseMillis and the next node to try becomes leader.
+ * Every new leadership increments a fencing token.  Work done under the lease can be fenced by checking the owner
+ * and token inside the same redis call (see fencedLpop and fencedTake), so a leader that stalled past its lease
+ * cannot act after another node took over.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class RedisLeaderLease {
+  /**
+   * A renewal returns the current fencing token.  Should the fence key be gone (eg: evicted) the leader takes a new
+   * token, so fenced calls keep working.
+   */
+  static final RedisScript ACQUIRE_SCRIPT = new RedisScript(
+      "local owner = redis.call('GET', KEYS[1])\n"
+    + "if owner == ARGV[1] then\n"
+    + "  redis.call('PEXPIRE', KEYS[1], ARGV[2])\n"
+    + "  local fence = redis.call('GET', KEYS[2])\n"
+    + "  if fence then\n"
+    + "    return tonumber(fence)\n"
+    + "  end\n"
+    + "  return redis.call('INCR', KEYS[2])\n"
+    + "end\n"
+    + "if owner then\n"
+    + "  return 0\n"
+    + "end\n"
+    + "redis.call('SET', KEYS[1], ARGV[1], 'PX', ARGV[2])\n"
+    + "return redis.call('INCR', KEYS[2])");
+
+  static final RedisScript RELEASE_SCRIPT = new RedisScript(
+      "if redis.call('GET', KEYS[1]) == ARGV[1] then\n"
+    + "  return redis.call('DEL', KEYS[1])\n"
+    + "end\n"
+    + "return 0");
+
+  static final RedisScript FENCED_LPOP_SCRIPT = new RedisScript(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] or redis.call('GET', KEYS[2]) ~= ARGV[2] then\n"
+    + "  return -1\n"
+    + "end\n"
+    + "redis.call('PEXPIRE', KEYS[1], ARGV[3])\n"
+    + "return redis.call('LPOP', KEYS[3])");
+
+  static final RedisScript FENCED_TAKE_SCRIPT = new RedisScript(
+      "if redis.call('GET', KEYS[1]) ~= ARGV[1] or redis.call('GET', KEYS[2]) ~= ARGV[2] then\n"
+    + "  return -1\n"
+    + "end\n"
+    + "redis.call('PEXPIRE', KEYS[1], ARGV[3])\n"
+    + "local taken = redis.call('LRANGE', KEYS[3], 0, ARGV[4] - 1)\n"
+    + "redis.call('LTRIM', KEYS[3], ARGV[4], -1)\n"
+    + "return taken");
+
+  private final JedisPool jedisPool;
+  private final String leaseKey;
+  private final String ownerId;
+  private long leaseMillis = 5000L;
+  private volatile long token;
+
+  /**
+   * @param jedisPool redis database holding the lease
+   * @param leaseKey key of the lease, one per route or task being led (eg: "resque:leader:fooTransporter")
+   */
+  public RedisLeaderLease(JedisPool jedisPool, String leaseKey) {
+    this.jedisPool = jedisPool;
+    this.leaseKey = leaseKey;
+    this.ownerId = ManagementFactory.getRuntimeMXBean().getName() + ":" + UUID.randomUUID().toString();
+  }
+
+  /**
+   * @param leaseMillis how long the lease lives without renewal, this is how long failover takes.
+   *          Must be longer than the time between two tryAcquire() calls of the leader.
+   */
+  public void setLeaseMillis(long leaseMillis) {
+    this.leaseMillis = leaseMillis;
+  }
+
+  public long getLeaseMillis() {
+    return leaseMillis;
+  }
+
+  public String getLeaseKey() {
+    return leaseKey;
+  }
+
+  public String getFenceKey() {
+    return leaseKey + ":fence";
+  }
+
+  public String getOwnerId() {
+    return ownerId;
+  }
+
+  /**
+   * @return fencing token of the latest leadership this node held, 0 if it is not the leader
+   */
+  public long getToken() {
+    return token;
+  }
+
+  /**
+   * Acquire the lease if it is free, or renew it if this node already holds it.
+   * @return fencing token of this node's leadership, or 0 if another node is leader
+   */
+  @SuppressWarnings("resource")
+  public long tryAcquire() {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Long acquired = (Long) ACQUIRE_SCRIPT.eval(jedis, Arrays.asList(leaseKey, getFenceKey()),
+          Arrays.asList(ownerId, String.valueOf(leaseMillis)));
+      long acquiredToken = acquired == null ? 0L : acquired;
+      token = acquiredToken;
+      hadException = false;
+      return acquiredToken;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  /**
+   * Give up the lease (eg: on shutdown) so another node can take over right away.
+   */
+  @SuppressWarnings("resource")
+  public void release() {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      RELEASE_SCRIPT.eval(jedis, Arrays.asList(leaseKey), Arrays.asList(ownerId));
+      token = 0;
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+
+  /**
+   * LPOP that only happens while this node still holds the lease with the given token, and renews the lease.
+   * The jedis connection must be to the database holding the lease.
+   * @param jedis connection to the lease database
+   * @param queueKey list to pop from
+   * @param token fencing token returned by tryAcquire()
+   * @return the popped value, or null if the list is empty
+   * @throws LeaseLostException if the lease expired or another node became leader
+   */
+  public byte[] fencedLpop(Jedis jedis, String queueKey, long token) {
+    Object popped = FENCED_LPOP_SCRIPT.evalBinary(jedis,
+        Arrays.asList(SafeEncoder.encode(leaseKey), SafeEncoder.encode(getFenceKey()), SafeEncoder.encode(queueKey)),
+        Arrays.asList(SafeEncoder.encode(ownerId), SafeEncoder.encode(String.valueOf(token)),
+            SafeEncoder.encode(String.valueOf(leaseMillis))));
+    if (popped instanceof Long) {
+      this.token = 0;
+      throw new LeaseLostException("Lease " + leaseKey + " with token " + token + " is no longer held by " + ownerId
+          + ".");
+    }
+    return (byte[]) popped;
+  }
+
+  /**
+   * Take up to count values from the head of a list, only while this node still holds the lease with the given
+   * token, and renew the lease.  The jedis connection must be to the database holding the lease.
+   * @param jedis connection to the lease database
+   * @param queueKey list to take from
+   * @param count most values taken
+   * @param token fencing token returned by tryAcquire()
+   * @return the taken values in list order, empty if the list is empty
+   * @throws LeaseLostException if the lease expired or another node became leader
+   */
+  @SuppressWarnings("unchecked")
+  public List<byte[]> fencedTake(Jedis jedis, String queueKey, int count, long token) {
+    Object taken = FENCED_TAKE_SCRIPT.evalBinary(jedis,
+        Arrays.asList(SafeEncoder.encode(leaseKey), SafeEncoder.encode(getFenceKey()), SafeEncoder.encode(queueKey)),
+        Arrays.asList(SafeEncoder.encode(ownerId), SafeEncoder.encode(String.valueOf(token)),
+            SafeEncoder.encode(String.valueOf(leaseMillis)), SafeEncoder.encode(String.valueOf(count))));
+    if (taken instanceof Long) {
+      this.token = 0;
+      throw new LeaseLostException("Lease " + leaseKey + " with token " + token + " is no longer held by " + ownerId
+          + ".");
+    }
+    return (List<byte[]>) taken;
+  }
+
+  /**
+   * Thrown when work is attempted under a lease this node no longer holds.
+   */
+  public static class LeaseLostException extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    public LeaseLostException(String message) {
+      super(message);
+    }
+  }
+}
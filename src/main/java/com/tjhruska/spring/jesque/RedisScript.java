@@ -0,0 +1,90 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.exceptions.JedisDataException;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Lua script that is sent to redis once, and afterwards executed by its SHA1 digest.
+ * If redis no longer knows the script (restart, SCRIPT FLUSH, failover) it is sent again.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class RedisScript {
+  private final String script;
+  private volatile String sha;
+
+  /**
+   * @param script lua source
+   */
+  public RedisScript(String script) {
+    this.script = script;
+  }
+
+  public String getScript() {
+    return script;
+  }
+
+  /**
+   * @param jedis connection to run the script on
+   * @param keys redis keys the script touches
+   * @param args additional arguments
+   * @return reply of the script (Long, String, List, or null)
+   */
+  public Object eval(Jedis jedis, List<String> keys, List<String> args) {
+    String currentSha = sha;
+    if (currentSha != null) {
+      try {
+        return jedis.evalsha(currentSha, keys, args);
+      } catch (JedisDataException e) {
+        if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+          throw e;
+        }
+      }
+    }
+    sha = jedis.scriptLoad(script);
+    return jedis.evalsha(sha, keys, args);
+  }
+
+  /**
+   * Same as eval(), but bulk replies are returned as raw bytes, so binary values (eg: compressed payloads) survive.
+   * @param jedis connection to run the script on
+   * @param keys redis keys the script touches
+   * @param args additional arguments
+   * @return reply of the script (Long, byte[], List, or null)
+   */
+  public Object evalBinary(Jedis jedis, List<byte[]> keys, List<byte[]> args) {
+    String currentSha = sha;
+    if (currentSha != null) {
+      try {
+        return jedis.evalsha(SafeEncoder.encode(currentSha), keys, args);
+      } catch (JedisDataException e) {
+        if (e.getMessage() == null || !e.getMessage().startsWith("NOSCRIPT")) {
+          throw e;
+        }
+      }
+    }
+    sha = jedis.scriptLoad(script);
+    return jedis.evalsha(SafeEncoder.encode(sha), keys, args);
+  }
+}
@@ -0,0 +1,151 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.worker.JobFactory;
+
+/**
+ * How often, and how far apart, a failed bean job is retried before it goes to the failed list.
+ * The delay before retry n is initialDelayMillis * multiplier^(n-1), capped at maxDelayMillis, and then shortened
+ * by a random part of up to jitter (0.5 = anywhere between half and all of the delay), so jobs failing together
+ * during an outage don't all come back at the same moment.
+ * Retries go through the delayed queue, so a DelayedJobPromoter must be running.
+ * Register policies per bean id with BeanJobFactory.setRetryPolicies().
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class RetryPolicy {
+  private int maxAttempts = 3;
+  private long initialDelayMillis = 1000L;
+  private double multiplier = 2.0;
+  private long maxDelayMillis = 3600000L;
+  private double jitter = 0.5;
+
+  /**
+   * @param attempt number of the retry about to be scheduled, starting at 1
+   * @param random uniform random number in [0, 1)
+   * @return millis to wait before the retry
+   */
+  public long getDelayMillis(int attempt, double random) {
+    double delay = Math.min((double) maxDelayMillis, initialDelayMillis * Math.pow(multiplier, attempt - 1));
+    return (long) (delay * (1.0 - jitter * random));
+  }
+
+  /**
+   * @param job job that just failed
+   * @return true if the job has attempts left
+   */
+  public boolean shouldRetry(Job job) {
+    return getAttempt(job) + 1 < maxAttempts;
+  }
+
+  /**
+   * @return number of retries already made of the job, 0 for its first run
+   */
+  public static int getAttempt(Job job) {
+    Object attempt = JobVars.get(job, JobVars.ATTEMPT);
+    return attempt instanceof Number ? ((Number) attempt).intValue() : 0;
+  }
+
+  /**
+   * Prepare the next attempt of a failed job, if the job factory has a retry policy for it.
+   * @param jobFactory factory of the worker the job failed on
+   * @param job job that just failed
+   * @return copy of the job with its attempt counted and the delay before it should run, or null if the job should
+   *         not be retried
+   */
+  static Retry nextAttempt(JobFactory jobFactory, Job job) {
+    if (!(jobFactory instanceof BeanJobFactory)) {
+      return null;
+    }
+    RetryPolicy retryPolicy = ((BeanJobFactory) jobFactory).getRetryPolicy(job);
+    if (retryPolicy == null || !retryPolicy.shouldRetry(job)) {
+      return null;
+    }
+    int attempt = getAttempt(job) + 1;
+    Job retryJob = new Job(job);
+    JobVars.set(retryJob, JobVars.ATTEMPT, attempt);
+    return new Retry(retryJob, retryPolicy.getDelayMillis(attempt, ThreadLocalRandom.current().nextDouble()));
+  }
+
+  /**
+   * A failed job rescheduled for later.
+   */
+  static class Retry {
+    final Job job;
+    final long delayMillis;
+
+    Retry(Job job, long delayMillis) {
+      this.job = job;
+      this.delayMillis = delayMillis;
+    }
+  }
+
+  public int getMaxAttempts() {
+    return maxAttempts;
+  }
+
+  /**
+   * @param maxAttempts runs of the job including the first one, 1 means no retries
+   */
+  public void setMaxAttempts(int maxAttempts) {
+    this.maxAttempts = maxAttempts;
+  }
+
+  public long getInitialDelayMillis() {
+    return initialDelayMillis;
+  }
+
+  public void setInitialDelayMillis(long initialDelayMillis) {
+    this.initialDelayMillis = initialDelayMillis;
+  }
+
+  public double getMultiplier() {
+    return multiplier;
+  }
+
+  public void setMultiplier(double multiplier) {
+    this.multiplier = multiplier;
+  }
+
+  public long getMaxDelayMillis() {
+    return maxDelayMillis;
+  }
+
+  public void setMaxDelayMillis(long maxDelayMillis) {
+    this.maxDelayMillis = maxDelayMillis;
+  }
+
+  public double getJitter() {
+    return jitter;
+  }
+
+  /**
+   * @param jitter part of each delay that is random, between 0 (fixed delays) and 1
+   */
+  public void setJitter(double jitter) {
+    if (jitter < 0 || jitter > 1) {
+      throw new IllegalArgumentException("jitter must be between 0 and 1: " + jitter);
+    }
+    this.jitter = jitter;
+  }
+}
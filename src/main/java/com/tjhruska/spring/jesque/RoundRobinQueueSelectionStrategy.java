@@ -0,0 +1,47 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Every poll starts at the next queue, the same rotation WorkerImpl uses.  This is the default strategy.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class RoundRobinQueueSelectionStrategy implements QueueSelectionStrategy {
+  private final AtomicLong pollCount = new AtomicLong();
+
+  @Override
+  public List<String> selectQueues(List<String> queueNames, Jedis jedis, String namespace) {
+    int size = queueNames.size();
+    List<String> ordered = new ArrayList<String>(size);
+    if (size == 0) {
+      return ordered;
+    }
+    int start = (int) (pollCount.getAndIncrement() % size);
+    for (int i = 0; i < size; i++) {
+      ordered.add(queueNames.get((start + i) % size));
+    }
+    return ordered;
+  }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Interface used to identify bean jobs that can process the arguments of many queued jobs in one run.
+ * WorkerBatching collects consecutive jobs for the same bean, and BeanJobFactory loads the arguments
+ * of every collected job into a single bean before running it.
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public interface RunnableWithBatchInit extends Runnable {
+  /**
+   * @param batchArgs one entry per queued job, each holding the arguments that job was enqueued with
+   */
+  public void initBatch(List<Object[]> batchArgs);
+
+  /**
+   * Called after run() to report items that failed, so one bad element does not fail the whole batch.
+   * @return failure causes keyed by the index of the item in batchArgs, empty or null if all items succeeded
+   */
+  public Map<Integer, Throwable> getFailures();
+}
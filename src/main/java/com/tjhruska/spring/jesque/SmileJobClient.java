@@ -0,0 +1,94 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUE;
+import static net.greghaines.jesque.utils.ResqueConstants.QUEUES;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.util.SafeEncoder;
+
+/**
+ * Enqueues jobs encoded as Smile (see JobPayloadCodec) instead of JSON, for producers whose queues are served by
+ * workers extending WorkerWithQueueStrategy (or WorkerPooled).  Plain jesque workers can't read these payloads, so
+ * move the workers of a queue first, then its producers one at a time; JSON and Smile jobs can share the queue.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class SmileJobClient {
+  private final JedisPool jedisPool;
+  private final String namespace;
+
+  /**
+   * @param jedisPool redis database holding the queues
+   * @param namespace jesque namespace, typically "resque"
+   */
+  public SmileJobClient(JedisPool jedisPool, String namespace) {
+    this.jedisPool = jedisPool;
+    this.namespace = namespace;
+  }
+
+  /**
+   * Add a job at the end of a queue.
+   */
+  public void enqueue(String queue, Job job) {
+    push(queue, job, false);
+  }
+
+  /**
+   * Add a job at the front of a queue.
+   */
+  public void priorityEnqueue(String queue, Job job) {
+    push(queue, job, true);
+  }
+
+  @SuppressWarnings("resource")
+  private void push(String queue, Job job, boolean front) {
+    if (!job.isValid()) {
+      throw new IllegalStateException("job is not valid: " + job);
+    }
+    byte[] payload = JobPayloadCodec.toSmile(job);
+    byte[] queueKey = SafeEncoder.encode(JesqueUtils.createKey(namespace, QUEUE, queue));
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      Pipeline pipeline = jedis.pipelined();
+      pipeline.sadd(JesqueUtils.createKey(namespace, QUEUES), queue);
+      if (front) {
+        pipeline.lpush(queueKey, payload);
+      } else {
+        pipeline.rpush(queueKey, payload);
+      }
+      pipeline.sync();
+      hadException = false;
+    } finally {
+      if (hadException) {
+        jedisPool.returnBrokenResource(jedis);
+      } else {
+        jedisPool.returnResource(jedis);
+      }
+    }
+  }
+}
@@ -17,6 +17,11 @@
 package com.tjhruska.spring.jesque;
 
 import java.util.Collection;
+import java.util.Collections;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -37,6 +42,10 @@ public class SpringConfiguredJesqueServer extends Thread implements Initializing
   private Integer sleepTime;
   private Boolean shutdown;
   private String beanName;
+  private Collection<JesqueServerTask> serverTasks = Collections.emptyList();
+  private ScheduledExecutorService serverTaskExecutor;
+  private boolean startOnInit = true;
+  private volatile boolean serverStarted;
 
   /**
    * Allows for configuration of the sleepTime between calls to each
@@ -76,18 +85,96 @@ public class SpringConfiguredJesqueServer extends Thread implements Initializing
     return shutdown;
   }
 
+  public Collection<JesqueServerTask> getServerTasks() {
+    return serverTasks;
+  }
+
+  /**
+   * Periodic tasks (eg: DelayedJobPromoter) that run on their own daemon threads for as long as this server is
+   * running.
+   *
+   * @param serverTasks
+   *          tasks to run, each on its own interval
+   */
+  public void setServerTasks(Collection<JesqueServerTask> serverTasks) {
+    this.serverTasks = serverTasks;
+  }
+
+  public boolean isStartOnInit() {
+    return startOnInit;
+  }
+
+  /**
+   * @param startOnInit
+   *          true (default) starts the server as soon as spring has set its
+   *          properties, false leaves starting to startServer(), eg: from a
+   *          JesqueServerLifecycle once the context has refreshed
+   */
+  public void setStartOnInit(boolean startOnInit) {
+    this.startOnInit = startOnInit;
+  }
+
+  public boolean isServerStarted() {
+    return serverStarted;
+  }
+
   /**
    * Called by spring after all beans have been created. Starts
-   * jesqueContainers.
+   * jesqueContainers unless startOnInit is false.
    *
    * @see org.springframework.beans.factory.InitializingBean#afterPropertiesSet()
    */
   @Override
   public void afterPropertiesSet() throws Exception {
+    if (startOnInit) {
+      startServer();
+    }
+  }
+
+  /**
+   * Starts the server thread, which starts the jesqueContainers, and the
+   * server tasks. Only the first call has an effect.
+   */
+  public synchronized void startServer() {
+    if (serverStarted) {
+      return;
+    }
     log.info("Starting jesque server " + beanName + ".");
     shutdown = false;
     this.setDaemon(false);
     start();
+    startServerTasks();
+    serverStarted = true;
+  }
+
+  private void startServerTasks() {
+    if (serverTasks.isEmpty()) {
+      return;
+    }
+    serverTaskExecutor = Executors.newScheduledThreadPool(serverTasks.size(), new ThreadFactory() {
+      private int count = 0;
+
+      @Override
+      public synchronized Thread newThread(Runnable runnable) {
+        Thread thread = new Thread(runnable, beanName + "-task-" + (++count));
+        thread.setDaemon(true);
+        return thread;
+      }
+    });
+    for (final JesqueServerTask serverTask : serverTasks) {
+      log.info(beanName + " scheduling server task '{}' every {} millis", serverTask, serverTask.getIntervalMillis());
+      serverTaskExecutor.scheduleWithFixedDelay(new Runnable() {
+        @Override
+        public void run() {
+          try {
+            serverTask.run();
+          } catch (Exception e) {
+            // an escaping exception would cancel all further runs of the task
+            log.error(beanName + " server task '" + serverTask + "' failed, will retry next interval", e);
+          }
+        }
+      }, 0, serverTask.getIntervalMillis(), TimeUnit.MILLISECONDS);
+    }
   }
 
   /**
@@ -100,6 +187,10 @@ public class SpringConfiguredJesqueServer extends Thread implements Initializing
   public void destroy() {
     log.info("Stopping jesque server " + beanName + ".");
 
+    if (serverTaskExecutor != null) {
+      serverTaskExecutor.shutdownNow();
+    }
+
     for (JesqueContainer jesqueContainer : jesqueContainers) {
       jesqueContainer.stop(false);
     }
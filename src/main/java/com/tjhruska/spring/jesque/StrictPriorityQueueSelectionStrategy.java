@@ -0,0 +1,36 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.List;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Queues are always tried in configured order, so a later queue only gets polled when every earlier queue is empty.
+ * eg: a worker on 'critical,bulk' only takes bulk jobs while critical has no backlog.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class StrictPriorityQueueSelectionStrategy implements QueueSelectionStrategy {
+
+  @Override
+  public List<String> selectQueues(List<String> queueNames, Jedis jedis, String namespace) {
+    return queueNames;
+  }
+}
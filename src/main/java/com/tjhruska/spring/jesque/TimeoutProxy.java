@@ -0,0 +1,71 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+/**
+ * Wraps a bean job that has a timeout, and has JobWatchdog interrupt it once it overruns.  An overrunning job fails
+ * with a JobTimeoutException, whatever it returned or threw after being interrupted.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class TimeoutProxy extends DelegatingJobProxy {
+  private final long timeoutMillis;
+  private final long graceMillis;
+  private final String beanId;
+
+  /**
+   * @param delegate Runnable or Callable bean job
+   * @param timeoutMillis time after which the job is interrupted
+   * @param graceMillis time after the interrupt after which the worker running the job is replaced
+   * @param beanId names the job in log messages
+   */
+  public TimeoutProxy(Object delegate, long timeoutMillis, long graceMillis, String beanId) {
+    super(delegate);
+    this.timeoutMillis = timeoutMillis;
+    this.graceMillis = graceMillis;
+    this.beanId = beanId;
+  }
+
+  public long getTimeoutMillis() {
+    return timeoutMillis;
+  }
+
+  @Override
+  public Object call() throws Exception {
+    JobWatchdog.Watch watch = JobWatchdog.watch(timeoutMillis, graceMillis, beanId);
+    Object result = null;
+    Exception thrown = null;
+    boolean timedOut;
+    try {
+      result = callDelegate();
+    } catch (Exception e) {
+      thrown = e;
+    } finally {
+      timedOut = watch.finish();
+    }
+    if (timedOut) {
+      throw new JobTimeoutException("Bean job " + beanId + " ran longer than its timeout of " + timeoutMillis
+          + " millis", thrown);
+    }
+    if (thrown != null) {
+      throw thrown;
+    }
+    return result;
+  }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * One destination queue of a PartitionedJesqueJobTransporter.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class TransportPartition {
+  private final String name;
+  private final JedisPool jedisPool;
+  private final String queueName;
+
+  /**
+   * @param name unique and stable name of the partition, it decides which keys the partition owns
+   * @param jedisPool redis database holding the destination queue
+   * @param queueName destination queue name, without the queueNamePrefix
+   */
+  public TransportPartition(String name, JedisPool jedisPool, String queueName) {
+    this.name = name;
+    this.jedisPool = jedisPool;
+    this.queueName = queueName;
+  }
+
+  public String getName() {
+    return name;
+  }
+
+  public JedisPool getJedisPool() {
+    return jedisPool;
+  }
+
+  public String getQueueName() {
+    return queueName;
+  }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import redis.clients.jedis.Jedis;
+
+/**
+ * Weighted round robin.  A queue with weight 4 is tried first four times as often as a queue with weight 1,
+ * and the first choices are spread evenly (smooth weighted round robin) rather than in runs.
+ * The remaining queues follow in descending weight order, so a worker never idles while any queue has jobs.
+ * Queues without a configured weight have a weight of 1.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class WeightedQueueSelectionStrategy implements QueueSelectionStrategy {
+  private final Map<String, Integer> weights;
+  private final AtomicLong pollCount = new AtomicLong();
+  private volatile Schedule schedule;
+
+  /**
+   * @param weights relative weight per queue name, weights must be positive
+   */
+  public WeightedQueueSelectionStrategy(Map<String, Integer> weights) {
+    for (Map.Entry<String, Integer> entry : weights.entrySet()) {
+      if (entry.getValue() == null || entry.getValue() < 1) {
+        throw new IllegalArgumentException("Weight for queue '" + entry.getKey() + "' must be at least 1.");
+      }
+    }
+    this.weights = new HashMap<String, Integer>(weights);
+  }
+
+  public Map<String, Integer> getWeights() {
+    return Collections.unmodifiableMap(weights);
+  }
+
+  @Override
+  public List<String> selectQueues(List<String> queueNames, Jedis jedis, String namespace) {
+    if (queueNames.isEmpty()) {
+      return queueNames;
+    }
+    Schedule current = schedule;
+    if (current == null || !current.queueNames.equals(queueNames)) {
+      current = new Schedule(new ArrayList<String>(queueNames));
+      schedule = current;
+    }
+
+    String first = current.firstChoices[(int) (pollCount.getAndIncrement() % current.firstChoices.length)];
+    List<String> ordered = new ArrayList<String>(queueNames.size());
+    ordered.add(first);
+    for (String queueName : current.byWeight) {
+      if (!queueName.equals(first)) {
+        ordered.add(queueName);
+      }
+    }
+    return ordered;
+  }
+
+  private int getWeight(String queueName) {
+    Integer weight = weights.get(queueName);
+    return weight == null ? 1 : weight;
+  }
+
+  /**
+   * Precomputed rotation for one set of queue names.
+   */
+  private class Schedule {
+    private final List<String> queueNames;
+    private final String[] firstChoices;
+    private final List<String> byWeight;
+
+    Schedule(List<String> queueNames) {
+      this.queueNames = queueNames;
+
+      int total = 0;
+      for (String queueName : queueNames) {
+        total += getWeight(queueName);
+      }
+      firstChoices = new String[total];
+      int[] current = new int[queueNames.size()];
+      for (int slot = 0; slot < total; slot++) {
+        for (int i = 0; i < queueNames.size(); i++) {
+          current[i] += getWeight(queueNames.get(i));
+        }
+        int best = 0;
+        for (int i = 1; i < queueNames.size(); i++) {
+          if (current[i] > current[best]) {
+            best = i;
+          }
+        }
+        current[best] -= total;
+        firstChoices[slot] = queueNames.get(best);
+      }
+
+      byWeight = new ArrayList<String>(queueNames);
+      Collections.sort(byWeight, new Comparator<String>() {
+        @Override
+        public int compare(String a, String b) {
+          return getWeight(b) - getWeight(a);
+        }
+      });
+    }
+  }
+}
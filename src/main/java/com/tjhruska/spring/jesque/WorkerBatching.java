@@ -0,0 +1,170 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.WORKER;
+import static net.greghaines.jesque.worker.JobExecutor.State.RUNNING;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_EXECUTE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_PROCESS;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.Job;
+
+/**
+ * This worker drains consecutive jobs for the same RunnableWithBatchInit bean into one invocation.
+ * When a popped BeanJob targets a batch bean, the worker keeps popping the same queue until it has
+ * maxBatchSize jobs, maxBatchWaitMillis have passed, or a job for a different bean shows up.
+ * The different job is processed right after the batch, so queue order is kept for this worker.
+ * Items reported by RunnableWithBatchInit.getFailures() are recorded as individual job failures,
+ * all other items of the batch are recorded as successes.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class WorkerBatching extends WorkerWithQueueStrategy {
+  private static final long BATCH_EMPTY_QUEUE_SLEEP_TIME = 10;
+
+  private final BeanJobFactory beanJobFactory;
+  private final int maxBatchSize;
+  private final long maxBatchWaitMillis;
+
+  /**
+   * @param config jesque configuration for how to connect to redis queues
+   * @param queues source of jobs to process
+   * @param beanJobFactory factory that materializes single jobs and batches
+   * @param maxBatchSize most jobs handed to one batch bean invocation
+   * @param maxBatchWaitMillis longest time spent collecting a batch, measured from its first job
+   */
+  public WorkerBatching(final Config config, final Collection<String> queues, final BeanJobFactory beanJobFactory,
+      int maxBatchSize, long maxBatchWaitMillis) {
+    super(config, queues, beanJobFactory);
+    this.beanJobFactory = beanJobFactory;
+    this.maxBatchSize = maxBatchSize;
+    this.maxBatchWaitMillis = maxBatchWaitMillis;
+  }
+
+  public int getMaxBatchSize() {
+    return maxBatchSize;
+  }
+
+  public long getMaxBatchWaitMillis() {
+    return maxBatchWaitMillis;
+  }
+
+  /**
+   * Jobs for batch beans are handed to drainBatch(), all other jobs are processed one at a time.
+   * @see com.tjhruska.spring.jesque.WorkerWithQueueStrategy#handlePayload(java.lang.String, java.lang.String)
+   */
+  @Override
+  protected void handlePayload(String payload, String curQueue) throws Exception {
+    Job job = JobPayloadCodec.readJob(payload);
+    while (job != null) {
+      String batchBeanId = beanJobFactory.getBatchBeanId(job);
+      if (batchBeanId == null) {
+        process(job, curQueue);
+        job = null;
+      } else {
+        job = drainBatch(job, batchBeanId, curQueue);
+      }
+    }
+  }
+
+  /**
+   * Collect and process a batch starting with firstJob.
+   * @return the job that ended the batch because it was for another bean, or null
+   */
+  protected Job drainBatch(Job firstJob, String batchBeanId, String curQueue) throws Exception {
+    List<Job> batch = new ArrayList<Job>(maxBatchSize);
+    batch.add(firstJob);
+    Job nextJob = null;
+    long deadline = System.currentTimeMillis() + maxBatchWaitMillis;
+
+    while (batch.size() < maxBatchSize && RUNNING.equals(this.state.get())) {
+      long remaining = deadline - System.currentTimeMillis();
+      if (remaining <= 0) {
+        break;
+      }
+      final String payload = pop(curQueue);
+      if (payload == null) {
+        Thread.sleep(Math.min(BATCH_EMPTY_QUEUE_SLEEP_TIME, remaining));
+        continue;
+      }
+      Job job;
+      try {
+        job = JobPayloadCodec.readJob(payload);
+      } catch (Exception e) {
+        // don't lose the jobs already collected because of one unreadable payload
+        processBatch(batch, curQueue);
+        throw e;
+      }
+      if (!batchBeanId.equals(beanJobFactory.getBatchBeanId(job))) {
+        nextJob = job;
+        break;
+      }
+      batch.add(job);
+    }
+
+    processBatch(batch, curQueue);
+    return nextJob;
+  }
+
+  /**
+   * Runs the whole batch in one bean, and records success or failure for each job in it.
+   * @param jobs consecutive jobs for the same batch bean
+   * @param curQueue queue the jobs were popped from
+   */
+  protected void processBatch(List<Job> jobs, String curQueue) {
+    int reported = 0;
+    try {
+      if (isThreadNameChangingEnabled()) {
+        renameThread("Processing batch of " + jobs.size() + " from " + curQueue + " since "
+            + System.currentTimeMillis());
+      }
+      for (Job job : jobs) {
+        this.listenerDelegate.fireEvent(JOB_PROCESS, this, curQueue, job, null, null, null);
+      }
+      this.jedis.set(key(WORKER, getName()), statusMsg(curQueue, jobs.get(0)));
+
+      RunnableWithBatchInit batchJob = beanJobFactory.materializeBatch(jobs);
+      for (Job job : jobs) {
+        this.listenerDelegate.fireEvent(JOB_EXECUTE, this, curQueue, job, batchJob, null, null);
+      }
+      batchJob.run();
+
+      Map<Integer, Throwable> failures = batchJob.getFailures();
+      for (; reported < jobs.size(); reported++) {
+        Throwable cause = (failures == null) ? null : failures.get(reported);
+        if (cause == null) {
+          success(jobs.get(reported), batchJob, null, curQueue);
+        } else {
+          failure(cause, jobs.get(reported), curQueue);
+        }
+      }
+    } catch (Throwable thrwbl) {
+      for (; reported < jobs.size(); reported++) {
+        failure(thrwbl, jobs.get(reported), curQueue);
+      }
+    } finally {
+      this.jedis.del(key(WORKER, getName()));
+    }
+  }
+}
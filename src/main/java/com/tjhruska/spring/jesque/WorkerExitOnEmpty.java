@@ -16,18 +16,10 @@
 
 package com.tjhruska.spring.jesque;
 
-import static net.greghaines.jesque.worker.JobExecutor.State.RUNNING;
-import static net.greghaines.jesque.worker.WorkerEvent.WORKER_POLL;
-
 import java.util.Collection;
-import java.util.concurrent.TimeUnit;
 
 import net.greghaines.jesque.Config;
-import net.greghaines.jesque.Job;
-import net.greghaines.jesque.json.ObjectMapperFactory;
-import net.greghaines.jesque.utils.JesqueUtils;
 import net.greghaines.jesque.worker.JobFactory;
-import net.greghaines.jesque.worker.WorkerImpl;
 
 /**
  * This worker will only run as long as there are jobs to run.  
@@ -39,8 +31,9 @@ import net.greghaines.jesque.worker.WorkerImpl;
  * @author Timothy Hruska <https://github.com/tjhruska>
  *
  */
-public class WorkerExitOnEmpty extends WorkerImpl {
+public class WorkerExitOnEmpty extends WorkerWithQueueStrategy {
   private int maxLoopsOnEmptyQueues;
+  private int allQueuesEmptyCount;
 
   /**
    * Basic worker that will exit if all queues are empty after 3 polling attempts.
@@ -65,57 +58,20 @@ public class WorkerExitOnEmpty extends WorkerImpl {
     this.maxLoopsOnEmptyQueues = maxLoopsOnEmptyQueues;
   }
 
+  @Override
+  protected void onJobFound() {
+    allQueuesEmptyCount = 0;
+  }
+
   /**
    * Worker will be set to exit if all queues are empty maxLoopOnEmptyQueues times
-   * @see net.greghaines.jesque.worker.WorkerImpl#poll()
+   * @see com.tjhruska.spring.jesque.WorkerWithQueueStrategy#onQueuesEmpty()
    */
   @Override
-  protected void poll() {
-    int missCount = 0;
-    String curQueue = null;
-    int allQueuesEmptyCount = 0;
-
-    while (RUNNING.equals(this.state.get())) {
-      try {
-        if (isThreadNameChangingEnabled()) {
-          renameThread("Waiting for " + JesqueUtils.join(",", this.queueNames));
-        }
-        curQueue = this.queueNames.poll(EMPTY_QUEUE_SLEEP_TIME,
-            TimeUnit.MILLISECONDS);
-        if (curQueue != null) {
-          this.queueNames.add(curQueue); // Rotate the queues
-          checkPaused();
-          // Might have been waiting in poll()/checkPaused() for a while
-          if (RUNNING.equals(this.state.get())) {
-            this.listenerDelegate.fireEvent(WORKER_POLL, this, curQueue, null,
-                null, null, null);
-            final String payload = pop(curQueue);
-            if (payload != null) {
-              final Job job = ObjectMapperFactory.get().readValue(payload,
-                  Job.class);
-              process(job, curQueue);
-              missCount = 0;
-              allQueuesEmptyCount = 0;
-            } else if (++missCount >= this.queueNames.size()
-                && RUNNING.equals(this.state.get())) {
-              // Keeps worker from busy-spinning on empty queues
-              missCount = 0;
-              Thread.sleep(EMPTY_QUEUE_SLEEP_TIME);
-
-              allQueuesEmptyCount++;
-              if (allQueuesEmptyCount >= maxLoopsOnEmptyQueues) {
-                end(false); // sets state to SHUTDOWN which will break the loop
-              }
-            }
-          }
-        }
-      } catch (InterruptedException ie) {
-        if (!isShutdown()) {
-          recoverFromException(curQueue, ie);
-        }
-      } catch (Exception e) {
-        recoverFromException(curQueue, e);
-      }
+  protected void onQueuesEmpty() {
+    allQueuesEmptyCount++;
+    if (allQueuesEmptyCount >= maxLoopsOnEmptyQueues) {
+      end(false); // sets state to SHUTDOWN which will break the loop
     }
   }
-} 
\ No newline at end of file
+} 
\ No newline at end of file
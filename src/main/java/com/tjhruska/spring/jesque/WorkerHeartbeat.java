@@ -0,0 +1,136 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+import net.greghaines.jesque.Config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Keeps the heartbeat of a reliableDequeue worker alive while it runs a popped job, so a ProcessingListReaper does
+ * not requeue a job that runs longer than heartbeatMillis, whether or not the reaper was given the worker's
+ * container.  The heartbeat is refreshed every third of heartbeatMillis until the job is done.  One daemon thread
+ * serves every running job of the JVM, so a dead node stops refreshing and its jobs are requeued.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+final class WorkerHeartbeat {
+  private static final Logger log = LoggerFactory.getLogger(WorkerHeartbeat.class);
+
+  private static final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(
+      new ThreadFactory() {
+        @Override
+        public Thread newThread(Runnable runnable) {
+          Thread thread = new Thread(runnable, "WorkerHeartbeat");
+          thread.setDaemon(true);
+          return thread;
+        }
+      });
+
+  private final JedisPool jedisPool;
+  private final Config config;
+  private final String heartbeatKey;
+  private final int heartbeatMillis;
+  private ScheduledFuture<?> future;
+
+  private WorkerHeartbeat(JedisPool jedisPool, Config config, String namespace, String workerName,
+      int heartbeatMillis) {
+    this.jedisPool = jedisPool;
+    this.config = config;
+    this.heartbeatKey = ProcessingListReaper.getHeartbeatKey(ProcessingListReaper.getProcessingKey(namespace,
+        workerName));
+    this.heartbeatMillis = heartbeatMillis;
+  }
+
+  /**
+   * Start refreshing the heartbeat of a worker that borrows its connections from a pool.
+   * @return heartbeat to stop once the job is done
+   */
+  static WorkerHeartbeat start(JedisPool jedisPool, String namespace, String workerName, int heartbeatMillis) {
+    return new WorkerHeartbeat(jedisPool, null, namespace, workerName, heartbeatMillis).schedule();
+  }
+
+  /**
+   * Start refreshing the heartbeat of a worker whose own connection is busy with the job, a short lived connection
+   * is opened for each refresh, so only jobs running longer than a third of heartbeatMillis open any.
+   * @return heartbeat to stop once the job is done
+   */
+  static WorkerHeartbeat start(Config config, String namespace, String workerName, int heartbeatMillis) {
+    return new WorkerHeartbeat(null, config, namespace, workerName, heartbeatMillis).schedule();
+  }
+
+  private WorkerHeartbeat schedule() {
+    long periodMillis = Math.max(1, heartbeatMillis / 3);
+    future = scheduler.scheduleWithFixedDelay(new Runnable() {
+      @Override
+      public void run() {
+        beat();
+      }
+    }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    return this;
+  }
+
+  void stop() {
+    future.cancel(false);
+  }
+
+  @SuppressWarnings("resource")
+  void beat() {
+    try {
+      if (jedisPool != null) {
+        Jedis jedis = null;
+        boolean hadException = true;
+        try {
+          jedis = jedisPool.getResource();
+          jedis.psetex(heartbeatKey, heartbeatMillis, "1");
+          hadException = false;
+        } finally {
+          if (hadException) {
+            jedisPool.returnBrokenResource(jedis);
+          } else {
+            jedisPool.returnResource(jedis);
+          }
+        }
+      } else {
+        Jedis jedis = new Jedis(config.getHost(), config.getPort(), config.getTimeout());
+        try {
+          if (config.getPassword() != null) {
+            jedis.auth(config.getPassword());
+          }
+          jedis.select(config.getDatabase());
+          jedis.psetex(heartbeatKey, heartbeatMillis, "1");
+        } finally {
+          jedis.disconnect();
+        }
+      }
+    } catch (RuntimeException e) {
+      // the next beat tries again, the heartbeat outlives two missed ones
+      log.warn("Unable to refresh heartbeat {}", heartbeatKey, e);
+    }
+  }
+}
@@ -0,0 +1,738 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.utils.ResqueConstants.FAILED;
+import static net.greghaines.jesque.utils.ResqueConstants.PROCESSED;
+import static net.greghaines.jesque.utils.ResqueConstants.STARTED;
+import static net.greghaines.jesque.utils.ResqueConstants.STAT;
+import static net.greghaines.jesque.utils.ResqueConstants.WORKER;
+import static net.greghaines.jesque.utils.ResqueConstants.WORKERS;
+import static net.greghaines.jesque.worker.JobExecutor.State.NEW;
+import static net.greghaines.jesque.worker.JobExecutor.State.RUNNING;
+import static net.greghaines.jesque.worker.JobExecutor.State.SHUTDOWN;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_EXECUTE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_FAILURE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_PROCESS;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_SUCCESS;
+import static net.greghaines.jesque.worker.WorkerEvent.WORKER_ERROR;
+import static net.greghaines.jesque.worker.WorkerEvent.WORKER_POLL;
+import static net.greghaines.jesque.worker.WorkerEvent.WORKER_START;
+import static net.greghaines.jesque.worker.WorkerEvent.WORKER_STOP;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.BlockingDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.JobFailure;
+import net.greghaines.jesque.WorkerStatus;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.utils.JesqueUtils;
+import net.greghaines.jesque.utils.ResqueConstants;
+import net.greghaines.jesque.worker.DefaultExceptionHandler;
+import net.greghaines.jesque.worker.ExceptionHandler;
+import net.greghaines.jesque.worker.JobFactory;
+import net.greghaines.jesque.worker.RecoveryStrategy;
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerAware;
+import net.greghaines.jesque.worker.WorkerImpl;
+import net.greghaines.jesque.worker.WorkerEventEmitter;
+import net.greghaines.jesque.worker.WorkerListenerDelegate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * Worker that borrows its redis connection from a JedisPool for each poll and each bookkeeping step, instead of
+ * holding a dedicated connection for its whole life like WorkerImpl.  A worker that is sleeping on empty queues,
+ * paused, or running a job holds no connection, so many workers can share a small pool.  Give the JesqueContainer
+ * a jedisPool and it hands the pool to every WorkerPooled it starts; the pool's maxTotal then caps the
+ * connections of the whole container, and workers wait for a free connection when the cap is reached.
+ * Redis keys, stats, failures and listener events match WorkerImpl, and like WorkerWithQueueStrategy it honors a
+ * QueueSelectionStrategy, DeferredJobs, RetryPolicies and payloads compressed by JobPayloadCodec.
+ * With reliableDequeue on, popped jobs are kept on a processing list until handled (see ProcessingListReaper).
+ * With maxLoopsOnEmptyQueues set it exits like WorkerExitOnEmpty, without opening and closing a connection per
+ * worker.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class WorkerPooled implements Worker {
+  private static final Logger log = LoggerFactory.getLogger(WorkerPooled.class);
+  private static final AtomicLong WORKER_COUNTER = new AtomicLong(0);
+
+  protected static final long EMPTY_QUEUE_SLEEP_TIME = 500;
+  protected static final long RECONNECT_SLEEP_TIME = 5000;
+
+  protected final Config config;
+  protected final String namespace;
+  protected final BlockingDeque<String> queueNames = new LinkedBlockingDeque<String>();
+  protected final WorkerListenerDelegate listenerDelegate = new WorkerListenerDelegate();
+  protected final AtomicReference<State> state = new AtomicReference<State>(NEW);
+  private final AtomicBoolean paused = new AtomicBoolean(false);
+  private final AtomicBoolean processingJob = new AtomicBoolean(false);
+  private final AtomicReference<Thread> threadRef = new AtomicReference<Thread>(null);
+  private final AtomicReference<ExceptionHandler> exceptionHandlerRef = new AtomicReference<ExceptionHandler>(
+      new DefaultExceptionHandler());
+  private final JobFactory jobFactory;
+  private final long workerId = WORKER_COUNTER.getAndIncrement();
+  private final String name;
+
+  private volatile JedisPool jedisPool;
+  private volatile QueueSelectionStrategy queueSelectionStrategy = new RoundRobinQueueSelectionStrategy();
+  private int maxLoopsOnEmptyQueues;
+  private int allQueuesEmptyCount;
+  private volatile Set<String> pausedQueues = Collections.emptySet();
+  private boolean reliableDequeue;
+  private int heartbeatMillis = ProcessingListReaper.DEFAULT_HEARTBEAT_MILLIS;
+
+  /**
+   * Worker that gets its pool from the JesqueContainer that starts it.
+   * @param config jesque configuration, only the namespace is used since connections come from the pool
+   * @param queues source of jobs to process
+   * @param jobFactory factory that takes raw jobs from redis queue, and converts them to executable jobs
+   */
+  public WorkerPooled(final Config config, final Collection<String> queues, final JobFactory jobFactory) {
+    this(config, queues, jobFactory, null);
+  }
+
+  /**
+   * @param config jesque configuration, only the namespace is used since connections come from the pool
+   * @param queues source of jobs to process
+   * @param jobFactory factory that takes raw jobs from redis queue, and converts them to executable jobs
+   * @param jedisPool connections borrowed for each redis interaction
+   */
+  public WorkerPooled(final Config config, final Collection<String> queues, final JobFactory jobFactory,
+      JedisPool jedisPool) {
+    if (config == null || jobFactory == null) {
+      throw new IllegalArgumentException("config and jobFactory must not be null");
+    }
+    this.config = config;
+    this.namespace = config.getNamespace();
+    this.jobFactory = jobFactory;
+    this.jedisPool = jedisPool;
+    setQueues(queues);
+    this.name = createName();
+  }
+
+  public JedisPool getJedisPool() {
+    return jedisPool;
+  }
+
+  /**
+   * @param jedisPool connections borrowed for each redis interaction, must be set before the worker runs
+   */
+  public void setJedisPool(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+  }
+
+  public QueueSelectionStrategy getQueueSelectionStrategy() {
+    return queueSelectionStrategy;
+  }
+
+  public void setQueueSelectionStrategy(QueueSelectionStrategy queueSelectionStrategy) {
+    this.queueSelectionStrategy = queueSelectionStrategy;
+  }
+
+  public int getMaxLoopsOnEmptyQueues() {
+    return maxLoopsOnEmptyQueues;
+  }
+
+  /**
+   * @param maxLoopsOnEmptyQueues worker exits after this many consecutive polls found every queue empty, 0 (the
+   *          default) keeps it running until it is ended
+   */
+  public void setMaxLoopsOnEmptyQueues(int maxLoopsOnEmptyQueues) {
+    this.maxLoopsOnEmptyQueues = maxLoopsOnEmptyQueues;
+  }
+
+  public Set<String> getPausedQueues() {
+    return pausedQueues;
+  }
+
+  /**
+   * Skip queues without changing the worker's queues, which would race with a running poll.
+   * @param pausedQueues queues no job is taken from until they are removed again
+   */
+  public void setPausedQueues(Collection<String> pausedQueues) {
+    this.pausedQueues = Collections.unmodifiableSet(new LinkedHashSet<String>(pausedQueues));
+  }
+
+  public boolean isReliableDequeue() {
+    return reliableDequeue;
+  }
+
+  /**
+   * @param reliableDequeue if true each popped job stays on this worker's processing list until it was handled, so a
+   *          ProcessingListReaper can requeue it should this worker die
+   */
+  public void setReliableDequeue(boolean reliableDequeue) {
+    this.reliableDequeue = reliableDequeue;
+  }
+
+  public int getHeartbeatMillis() {
+    return heartbeatMillis;
+  }
+
+  /**
+   * @param heartbeatMillis how long the heartbeat refreshed on every poll and while a job runs lives, with
+   *          reliableDequeue on
+   */
+  public void setHeartbeatMillis(int heartbeatMillis) {
+    this.heartbeatMillis = heartbeatMillis;
+  }
+
+  /**
+   * Register with redis, poll until ended, then unregister.
+   * @see java.lang.Runnable#run()
+   */
+  @Override
+  public void run() {
+    if (!state.compareAndSet(NEW, RUNNING)) {
+      throw new IllegalStateException(RUNNING.equals(state.get()) ? "This WorkerPooled is already running"
+          : "This WorkerPooled is shutdown");
+    }
+    if (jedisPool == null) {
+      state.set(SHUTDOWN);
+      throw new IllegalStateException("WorkerPooled " + name + " has no jedisPool");
+    }
+    threadRef.set(Thread.currentThread());
+    try {
+      renameThread("RUNNING");
+      withJedis(new JedisWork<Void>() {
+        @Override
+        public Void call(Jedis jedis) {
+          jedis.sadd(key(WORKERS), name);
+          jedis.set(key(WORKER, name, STARTED), new SimpleDateFormat(ResqueConstants.DATE_FORMAT).format(new Date()));
+          return null;
+        }
+      });
+      listenerDelegate.fireEvent(WORKER_START, this, null, null, null, null, null);
+      poll();
+    } finally {
+      renameThread("STOPPING");
+      listenerDelegate.fireEvent(WORKER_STOP, this, null, null, null, null, null);
+      try {
+        withJedis(new JedisWork<Void>() {
+          @Override
+          public Void call(Jedis jedis) {
+            jedis.srem(key(WORKERS), name);
+            jedis.del(key(WORKER, name), key(WORKER, name, STARTED), key(STAT, FAILED, name),
+                key(STAT, PROCESSED, name));
+            return null;
+          }
+        });
+      } catch (RuntimeException e) {
+        log.warn("{} failed to unregister from redis", name, e);
+      }
+      threadRef.set(null);
+    }
+  }
+
+  /**
+   * Pops the first job found in the order given by the queueSelectionStrategy, the connection is returned to the
+   * pool before the job is processed or the worker sleeps.
+   */
+  protected void poll() {
+    String curQueue = null;
+    while (RUNNING.equals(state.get())) {
+      try {
+        if (WorkerImpl.isThreadNameChangingEnabled()) {
+          renameThread("Waiting for " + JesqueUtils.join(",", queueNames));
+        }
+        checkPaused();
+        String payload = null;
+        Jedis jedis = null;
+        boolean hadException = true;
+        try {
+          jedis = jedisPool.getResource();
+          List<String> queues = new ArrayList<String>(queueNames);
+          queues.removeAll(pausedQueues);
+          List<String> orderedQueues = queueSelectionStrategy.selectQueues(queues, jedis, namespace);
+          for (String queue : orderedQueues) {
+            if (!RUNNING.equals(state.get())) {
+              break;
+            }
+            curQueue = queue;
+            listenerDelegate.fireEvent(WORKER_POLL, this, curQueue, null, null, null, null);
+            payload = pop(jedis, curQueue);
+            if (payload != null) {
+              break;
+            }
+          }
+          hadException = false;
+        } finally {
+          release(jedis, hadException);
+        }
+        if (payload != null) {
+          allQueuesEmptyCount = 0;
+          WorkerHeartbeat heartbeat = reliableDequeue
+              ? WorkerHeartbeat.start(jedisPool, namespace, name, heartbeatMillis) : null;
+          try {
+            process(JobPayloadCodec.readJob(payload), curQueue);
+          } finally {
+            if (reliableDequeue) {
+              heartbeat.stop();
+              withJedis(new JedisWork<Void>() {
+                @Override
+                public Void call(Jedis jedis) {
+                  ProcessingListReaper.complete(jedis, namespace, name);
+                  return null;
+                }
+              });
+            }
+          }
+        } else if (RUNNING.equals(state.get())) {
+          Thread.sleep(EMPTY_QUEUE_SLEEP_TIME);
+          allQueuesEmptyCount++;
+          if (maxLoopsOnEmptyQueues > 0 && allQueuesEmptyCount >= maxLoopsOnEmptyQueues) {
+            end(false);
+          }
+        }
+      } catch (InterruptedException ie) {
+        if (!isShutdown()) {
+          recoverFromException(curQueue, ie);
+        }
+      } catch (Exception e) {
+        recoverFromException(curQueue, e);
+      }
+    }
+  }
+
+  /**
+   * Pops the raw bytes so compressed payloads survive, and decodes them with JobPayloadCodec.
+   * With reliableDequeue on the job is moved onto this worker's processing list in the same step.
+   */
+  protected String pop(Jedis jedis, String curQueue) {
+    return JobHandling.pop(jedis, namespace, curQueue, name, reliableDequeue, heartbeatMillis);
+  }
+
+  /**
+   * Runs the job without holding a connection.  Status and stats are written with one borrowed connection before
+   * and one after the job.
+   * @param job popped job
+   * @param curQueue queue the job was popped from
+   */
+  protected void process(final Job job, final String curQueue) {
+    processingJob.set(true);
+    try {
+      if (WorkerImpl.isThreadNameChangingEnabled()) {
+        renameThread("Processing " + curQueue + " since " + System.currentTimeMillis());
+      }
+      listenerDelegate.fireEvent(JOB_PROCESS, this, curQueue, job, null, null, null);
+      final String status = statusMsg(curQueue, job);
+      withJedis(new JedisWork<Void>() {
+        @Override
+        public Void call(Jedis jedis) {
+          jedis.set(key(WORKER, name), status);
+          return null;
+        }
+      });
+
+      Object instance = null;
+      Object result = null;
+      Exception thrown = null;
+      try {
+        instance = jobFactory.materializeJob(job);
+        result = execute(job, curQueue, instance);
+      } catch (Exception e) {
+        thrown = e;
+      }
+      if (thrown != null) {
+        failure(thrown, job, curQueue);
+      } else if (instance instanceof DeferredJob) {
+        defer((DeferredJob) instance, curQueue);
+      } else {
+        success(job, instance, result, curQueue);
+      }
+    } catch (Exception e) {
+      failure(e, job, curQueue);
+    } finally {
+      processingJob.set(false);
+    }
+  }
+
+  /**
+   * DeferredJobs are returned as is, so process() can put them back on their queue.
+   */
+  protected Object execute(Job job, String curQueue, Object instance) throws Exception {
+    if (instance instanceof DeferredJob) {
+      return null;
+    }
+    if (instance instanceof WorkerAware) {
+      ((WorkerAware) instance).setWorker(this);
+    }
+    listenerDelegate.fireEvent(JOB_EXECUTE, this, curQueue, job, instance, null, null);
+    if (instance instanceof Callable) {
+      return ((Callable<?>) instance).call();
+    } else if (instance instanceof Runnable) {
+      ((Runnable) instance).run();
+      return null;
+    }
+    throw new ClassCastException("Instance must be a Runnable or a Callable: " + instance.getClass().getName()
+        + " - " + instance);
+  }
+
+  protected void success(Job job, Object runner, Object result, String curQueue) {
+    withJedis(new JedisWork<Void>() {
+      @Override
+      public Void call(Jedis jedis) {
+        Pipeline pipeline = jedis.pipelined();
+        pipeline.incr(key(STAT, PROCESSED));
+        pipeline.incr(key(STAT, PROCESSED, name));
+        pipeline.del(key(WORKER, name));
+        pipeline.sync();
+        return null;
+      }
+    });
+    listenerDelegate.fireEvent(JOB_SUCCESS, this, curQueue, job, runner, result, null);
+  }
+
+  protected void failure(final Throwable thrwbl, final Job job, final String curQueue) {
+    try {
+      boolean retried = withJedis(new JedisWork<Boolean>() {
+        @Override
+        public Boolean call(Jedis jedis) {
+          if (!JobHandling.retry(jedis, namespace, jobFactory, job, curQueue, thrwbl, name)) {
+            return false;
+          }
+          jedis.del(key(WORKER, name));
+          return true;
+        }
+      });
+      if (retried) {
+        return;
+      }
+    } catch (RuntimeException e) {
+      log.warn("{} unable to schedule retry of job {}", new Object[] { name, job, e });
+    }
+    try {
+      final String failMsg = failMsg(thrwbl, curQueue, job);
+      withJedis(new JedisWork<Void>() {
+        @Override
+        public Void call(Jedis jedis) {
+          Pipeline pipeline = jedis.pipelined();
+          pipeline.incr(key(STAT, FAILED));
+          pipeline.incr(key(STAT, FAILED, name));
+          pipeline.rpush(key(FAILED), failMsg);
+          pipeline.del(key(WORKER, name));
+          pipeline.sync();
+          return null;
+        }
+      });
+    } catch (Exception e) {
+      log.warn("{} error recording failure of job {}", new Object[] { name, job, e });
+    }
+    listenerDelegate.fireEvent(JOB_FAILURE, this, curQueue, job, null, null, thrwbl);
+  }
+
+  /**
+   * Jobs deferred for a time go through the delayed queue, jobs deferred without a time go to the end of the queue.
+   * @param deferredJob job that was not admitted
+   * @param curQueue queue the job was popped from
+   */
+  protected void defer(final DeferredJob deferredJob, final String curQueue) {
+    withJedis(new JedisWork<Void>() {
+      @Override
+      public Void call(Jedis jedis) {
+        JobHandling.defer(jedis, namespace, deferredJob, curQueue, name);
+        jedis.del(key(WORKER, name));
+        return null;
+      }
+    });
+  }
+
+  protected void recoverFromException(String curQueue, Exception e) {
+    RecoveryStrategy recoveryStrategy = exceptionHandlerRef.get().onException(this, e, curQueue);
+    switch (recoveryStrategy) {
+    case RECONNECT:
+      // broken connections were already returned to the pool, give redis a moment before the next borrow
+      log.info("{} waiting before borrowing a new connection", name);
+      try {
+        Thread.sleep(RECONNECT_SLEEP_TIME);
+      } catch (InterruptedException ie) {
+        Thread.currentThread().interrupt();
+      }
+      break;
+    case TERMINATE:
+      log.warn("{} terminating in response to exception", name, e);
+      end(false);
+      break;
+    case PROCEED:
+      listenerDelegate.fireEvent(WORKER_ERROR, this, curQueue, null, null, null, e);
+      break;
+    default:
+      log.error("{} unknown RecoveryStrategy: {} while attempting to recover from the following exception; worker "
+          + "proceeding...", new Object[] { name, recoveryStrategy, e });
+      break;
+    }
+  }
+
+  /**
+   * While paused the pause status is in redis, but no connection is held.
+   */
+  protected void checkPaused() throws IOException {
+    if (paused.get()) {
+      synchronized (paused) {
+        final String pauseMsg = pauseMsg();
+        withJedis(new JedisWork<Void>() {
+          @Override
+          public Void call(Jedis jedis) {
+            jedis.set(key(WORKER, name), pauseMsg);
+            return null;
+          }
+        });
+        while (paused.get()) {
+          try {
+            paused.wait();
+          } catch (InterruptedException ie) {
+            log.warn("{} interrupted while paused", name);
+          }
+        }
+        withJedis(new JedisWork<Void>() {
+          @Override
+          public Void call(Jedis jedis) {
+            jedis.del(key(WORKER, name));
+            return null;
+          }
+        });
+      }
+    }
+  }
+
+  protected String failMsg(Throwable thrwbl, String queue, Job job) throws IOException {
+    JobFailure failure = new JobFailure();
+    failure.setFailedAt(new Date());
+    failure.setWorker(name);
+    failure.setQueue(queue);
+    failure.setPayload(job);
+    failure.setThrowable(thrwbl);
+    return ObjectMapperFactory.get().writeValueAsString(failure);
+  }
+
+  protected String statusMsg(String queue, Job job) throws IOException {
+    WorkerStatus status = new WorkerStatus();
+    status.setRunAt(new Date());
+    status.setQueue(queue);
+    status.setPayload(job);
+    return ObjectMapperFactory.get().writeValueAsString(status);
+  }
+
+  protected String pauseMsg() throws IOException {
+    WorkerStatus status = new WorkerStatus();
+    status.setRunAt(new Date());
+    status.setPaused(isPaused());
+    return ObjectMapperFactory.get().writeValueAsString(status);
+  }
+
+  /**
+   * Same format as WorkerImpl, so resque web tools list these workers too.
+   */
+  protected String createName() {
+    StringBuilder sb = new StringBuilder(128);
+    try {
+      sb.append(InetAddress.getLocalHost().getHostName());
+    } catch (UnknownHostException uhe) {
+      throw new RuntimeException(uhe);
+    }
+    sb.append(':').append(ManagementFactory.getRuntimeMXBean().getName().split("@")[0]).append('-')
+        .append(workerId).append(':').append(JesqueUtils.join(",", queueNames));
+    return sb.toString();
+  }
+
+  protected String key(String... parts) {
+    return JesqueUtils.createKey(namespace, parts);
+  }
+
+  protected void renameThread(String msg) {
+    Thread.currentThread().setName("WorkerPooled-" + workerId + ": " + msg);
+  }
+
+  /**
+   * Borrow a connection for one unit of work.
+   */
+  protected <V> V withJedis(JedisWork<V> work) {
+    Jedis jedis = null;
+    boolean hadException = true;
+    try {
+      jedis = jedisPool.getResource();
+      V result = work.call(jedis);
+      hadException = false;
+      return result;
+    } finally {
+      release(jedis, hadException);
+    }
+  }
+
+  private void release(Jedis jedis, boolean hadException) {
+    if (jedis == null) {
+      return;
+    }
+    if (hadException) {
+      jedisPool.returnBrokenResource(jedis);
+    } else {
+      jedisPool.returnResource(jedis);
+    }
+  }
+
+  /**
+   * Work done with a borrowed connection.
+   */
+  protected interface JedisWork<V> {
+    V call(Jedis jedis);
+  }
+
+  @Override
+  public String getName() {
+    return name;
+  }
+
+  @Override
+  public boolean isPaused() {
+    return paused.get();
+  }
+
+  @Override
+  public void togglePause(boolean paused) {
+    this.paused.set(paused);
+    synchronized (this.paused) {
+      this.paused.notifyAll();
+    }
+  }
+
+  @Override
+  public Collection<String> getQueues() {
+    return Collections.unmodifiableCollection(queueNames);
+  }
+
+  @Override
+  public void addQueue(String queueName) {
+    if (queueName == null || "".equals(queueName)) {
+      throw new IllegalArgumentException("queueName must not be null or empty: " + queueName);
+    }
+    queueNames.add(queueName);
+  }
+
+  @Override
+  public void removeQueue(String queueName, boolean all) {
+    if (all) {
+      while (queueNames.remove(queueName)) {
+      }
+    } else {
+      queueNames.remove(queueName);
+    }
+  }
+
+  @Override
+  public void removeAllQueues() {
+    queueNames.clear();
+  }
+
+  @Override
+  public void setQueues(Collection<String> queues) {
+    queueNames.clear();
+    if (queues != null) {
+      for (String queue : queues) {
+        addQueue(queue);
+      }
+    }
+  }
+
+  @Override
+  public WorkerEventEmitter getWorkerEventEmitter() {
+    return listenerDelegate;
+  }
+
+  @Override
+  public JobFactory getJobFactory() {
+    return jobFactory;
+  }
+
+  @Override
+  public ExceptionHandler getExceptionHandler() {
+    return exceptionHandlerRef.get();
+  }
+
+  @Override
+  public void setExceptionHandler(ExceptionHandler exceptionHandler) {
+    if (exceptionHandler == null) {
+      throw new IllegalArgumentException("exceptionHandler must not be null");
+    }
+    exceptionHandlerRef.set(exceptionHandler);
+  }
+
+  /**
+   * @param now if true the thread running a job is interrupted
+   */
+  @Override
+  public void end(boolean now) {
+    if (state.compareAndSet(NEW, SHUTDOWN) || state.compareAndSet(RUNNING, SHUTDOWN)) {
+      if (now) {
+        Thread workerThread = threadRef.get();
+        if (workerThread != null) {
+          workerThread.interrupt();
+        }
+      }
+    }
+    togglePause(false);
+  }
+
+  @Override
+  public boolean isShutdown() {
+    return SHUTDOWN.equals(state.get());
+  }
+
+  @Override
+  public boolean isProcessingJob() {
+    return processingJob.get();
+  }
+
+  @Override
+  public void join(long millis) throws InterruptedException {
+    Thread workerThread = threadRef.get();
+    if (workerThread != null && workerThread.isAlive()) {
+      workerThread.join(millis);
+    }
+  }
+
+  @Override
+  public String toString() {
+    return namespace + ":" + WORKER + ":" + name;
+  }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package com.tjhruska.spring.jesque;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.concurrent.Callable;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.worker.JobFactory;
+import net.greghaines.jesque.worker.Worker;
+
+import redis.clients.jedis.JedisPool;
+
+/**
+ * Worker factory for a JesqueContainer that creates WorkerPooled workers.  Leave jedisPool unset to have the
+ * container hand its own pool to the workers.
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class WorkerPooledFactory implements Callable<Worker> {
+  private final Config config;
+  private final Collection<String> queues;
+  private final JobFactory jobFactory;
+  private JedisPool jedisPool;
+  private int maxLoopsOnEmptyQueues;
+  private boolean reliableDequeue;
+
+  /**
+   * @param config jesque configuration, only the namespace is used since connections come from the pool
+   * @param queues source of jobs to process
+   * @param jobFactory factory that takes raw jobs from redis queue, and converts them to executable jobs
+   */
+  public WorkerPooledFactory(final Config config, final Collection<String> queues, final JobFactory jobFactory) {
+    this.config = config;
+    this.queues = new ArrayList<String>(queues);
+    this.jobFactory = jobFactory;
+  }
+
+  @Override
+  public Worker call() {
+    WorkerPooled worker = new WorkerPooled(config, queues, jobFactory, jedisPool);
+    worker.setMaxLoopsOnEmptyQueues(maxLoopsOnEmptyQueues);
+    worker.setReliableDequeue(reliableDequeue);
+    return worker;
+  }
+
+  public JedisPool getJedisPool() {
+    return jedisPool;
+  }
+
+  /**
+   * @param jedisPool pool for the created workers, overrides the pool of the container
+   */
+  public void setJedisPool(JedisPool jedisPool) {
+    this.jedisPool = jedisPool;
+  }
+
+  public int getMaxLoopsOnEmptyQueues() {
+    return maxLoopsOnEmptyQueues;
+  }
+
+  /**
+   * @param maxLoopsOnEmptyQueues created workers exit after this many empty polls in a row, 0 keeps them running
+   */
+  public void setMaxLoopsOnEmptyQueues(int maxLoopsOnEmptyQueues) {
+    this.maxLoopsOnEmptyQueues = maxLoopsOnEmptyQueues;
+  }
+
+  public boolean isReliableDequeue() {
+    return reliableDequeue;
+  }
+
+  /**
+   * @param reliableDequeue created workers keep popped jobs on a processing list until handled
+   */
+  public void setReliableDequeue(boolean reliableDequeue) {
+    this.reliableDequeue = reliableDequeue;
+  }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2014 Timothy Hruska <https://github.com/tjhruska>
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.worker.JobExecutor.State.RUNNING;
+import static net.greghaines.jesque.worker.WorkerEvent.WORKER_POLL;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.utils.JesqueUtils;
+import net.greghaines.jesque.worker.JobFactory;
+import net.greghaines.jesque.worker.WorkerImpl;
+
+/**
+ * Worker that asks a QueueSelectionStrategy for the order in which to try its queues on every poll,
+ * instead of WorkerImpl's fixed round robin rotation.  Subclasses can hook into a poll that found
+ * every queue empty, or into the handling of a popped payload.
+ * DeferredJobs returned by the job factory are put back on the queue they came from instead of being run.
+ * Failed bean jobs with a RetryPolicy are rescheduled until they run out of attempts.
+ * Payloads compressed by JobPayloadCodec (eg: by a JesqueJobTransporter) are decompressed before they are read.
+ * With reliableDequeue on, popped jobs are kept on a processing list until handled (see ProcessingListReaper).
+ *
+ * @author Timothy Hruska <https://github.com/tjhruska>
+ *
+ */
+public class WorkerWithQueueStrategy extends WorkerImpl {
+  private volatile QueueSelectionStrategy queueSelectionStrategy;
+  private volatile Set<String> pausedQueues = Collections.emptySet();
+  private boolean reliableDequeue;
+  private int heartbeatMillis = ProcessingListReaper.DEFAULT_HEARTBEAT_MILLIS;
+
+  /**
+   * Worker that uses round robin queue selection until another strategy is set.
+   * @param config jesque configuration for how to connect to redis queues
+   * @param queues source of jobs to process
+   * @param jobFactory factory that takes raw jobs from redis queue, and converts them to executable jobs
+   */
+  public WorkerWithQueueStrategy(final Config config, final Collection<String> queues, final JobFactory jobFactory) {
+    this(config, queues, jobFactory, new RoundRobinQueueSelectionStrategy());
+  }
+
+  /**
+   * @param config jesque configuration for how to connect to redis queues
+   * @param queues source of jobs to process
+   * @param jobFactory factory that takes raw jobs from redis queue, and converts them to executable jobs
+   * @param queueSelectionStrategy decides which queue to pop on each poll
+   */
+  public WorkerWithQueueStrategy(final Config config, final Collection<String> queues, final JobFactory jobFactory,
+      QueueSelectionStrategy queueSelectionStrategy) {
+    super(config, queues, jobFactory);
+    this.queueSelectionStrategy = queueSelectionStrategy;
+  }
+
+  public QueueSelectionStrategy getQueueSelectionStrategy() {
+    return queueSelectionStrategy;
+  }
+
+  public void setQueueSelectionStrategy(QueueSelectionStrategy queueSelectionStrategy) {
+    this.queueSelectionStrategy = queueSelectionStrategy;
+  }
+
+  public Set<String> getPausedQueues() {
+    return pausedQueues;
+  }
+
+  /**
+   * Skip queues without changing the worker's queues, which would race with a running poll.
+   * @param pausedQueues queues no job is taken from until they are removed again
+   */
+  public void setPausedQueues(Collection<String> pausedQueues) {
+    this.pausedQueues = Collections.unmodifiableSet(new LinkedHashSet<String>(pausedQueues));
+  }
+
+  public boolean isReliableDequeue() {
+    return reliableDequeue;
+  }
+
+  /**
+   * @param reliableDequeue if true each popped job stays on this worker's processing list until it was handled, so a
+   *          ProcessingListReaper can requeue it should this worker die
+   */
+  public void setReliableDequeue(boolean reliableDequeue) {
+    this.reliableDequeue = reliableDequeue;
+  }
+
+  public int getHeartbeatMillis() {
+    return heartbeatMillis;
+  }
+
+  /**
+   * @param heartbeatMillis how long the heartbeat refreshed on every poll and while a job runs lives, with
+   *          reliableDequeue on
+   */
+  public void setHeartbeatMillis(int heartbeatMillis) {
+    this.heartbeatMillis = heartbeatMillis;
+  }
+
+  /**
+   * Pops the first job found in the order given by the queueSelectionStrategy.  Sleeps when all queues are empty.
+   * @see net.greghaines.jesque.worker.WorkerImpl#poll()
+   */
+  @Override
+  protected void poll() {
+    String curQueue = null;
+
+    while (RUNNING.equals(this.state.get())) {
+      try {
+        if (isThreadNameChangingEnabled()) {
+          renameThread("Waiting for " + JesqueUtils.join(",", this.queueNames));
+        }
+        checkPaused();
+        boolean foundJob = false;
+        List<String> queues = new ArrayList<String>(this.queueNames);
+        queues.removeAll(pausedQueues);
+        List<String> orderedQueues = queueSelectionStrategy.selectQueues(queues, this.jedis, this.namespace);
+        for (String queue : orderedQueues) {
+          // Might have been waiting in checkPaused() or processing for a while
+          if (!RUNNING.equals(this.state.get())) {
+            break;
+          }
+          curQueue = queue;
+          this.listenerDelegate.fireEvent(WORKER_POLL, this, curQueue, null, null, null, null);
+          final String payload = pop(curQueue);
+          if (payload != null) {
+            WorkerHeartbeat heartbeat = reliableDequeue
+                ? WorkerHeartbeat.start(this.config, this.namespace, getName(), heartbeatMillis) : null;
+            try {
+              handlePayload(payload, curQueue);
+            } finally {
+              if (reliableDequeue) {
+                heartbeat.stop();
+                ProcessingListReaper.complete(this.jedis, this.namespace, getName());
+              }
+            }
+            foundJob = true;
+            break;
+          }
+        }
+        if (foundJob) {
+          onJobFound();
+        } else if (RUNNING.equals(this.state.get())) {
+          // Keeps worker from busy-spinning on empty queues
+          Thread.sleep(EMPTY_QUEUE_SLEEP_TIME);
+          onQueuesEmpty();
+        }
+      } catch (InterruptedException ie) {
+        if (!isShutdown()) {
+          recoverFromException(curQueue, ie);
+        }
+      } catch (Exception e) {
+        recoverFromException(curQueue, e);
+      }
+    }
+  }
+
+  /**
+   * Pops the raw bytes so compressed payloads survive, and decodes them with JobPayloadCodec.
+   * With reliableDequeue on the job is moved onto this worker's processing list in the same step.
+   * @see net.greghaines.jesque.worker.WorkerImpl#pop(java.lang.String)
+   */
+  @Override
+  protected String pop(String curQueue) {
+    return JobHandling.pop(this.jedis, this.namespace, curQueue, getName(), reliableDequeue, heartbeatMillis);
+  }
+
+  /**
+   * Decode and process a popped payload.
+   * @param payload raw job popped from curQueue
+   * @param curQueue queue the payload was popped from
+   */
+  protected void handlePayload(String payload, String curQueue) throws Exception {
+    process(JobPayloadCodec.readJob(payload), curQueue);
+  }
+
+  /**
+   * Jobs the job factory deferred (see JobAdmissionPolicy) are put back on their queue instead of being run.
+   * @see net.greghaines.jesque.worker.WorkerImpl#execute(net.greghaines.jesque.Job, java.lang.String, java.lang.Object)
+   */
+  @Override
+  protected Object execute(Job job, String curQueue, Object instance) throws Exception {
+    if (instance instanceof DeferredJob) {
+      defer((DeferredJob) instance, curQueue);
+      return null;
+    }
+    return super.execute(job, curQueue, instance);
+  }
+
+  /**
+   * A deferred job has not run yet, so it is neither counted as processed nor reported to JOB_SUCCESS listeners.
+   * @see net.greghaines.jesque.worker.WorkerImpl#success(net.greghaines.jesque.Job, java.lang.Object, java.lang.Object, java.lang.String)
+   */
+  @Override
+  protected void success(Job job, Object runner, Object result, String curQueue) {
+    if (runner instanceof DeferredJob) {
+      return;
+    }
+    super.success(job, runner, result, curQueue);
+  }
+
+  /**
+   * A job its RetryPolicy retries is rescheduled instead of being recorded as failed, and JOB_FAILURE listeners (eg:
+   * job groups) only hear about its final failure.
+   * @see net.greghaines.jesque.worker.WorkerImpl#failure(java.lang.Throwable, net.greghaines.jesque.Job, java.lang.String)
+   */
+  @Override
+  protected void failure(Throwable thrwbl, Job job, String curQueue) {
+    if (!JobHandling.retry(this.jedis, this.namespace, getJobFactory(), job, curQueue, thrwbl, getName())) {
+      super.failure(thrwbl, job, curQueue);
+    }
+  }
+
+  /**
+   * Jobs deferred for a time go through the delayed queue, so a DelayedJobPromoter must be running for them to come
+   * back.  Jobs deferred without a time go straight to the end of the queue.
+   * @param deferredJob job that was not admitted
+   * @param curQueue queue the job was popped from
+   */
+  protected void defer(DeferredJob deferredJob, String curQueue) {
+    JobHandling.defer(this.jedis, this.namespace, deferredJob, curQueue, getName());
+  }
+
+  /**
+   * Called after a poll that found a job.
+   */
+  protected void onJobFound() {
+  }
+
+  /**
+   * Called after a poll that found every queue empty.
+   */
+  protected void onQueuesEmpty() {
+  }
+}
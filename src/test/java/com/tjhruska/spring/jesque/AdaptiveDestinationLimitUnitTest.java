@@ -0,0 +1,73 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+public class AdaptiveDestinationLimitUnitTest {
+
+  @Test
+  public void minLimitUntilMeasured() {
+    AdaptiveDestinationLimit limit = new AdaptiveDestinationLimit(5, 10, 1000);
+    assertEquals("Wrong limit before first run", 10, limit.startRun(0, 1000L));
+    limit.endRun(10, 1000L);
+  }
+
+  @Test
+  public void limitFollowsDrainRate() {
+    AdaptiveDestinationLimit limit = new AdaptiveDestinationLimit(5, 10, 1000);
+    limit.startRun(0, 0L);
+    limit.endRun(100, 0L);
+
+    // 40 jobs drained in 2 seconds is 20 jobs/sec, 5 seconds of buffer is 100 jobs
+    assertEquals("Wrong limit", 100, limit.startRun(60, 2000L));
+    assertEquals("Wrong rate", 20d, limit.getJobsPerSecond(), 0.001);
+    limit.endRun(100, 2000L);
+
+    // rate drops to 4 jobs/sec, smoothed to 12 jobs/sec
+    assertEquals("Wrong smoothed limit", 60, limit.startRun(92, 4000L));
+  }
+
+  @Test
+  public void limitKeptWithinBounds() {
+    AdaptiveDestinationLimit limit = new AdaptiveDestinationLimit(5, 10, 200);
+    limit.startRun(0, 0L);
+    limit.endRun(1000, 0L);
+    assertEquals("Limit should be capped at max", 200, limit.startRun(500, 1000L));
+    limit.endRun(1000, 1000L);
+    limit.setSmoothing(1);
+    assertEquals("Limit should not drop below min", 10, limit.startRun(1000, 2000L));
+  }
+
+  @Test
+  public void starvedQueueGrowsLimit() {
+    AdaptiveDestinationLimit limit = new AdaptiveDestinationLimit(1, 10, 1000);
+    limit.setSmoothing(1);
+    limit.startRun(0, 0L);
+    limit.endRun(10, 0L);
+    assertEquals("Starved queue should double the measured rate", 20, limit.startRun(0, 1000L));
+    limit.endRun(20, 1000L);
+    assertEquals("Still starved, rate should double again", 40, limit.startRun(0, 2000L));
+  }
+
+  @Test
+  public void jobsAddedByOthersAreNotDrained() {
+    AdaptiveDestinationLimit limit = new AdaptiveDestinationLimit(5, 10, 1000);
+    limit.startRun(0, 0L);
+    limit.endRun(50, 0L);
+    assertEquals("Growing queue has no drain", 10, limit.startRun(80, 1000L));
+    assertEquals("Wrong rate", 0d, limit.getJobsPerSecond(), 0.001);
+  }
+
+  @Test
+  public void invalidBounds() {
+    try {
+      new AdaptiveDestinationLimit(5, 100, 10);
+      fail("Expected an exception, but didn't see it");
+    } catch (IllegalArgumentException e) {
+      assertEquals("Wrong exception message", "AdaptiveDestinationLimit needs bufferSeconds > 0 and 1 <= minLimit <= "
+          + "maxLimit, was 5.0, 100, 10.", e.getMessage());
+    }
+  }
+}
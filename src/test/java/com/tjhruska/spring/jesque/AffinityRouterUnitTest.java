@@ -0,0 +1,54 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+
+import org.junit.Test;
+
+public class AffinityRouterUnitTest {
+
+  private final List<String> nodeQueues = Arrays.asList("node1", "node2", "node3");
+
+  @Test
+  public void sameKeySameQueue() {
+    AffinityRouter router = new AffinityRouter(nodeQueues, "overflow");
+    Map<String, Integer> perQueue = new HashMap<String, Integer>();
+    for (int tenant = 0; tenant < 300; tenant++) {
+      String queue = router.getQueue(new BeanJob("reportJob", "tenant-" + tenant, tenant));
+      assertEquals("Key should always map to the same queue", queue, router.getQueue("tenant-" + tenant));
+      Integer count = perQueue.get(queue);
+      perQueue.put(queue, count == null ? 1 : count + 1);
+    }
+    for (String nodeQueue : nodeQueues) {
+      assertTrue("Every node should get keys", perQueue.get(nodeQueue) > 50);
+    }
+  }
+
+  @Test
+  public void jobsWithoutKeyOverflow() {
+    AffinityRouter router = new AffinityRouter(nodeQueues, "overflow");
+    assertEquals("Wrong queue", "overflow", router.getQueue(new BeanJob("reportJob")));
+    router.setKeyArgIndex(2);
+    assertEquals("Wrong queue", "overflow", router.getQueue(new BeanJob("reportJob", "tenant-1")));
+  }
+
+  @Test
+  public void enqueueOnKeyQueue() {
+    AffinityRouter router = new AffinityRouter(nodeQueues, "overflow");
+    Client client = mock(Client.class);
+    Job job = new BeanJob("reportJob", "tenant-7");
+    String queue = router.enqueue(client, job);
+    verify(client).enqueue(queue, job);
+    assertEquals("Wrong queue", router.getQueue("tenant-7"), queue);
+  }
+}
@@ -1,12 +1,24 @@
 package com.tjhruska.spring.jesque;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.annotation.Resource;
 
 import net.greghaines.jesque.Job;
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerAware;
 
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -14,11 +26,13 @@ import org.springframework.beans.factory.NoSuchBeanDefinitionException;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
 
+import com.tjhruska.spring.jesque.testJobs.TestBatchBeanJob;
 import com.tjhruska.spring.jesque.testJobs.TestBeanJob;
 import com.tjhruska.spring.jesque.testJobs.TestBeanJobCallable;
 import com.tjhruska.spring.jesque.testJobs.TestInitializingBeanJob;
 import com.tjhruska.spring.jesque.testJobs.TestJob;
 import com.tjhruska.spring.jesque.testJobs.TestJobJobFactory;
+import com.tjhruska.spring.jesque.testJobs.TestTimeoutBeanJob;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration()
@@ -173,4 +187,142 @@ public class BeanJobFactoryUnitTest {
     assertTrue("Job was not a TestJobCallable",
         (((LoggingProxyCallable) runner).getDelegate() instanceof TestBeanJobCallable));
   }
-}
\ No newline at end of file
+
+  @Test
+  public void batchBeanId() {
+    assertEquals("Wrong batch bean id", "testBatchBeanJob", beanJobFactory.getBatchBeanId(new BeanJob("testBatchBeanJob")));
+    assertNull("Non batch bean should not have a batch bean id", beanJobFactory.getBatchBeanId(new BeanJob("testBeanJob")));
+    assertNull("Missing bean should not have a batch bean id", beanJobFactory.getBatchBeanId(new BeanJob("missingBean")));
+    assertNull("Non bean job should not have a batch bean id",
+        beanJobFactory.getBatchBeanId(new Job("com.tjhruska.spring.jesque.testJobs.TestJob")));
+  }
+
+  @Test
+  public void materializeBatch() {
+    List<Job> jobs = new ArrayList<Job>();
+    jobs.add(new BeanJob("testBatchBeanJob", "a", 1));
+    jobs.add(new BeanJob("testBatchBeanJob", "fail"));
+    jobs.add(new BeanJob("testBatchBeanJob", "c", 3));
+
+    TestBatchBeanJob batch = (TestBatchBeanJob) beanJobFactory.materializeBatch(jobs);
+    assertEquals("Wrong batch size", 3, batch.batchArgs.size());
+    assertEquals("Wrong arg", "a", batch.batchArgs.get(0)[0]);
+    assertEquals("Wrong arg", 3, batch.batchArgs.get(2)[1]);
+
+    batch.run();
+    assertEquals("Expected one failed item", 1, batch.getFailures().size());
+    assertTrue("Expected second item to fail", batch.getFailures().containsKey(1));
+  }
+
+  @Test
+  public void materializeBatchMixedBeans() {
+    List<Job> jobs = new ArrayList<Job>();
+    jobs.add(new BeanJob("testBatchBeanJob", "a"));
+    jobs.add(new BeanJob("testBeanJob"));
+    try {
+      beanJobFactory.materializeBatch(jobs);
+      fail("Expected an exception, but didn't see it");
+    } catch (RuntimeException e) {
+      assertEquals("Wrong exception message", "All jobs in a batch must be BeanJobs for bean testBatchBeanJob.",
+          e.getMessage());
+    }
+  }
+
+  @Test
+  public void admissionPolicyDefersAndReleases() throws Exception {
+    final AtomicInteger released = new AtomicInteger();
+    final AtomicInteger available = new AtomicInteger(1);
+    JobAdmissionPolicy onePermit = new JobAdmissionPolicy() {
+      @Override
+      public JobPermit tryAcquire(String beanId, Job job) {
+        if (available.getAndDecrement() <= 0) {
+          return null;
+        }
+        return new JobPermit() {
+          @Override
+          public void release() {
+            released.incrementAndGet();
+          }
+        };
+      }
+
+      @Override
+      public long getDeferMillis(String beanId) {
+        return 250L;
+      }
+    };
+    beanJobFactory.setAdmissionPolicies(Collections.singletonList(onePermit));
+    try {
+      Callable<?> admitted = (Callable<?>) beanJobFactory.materializeJob(new BeanJob("testBeanJob"));
+      DeferredJob deferred = (DeferredJob) beanJobFactory.materializeJob(new BeanJob("testBeanJob"));
+      assertEquals("Wrong defer time", 250L, deferred.getDeferMillis());
+      assertEquals("Permit released before job ran", 0, released.get());
+
+      admitted.call();
+      assertEquals("Permit not released after job ran", 1, released.get());
+    } finally {
+      beanJobFactory.setAdmissionPolicies(Collections.<JobAdmissionPolicy> emptyList());
+    }
+  }
+
+  @Test
+  public void warmUp() {
+    List<String> warmed = beanJobFactory.warmUp(Collections.singletonList("testBeanJobCallable"));
+    assertTrue("RunnableWithInit beans should be found by type", warmed.contains("testInitializingBeanJob"));
+    assertTrue("RunnableWithBatchInit beans should be found by type", warmed.contains("testBatchBeanJob"));
+    assertTrue("Listed beans should be warmed up", warmed.contains("testBeanJobCallable"));
+    assertFalse("Unlisted plain beans should be left alone", warmed.contains("testBeanJob"));
+  }
+
+  @Test
+  public void timeoutFromAnnotation() throws Exception {
+    TestTimeoutBeanJob.sleepMillis = 5000;
+    try {
+      TimeoutProxy job = (TimeoutProxy) beanJobFactory.materializeJob(new BeanJob("testTimeoutBeanJob"));
+      assertEquals("Wrong timeout", 50L, job.getTimeoutMillis());
+      job.call();
+      fail("Overrunning job should have timed out");
+    } catch (JobTimeoutException e) {
+      assertFalse("Interrupt meant for the job should be cleared", Thread.currentThread().isInterrupted());
+    } finally {
+      TestTimeoutBeanJob.sleepMillis = 0;
+    }
+  }
+
+  @Test
+  public void timeoutFromMap() throws Exception {
+    beanJobFactory.setTimeouts(Collections.singletonMap("testBeanJob", 1000L));
+    try {
+      TimeoutProxy job = (TimeoutProxy) beanJobFactory.materializeJob(new BeanJob("testBeanJob"));
+      assertEquals("Wrong timeout", 1000L, job.getTimeoutMillis());
+      assertNull("Job within its timeout should complete", job.call());
+      assertFalse("Beans without a timeout should not be wrapped",
+          beanJobFactory.materializeJob(new BeanJob("testBeanJobCallable")) instanceof TimeoutProxy);
+    } finally {
+      beanJobFactory.setTimeouts(Collections.<String, Long> emptyMap());
+    }
+  }
+
+  @Test
+  public void workerPassedThroughProxies() throws Exception {
+    WorkerAwareJob bean = new WorkerAwareJob();
+    WorkerAware job = new PermitReleasingProxy(new TimeoutProxy(bean, 1000L, 1000L, "workerAwareJob"),
+        Collections.<JobPermit> emptyList());
+    Worker worker = mock(Worker.class);
+    job.setWorker(worker);
+    assertSame("Worker should reach the bean job through its proxies", worker, bean.worker);
+  }
+
+  static class WorkerAwareJob implements Runnable, WorkerAware {
+    Worker worker;
+
+    @Override
+    public void setWorker(Worker worker) {
+      this.worker = worker;
+    }
+
+    @Override
+    public void run() {
+    }
+  }
+}
@@ -0,0 +1,52 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class BulkheadAdmissionPolicyUnitTest {
+
+  private BulkheadAdmissionPolicy bulkhead;
+
+  @Before
+  public void setup() {
+    bulkhead = new BulkheadAdmissionPolicy();
+    bulkhead.setMaxConcurrent(Collections.singletonMap("slowJob", 2));
+  }
+
+  @Test
+  public void testLimit() {
+    JobPermit first = bulkhead.tryAcquire("slowJob", new BeanJob("slowJob"));
+    JobPermit second = bulkhead.tryAcquire("slowJob", new BeanJob("slowJob"));
+    assertNotNull("First job should be admitted", first);
+    assertNotNull("Second job should be admitted", second);
+    assertNull("Third job should be over the bulkhead", bulkhead.tryAcquire("slowJob", new BeanJob("slowJob")));
+    assertEquals("Wrong occupancy", Integer.valueOf(2), bulkhead.getOccupancy().get("slowJob"));
+    assertEquals("Wrong rejected count", Long.valueOf(1), bulkhead.getRejectedCounts().get("slowJob"));
+
+    first.release();
+    first.release();
+    assertEquals("Double release should free one slot", 1, bulkhead.getOccupancy("slowJob"));
+    assertNotNull("Freed slot should admit a job", bulkhead.tryAcquire("slowJob", new BeanJob("slowJob")));
+  }
+
+  @Test
+  public void testUnlimitedBean() {
+    assertSame("Beans without a bulkhead need no permit", JobPermit.NONE,
+        bulkhead.tryAcquire("fastJob", new BeanJob("fastJob")));
+    assertEquals("Unlimited beans are not tracked", 0, bulkhead.getOccupancy("fastJob"));
+    assertTrue("Only bulkheaded beans are reported", !bulkhead.getOccupancy().containsKey("fastJob"));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void testInvalidLimit() {
+    bulkhead.setMaxConcurrent(Collections.singletonMap("slowJob", 0));
+  }
+}
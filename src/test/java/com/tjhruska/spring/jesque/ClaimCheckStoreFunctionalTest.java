@@ -0,0 +1,133 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import com.tjhruska.spring.jesque.testJobs.TestInitializingBeanJob;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class ClaimCheckStoreFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  ClaimCheckStore claimCheckStore;
+  BeanJobFactory beanJobFactory;
+  String largeArg;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    claimCheckStore = new ClaimCheckStore(jedisPool1, "resque");
+    claimCheckStore.setThresholdBytes(1000);
+
+    StaticApplicationContext context = new StaticApplicationContext();
+    context.registerPrototype("testInitializingBeanJob", TestInitializingBeanJob.class);
+    beanJobFactory = new BeanJobFactory();
+    beanJobFactory.setApplicationContext(context);
+    beanJobFactory.setClaimCheckStore(claimCheckStore);
+
+    StringBuilder arg = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      arg.append("customer-").append(i).append(',');
+    }
+    largeArg = arg.toString();
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  @Test
+  public void jobUnchangedWhenCheckInFails() {
+    ClaimCheckStore unreachable = new ClaimCheckStore(new JedisPool("localhost", 1), "resque");
+    unreachable.setThresholdBytes(1000);
+    Job job = new BeanJob("testInitializingBeanJob", "small", largeArg);
+    try {
+      unreachable.checkIn(job);
+      fail("Check in should fail without redis");
+    } catch (RuntimeException e) {
+      // expected
+    }
+    assertEquals("Large arg should still be inline", largeArg, job.getArgs()[2]);
+    assertNull("No claim checks should be recorded", JobVars.get(job, JobVars.CLAIM_CHECKS));
+  }
+
+  @Test
+  public void largeArgStoredAsideAndReleasedOnSuccess() throws Exception {
+    claimCheckStore.enqueue(jesqueClient1, "foo", new BeanJob("testInitializingBeanJob", "small", largeArg));
+
+    String payload = jedis1.lindex("resque:queue:foo", 0);
+    assertTrue("Queue should only carry a reference", payload.length() < 500);
+    Job job = ObjectMapperFactory.get().readValue(payload, Job.class);
+    assertEquals("Small arg should stay inline", "small", job.getArgs()[1]);
+    List<?> ids = (List<?>) JobVars.get(job, JobVars.CLAIM_CHECKS);
+    String key = claimCheckStore.getKey((String) ids.get(0));
+    assertTrue("Stored arg should have a TTL", jedis1.ttl(key) > 0);
+
+    Callable<?> runner = (Callable<?>) beanJobFactory.materializeJob(job);
+    TestInitializingBeanJob bean = (TestInitializingBeanJob) ((ClaimCheckReleasingProxy) runner).getDelegate();
+    assertEquals("Bean should get the stored arg", largeArg, bean.getArg2());
+    assertTrue("Stored arg should be kept until the job succeeded", jedis1.exists(key));
+
+    runner.call();
+    assertFalse("Stored arg should be deleted after success", jedis1.exists(key));
+  }
+
+  @Test
+  public void smallArgsLeftInline() throws Exception {
+    Job job = claimCheckStore.checkIn(new BeanJob("testInitializingBeanJob", "a", "b"));
+    assertNull("No arg should be stored aside", JobVars.get(job, JobVars.CLAIM_CHECKS));
+    assertFalse("Job without claim checks should not be wrapped",
+        beanJobFactory.materializeJob(job) instanceof ClaimCheckReleasingProxy);
+  }
+
+  @Test
+  public void expiredArgFailsJob() throws Exception {
+    Job job = claimCheckStore.checkIn(new BeanJob("testInitializingBeanJob", "small", largeArg));
+    assertNotNull("Arg should be stored aside", JobVars.get(job, JobVars.CLAIM_CHECKS));
+    jedis1.flushDB();
+    try {
+      beanJobFactory.materializeJob(job);
+      fail("Job with a missing arg should not materialize");
+    } catch (RuntimeException e) {
+      assertTrue("Wrong exception message: " + e.getMessage(), e.getMessage().contains("has expired"));
+    }
+  }
+}
@@ -0,0 +1,106 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+
+import javax.annotation.Resource;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class ConcurrencyLimitAdmissionPolicyFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  Jedis jedis1;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private ConcurrencyLimitAdmissionPolicy createPolicy(long leaseMillis) {
+    ConcurrencyLimitAdmissionPolicy policy = new ConcurrencyLimitAdmissionPolicy(jedisPool1, "resque");
+    policy.setMaxConcurrent(Collections.singletonMap("testBeanJob", 2));
+    policy.setLeaseMillis(leaseMillis);
+    return policy;
+  }
+
+  @Test
+  public void unlimitedBeansAreAdmitted() {
+    assertSame("Unlimited bean should be admitted", JobPermit.NONE,
+        createPolicy(60000L).tryAcquire("otherBeanJob", new BeanJob("otherBeanJob")));
+  }
+
+  @Test
+  public void limitIsSharedAcrossNodes() {
+    ConcurrencyLimitAdmissionPolicy node1 = createPolicy(60000L);
+    ConcurrencyLimitAdmissionPolicy node2 = createPolicy(60000L);
+
+    JobPermit permit1 = node1.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    JobPermit permit2 = node2.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    assertNotNull("First permit should be granted", permit1);
+    assertNotNull("Second permit should be granted", permit2);
+    assertNull("Third job should not be admitted", node1.tryAcquire("testBeanJob", new BeanJob("testBeanJob")));
+
+    permit2.release();
+    assertEquals("Wrong number of leases", 1L, jedis1.zcard("resque:concurrency:testBeanJob").longValue());
+    assertNotNull("Released permit should be available again",
+        node1.tryAcquire("testBeanJob", new BeanJob("testBeanJob")));
+    assertEquals("Wrong number of held leases", 2, node1.getHeldLeaseCount());
+  }
+
+  @Test
+  public void leasesOfCrashedNodesExpire() throws Exception {
+    ConcurrencyLimitAdmissionPolicy crashed = createPolicy(200L);
+    ConcurrencyLimitAdmissionPolicy alive = createPolicy(200L);
+
+    crashed.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    crashed.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    alive.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    assertNull("Limit should be reached", alive.tryAcquire("testBeanJob", new BeanJob("testBeanJob")));
+
+    Thread.sleep(300L);
+    assertNotNull("Expired leases should free their permits", alive.tryAcquire("testBeanJob",
+        new BeanJob("testBeanJob")));
+  }
+
+  @Test
+  public void renewedLeasesOutliveLeaseMillis() throws Exception {
+    ConcurrencyLimitAdmissionPolicy node = createPolicy(200L);
+    node.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    node.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+
+    for (int i = 0; i < 5; i++) {
+      Thread.sleep(node.getIntervalMillis());
+      node.run();
+    }
+    assertNull("Renewed leases should still hold their permits", node.tryAcquire("testBeanJob",
+        new BeanJob("testBeanJob")));
+  }
+}
@@ -0,0 +1,70 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class ConsistentHashRingUnitTest {
+
+  private Map<String, String> nodes(int count) {
+    Map<String, String> nodes = new LinkedHashMap<String, String>();
+    for (int i = 0; i < count; i++) {
+      nodes.put("node" + i, "node" + i);
+    }
+    return nodes;
+  }
+
+  @Test
+  public void keysSpreadEvenly() {
+    ConsistentHashRing<String> ring = new ConsistentHashRing<String>(nodes(4), 160);
+    Map<String, Integer> counts = new HashMap<String, Integer>();
+    for (int i = 0; i < 40000; i++) {
+      String node = ring.get("customer-" + i);
+      counts.put(node, counts.containsKey(node) ? counts.get(node) + 1 : 1);
+    }
+    assertEquals("Every node should get keys", 4, counts.size());
+    for (Map.Entry<String, Integer> count : counts.entrySet()) {
+      assertTrue(count.getKey() + " got " + count.getValue() + " of 40000 keys", count.getValue() > 7000
+          && count.getValue() < 13000);
+    }
+  }
+
+  @Test
+  public void sameKeySameNodeRegardlessOfOrder() {
+    Map<String, String> reversed = new LinkedHashMap<String, String>();
+    reversed.put("node2", "node2");
+    reversed.put("node1", "node1");
+    reversed.put("node0", "node0");
+    ConsistentHashRing<String> ring = new ConsistentHashRing<String>(nodes(3), 160);
+    ConsistentHashRing<String> reversedRing = new ConsistentHashRing<String>(reversed, 160);
+    for (int i = 0; i < 1000; i++) {
+      assertEquals("Key should map to the same node", ring.get("customer-" + i), reversedRing.get("customer-" + i));
+    }
+  }
+
+  @Test
+  public void addingNodeMovesFewKeys() {
+    ConsistentHashRing<String> four = new ConsistentHashRing<String>(nodes(4), 160);
+    ConsistentHashRing<String> five = new ConsistentHashRing<String>(nodes(5), 160);
+    int moved = 0;
+    for (int i = 0; i < 10000; i++) {
+      String before = four.get("customer-" + i);
+      String after = five.get("customer-" + i);
+      if (!before.equals(after)) {
+        assertEquals("Keys should only move to the new node", "node4", after);
+        moved++;
+      }
+    }
+    assertTrue("About a fifth of the keys should move, moved " + moved, moved > 1500 && moved < 2500);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void noNodes() {
+    new ConsistentHashRing<String>(new HashMap<String, String>(), 160);
+  }
+}
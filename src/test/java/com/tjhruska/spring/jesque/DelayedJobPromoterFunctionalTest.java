@@ -0,0 +1,126 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class DelayedJobPromoterFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueConfig1")
+  public Config jesqueConfig1;
+
+  DelayedJobScheduler scheduler;
+  DelayedJobPromoter promoter;
+  Jedis jedis1;
+
+  @Before
+  public void setup() {
+    scheduler = new DelayedJobScheduler(jedisPool1, "resque");
+    promoter = new DelayedJobPromoter(jedisPool1, "resque");
+    promoter.setBeanName("testPromoter");
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  @Test
+  public void promotesOnlyDueJobs() throws Exception {
+    for (int i = 0; i < 5; i++) {
+      scheduler.enqueueIn("foo", new BeanJob("testBeanJob"), -1000L);
+    }
+    scheduler.enqueueIn("foo", new BeanJob("testInitializingBeanJob", "later", "job"), 60000L);
+    scheduler.enqueueIn("bar", new BeanJob("testBeanJob"), -1000L);
+
+    promoter.run();
+
+    assertEquals("Due jobs should be on foo", Long.valueOf(5), jedis1.llen("resque:queue:foo"));
+    assertEquals("Due jobs should be on bar", Long.valueOf(1), jedis1.llen("resque:queue:bar"));
+    assertEquals("Future job should still be delayed", Long.valueOf(1),
+        jedis1.zcard(DelayedJobScheduler.getDelayedQueueKey("resque", "foo")));
+    assertEquals("Wrong job promoted", new BeanJob("testBeanJob"),
+        ObjectMapperFactory.get().readValue(jedis1.lpop("resque:queue:foo"), Job.class));
+    assertEquals("Empty delayed queue should be forgotten", Boolean.FALSE,
+        jedis1.sismember("resque:delayedQueues", "bar"));
+  }
+
+  @Test
+  public void promotesBacklogInBatches() {
+    promoter.setBatchSize(10);
+    for (int i = 0; i < 25; i++) {
+      scheduler.enqueueIn("foo", new BeanJob("testBeanJob"), -1000L);
+    }
+    promoter.run();
+    assertEquals("Whole backlog should be promoted in one tick", Long.valueOf(25), jedis1.llen("resque:queue:foo"));
+  }
+
+  @Test
+  public void onlyOneNodePromotes() {
+    DelayedJobPromoter otherNode = new DelayedJobPromoter(jedisPool1, "resque");
+    otherNode.setBeanName("otherNodePromoter");
+    promoter.run();
+
+    scheduler.enqueueIn("foo", new BeanJob("testBeanJob"), -1000L);
+    otherNode.run();
+    assertEquals("Other node should not promote while the lease is held", Long.valueOf(0),
+        jedis1.llen("resque:queue:foo"));
+
+    promoter.run();
+    assertEquals("Lease holder should promote", Long.valueOf(1), jedis1.llen("resque:queue:foo"));
+  }
+
+  @Test
+  public void failedJobsRetriedUntilOutOfAttempts() throws Exception {
+    RetryPolicy retryPolicy = new RetryPolicy();
+    retryPolicy.setMaxAttempts(2);
+    BeanJobFactory beanJobFactory = new BeanJobFactory();
+    beanJobFactory.setRetryPolicies(Collections.singletonMap("missingBean", retryPolicy));
+    WorkerWithQueueStrategy worker = new WorkerWithQueueStrategy(jesqueConfig1, Arrays.asList("foo"), beanJobFactory);
+    try {
+      worker.failure(new RuntimeException("boom"), new BeanJob("missingBean"), "foo");
+      assertEquals("Failure should be rescheduled", Long.valueOf(1),
+          jedis1.zcard(DelayedJobScheduler.getDelayedQueueKey("resque", "foo")));
+      assertEquals("Retried job should not be failed", Long.valueOf(0), jedis1.llen("resque:failed"));
+
+      String member = jedis1.zrange(DelayedJobScheduler.getDelayedQueueKey("resque", "foo"), 0, 0).iterator().next();
+      Job retried = ObjectMapperFactory.get().readValue(
+          member.substring(member.indexOf(DelayedJobScheduler.MEMBER_SEPARATOR) + 1), Job.class);
+      assertEquals("Attempt should be counted", 1, RetryPolicy.getAttempt(retried));
+
+      worker.failure(new RuntimeException("boom"), retried, "foo");
+      assertEquals("Last attempt should be failed", Long.valueOf(1), jedis1.llen("resque:failed"));
+    } finally {
+      worker.end(true);
+    }
+  }
+}
@@ -0,0 +1,149 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Date;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.JobFailure;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class FailedJobReplayerFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  Jedis jedis1;
+  FailedJobReplayer replayer;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    replayer = new FailedJobReplayer(jedisPool1, "resque");
+    replayer.setChunkSize(3);
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private void fail(String queue, Job job, Throwable throwable, Date failedAt) throws Exception {
+    fail("resque:failed", queue, job, throwable, failedAt);
+  }
+
+  private void fail(String failedKey, String queue, Job job, Throwable throwable, Date failedAt) throws Exception {
+    JobFailure failure = new JobFailure();
+    failure.setFailedAt(failedAt);
+    failure.setWorker("worker");
+    failure.setQueue(queue);
+    failure.setPayload(job);
+    failure.setThrowable(throwable);
+    jedis1.rpush(failedKey, ObjectMapperFactory.get().writeValueAsString(failure));
+  }
+
+  @Test
+  public void replaysMatchingJobsInChunks() throws Exception {
+    Date now = new Date();
+    for (int i = 0; i < 5; i++) {
+      fail("foo", new BeanJob("flakyJob", i), new IllegalStateException("down"), now);
+      fail("bar", new BeanJob("otherJob", i), new IllegalStateException("down"), now);
+    }
+    fail("foo", new BeanJob("flakyJob", 99), new IllegalArgumentException("bad"), now);
+    fail("foo", new Job("com.example.NotABean"), new IllegalStateException("down"), now);
+
+    FailedJobFilter filter = new FailedJobFilter();
+    filter.setBeanIds(Arrays.asList("flakyJob"));
+    filter.setExceptionClasses(Arrays.asList("IllegalStateException"));
+    assertEquals("Wrong dry run count", 5L, replayer.count(filter));
+    assertEquals("Dry run should not touch the failed list", 12L, jedis1.llen("resque:failed").longValue());
+
+    assertEquals("Wrong replay count", 5L, replayer.replay(filter));
+    assertEquals("Replayed jobs should be requeued", 5L, jedis1.llen("resque:queue:foo").longValue());
+    assertEquals("Replayed jobs should keep their order", new BeanJob("flakyJob", 0),
+        ObjectMapperFactory.get().readValue(jedis1.lindex("resque:queue:foo", 0), Job.class));
+    assertTrue("Queue should be registered", jedis1.sismember("resque:queues", "foo"));
+    assertEquals("Replayed entries should be removed", 7L, jedis1.llen("resque:failed").longValue());
+    assertEquals("Kept entries should keep their order", "otherJob",
+        ObjectMapperFactory.get().readValue(jedis1.lindex("resque:failed", 0), JobFailure.class).getPayload()
+            .getArgs()[0]);
+    assertFalse("Drained list should be gone", jedis1.exists("resque:failed:replaying"));
+    assertEquals("Nothing left to replay", 0L, replayer.count(filter));
+  }
+
+  @Test
+  public void finishesAnInterruptedReplayFirst() throws Exception {
+    Date now = new Date();
+    fail("resque:failed:replaying", "foo", new BeanJob("flakyJob", 1), new IllegalStateException("down"), now);
+    fail("resque:failed:replaying", "foo", new BeanJob("otherJob", 2), new IllegalStateException("down"), now);
+    fail("foo", new BeanJob("flakyJob", 3), new IllegalStateException("down"), now);
+
+    FailedJobFilter filter = new FailedJobFilter();
+    filter.setBeanIds(Arrays.asList("flakyJob"));
+    assertEquals("Only the interrupted replay should be finished", 1L, replayer.replay(filter));
+    assertEquals("Wrong job replayed", new BeanJob("flakyJob", 1),
+        ObjectMapperFactory.get().readValue(jedis1.lindex("resque:queue:foo", 0), Job.class));
+    assertFalse("Drained list should be gone", jedis1.exists("resque:failed:replaying"));
+    assertEquals("Failed list should keep the new failure and get the unmatched entry back", 2L,
+        jedis1.llen("resque:failed").longValue());
+
+    assertEquals("Next replay should pick up the failed list", 1L, replayer.replay(filter));
+    assertEquals("Unmatched entry should stay", 1L, jedis1.llen("resque:failed").longValue());
+  }
+
+  @Test
+  public void filtersByTimeAndQueueAndKeepsEntries() throws Exception {
+    Date old = new Date(System.currentTimeMillis() - 3600000L);
+    fail("foo", new BeanJob("flakyJob", 1), new IllegalStateException("down"), old);
+    fail("foo", new BeanJob("flakyJob", 2), new IllegalStateException("down"), new Date());
+    fail("bar", new BeanJob("flakyJob", 3), new IllegalStateException("down"), new Date());
+
+    FailedJobFilter filter = new FailedJobFilter();
+    filter.setFailedAfter(new Date(System.currentTimeMillis() - 60000L));
+    filter.setQueues(Arrays.asList("foo"));
+    replayer.setRemoveReplayed(false);
+    replayer.setMaxJobsPerSecond(1000);
+
+    assertEquals("Only the recent foo failure should match", 1L, replayer.replay(filter));
+    assertEquals("Wrong job replayed", new BeanJob("flakyJob", 2),
+        ObjectMapperFactory.get().readValue(jedis1.lindex("resque:queue:foo", 0), Job.class));
+    assertEquals("Entries should be kept", 3L, jedis1.llen("resque:failed").longValue());
+  }
+
+  @Test
+  public void replayedJobsGetAFreshRetryBudget() throws Exception {
+    Job job = new BeanJob("flakyJob", 1);
+    JobVars.set(job, JobVars.ATTEMPT, 3);
+    JobVars.set(job, JobVars.TRACE_ID, "trace");
+    fail("foo", job, new IllegalStateException("down"), new Date());
+
+    assertEquals("Wrong replay count", 1L, replayer.replay(new FailedJobFilter()));
+    Job replayed = ObjectMapperFactory.get().readValue(jedis1.lindex("resque:queue:foo", 0), Job.class);
+    assertNull("Attempt count should be dropped", JobVars.get(replayed, JobVars.ATTEMPT));
+    assertEquals("Other vars should be kept", "trace", JobVars.get(replayed, JobVars.TRACE_ID));
+  }
+}
@@ -1,19 +1,32 @@
 package com.tjhruska.spring.jesque;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Matchers.anyCollectionOf;
+import static org.mockito.Mockito.doAnswer;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerEventEmitter;
 import net.greghaines.jesque.worker.WorkerImpl;
+import net.greghaines.jesque.worker.WorkerListener;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
 
 public class JesqueContainerUnitTest {
 
@@ -33,6 +46,19 @@ public class JesqueContainerUnitTest {
     jesqueContainer.setBeanName("testJesqueContainer");
   }
 
+  /**
+   * The mocked worker's run() returns at once, keep it alive long enough to be seen running.
+   */
+  private void keepMockWorkerRunning() {
+    doAnswer(new Answer<Void>() {
+      @Override
+      public Void answer(InvocationOnMock invocation) throws Throwable {
+        Thread.sleep(500);
+        return null;
+      }
+    }).when(mockWorker).run();
+  }
+
   @Test
   public void testIsPaused() {
     jesqueContainer.checkWorkers();
@@ -48,6 +74,7 @@ public class JesqueContainerUnitTest {
 
   @Test
   public void testInitOne() {
+    keepMockWorkerRunning();
     jesqueContainer.checkWorkers();
     assertNotNull("Worker was null", jesqueContainer.getWorkers()[0]);
     assertNotNull("WorkerThread was null", jesqueContainer.getWorkerThreads()[0]);
@@ -83,6 +110,7 @@ public class JesqueContainerUnitTest {
 
   @Test
   public void testJoin() {
+    keepMockWorkerRunning();
     jesqueContainer.checkWorkers();
     try {
       jesqueContainer.join(0);
@@ -91,4 +119,153 @@ public class JesqueContainerUnitTest {
       throw new RuntimeException(e);
     }
   }
-}
\ No newline at end of file
+
+  @SuppressWarnings("unchecked")
+  @Test
+  public void testQueueSelectionStrategyHandedToWorkers() throws Exception {
+    Callable<Worker> strategyWorkerFactory = mock(Callable.class);
+    WorkerWithQueueStrategy strategyWorker = mock(WorkerWithQueueStrategy.class);
+    when(strategyWorkerFactory.call()).thenReturn(strategyWorker);
+    QueueSelectionStrategy strategy = new StrictPriorityQueueSelectionStrategy();
+
+    jesqueContainer = new JesqueContainer(strategyWorkerFactory);
+    jesqueContainer.setBeanName("testJesqueContainerWithStrategy");
+    jesqueContainer.setQueueSelectionStrategy(strategy);
+    jesqueContainer.checkWorkers();
+    verify(strategyWorker).setQueueSelectionStrategy(strategy);
+  }
+
+  @Test
+  public void testWorkerListenersAddedToWorkers() throws Exception {
+    WorkerEventEmitter emitter = mock(WorkerEventEmitter.class);
+    when(mockWorker.getWorkerEventEmitter()).thenReturn(emitter);
+    WorkerListener listener = mock(WorkerListener.class);
+
+    jesqueContainer.setWorkerListeners(Collections.singletonList(listener));
+    jesqueContainer.checkWorkers();
+    verify(emitter).addListener(listener);
+  }
+
+  @Test
+  public void testResize() throws Exception {
+    final CountDownLatch release = new CountDownLatch(1);
+    final Worker[] created = new Worker[10];
+    Callable<Worker> blockingWorkerFactory = new Callable<Worker>() {
+      int count = 0;
+
+      @Override
+      public Worker call() throws Exception {
+        Worker worker = mock(Worker.class);
+        doAnswer(new Answer<Void>() {
+          @Override
+          public Void answer(InvocationOnMock invocation) throws Throwable {
+            release.await();
+            return null;
+          }
+        }).when(worker).run();
+        created[count++] = worker;
+        return worker;
+      }
+    };
+    jesqueContainer = new JesqueContainer(blockingWorkerFactory, 3);
+    jesqueContainer.setBeanName("testJesqueContainerResize");
+    jesqueContainer.checkWorkers();
+    assertEquals("Expected 3 live workers", 3, jesqueContainer.getLiveWorkerCount());
+
+    jesqueContainer.setMaxWorkerCount(1);
+    assertEquals("Expected 1 worker slot", 1, jesqueContainer.getWorkers().length);
+    verify(created[0], never()).end(false);
+    verify(created[1]).end(false);
+    verify(created[2]).end(false);
+    assertEquals("Retiring workers should still count until they finish", 3, jesqueContainer.getLiveWorkerCount());
+
+    release.countDown();
+    for (int i = 0; i < 100 && jesqueContainer.getLiveWorkerCount() > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("Retired workers should be gone", 0, jesqueContainer.getLiveWorkerCount());
+    assertEquals("Retired workers are tracked until the next check", 2, jesqueContainer.getRetiringWorkerCount());
+    jesqueContainer.checkWorkers();
+    assertEquals("Finished retired workers should be pruned", 0, jesqueContainer.getRetiringWorkerCount());
+
+    jesqueContainer.setMaxWorkerCount(2);
+    jesqueContainer.checkWorkers();
+    assertEquals("Expected 2 worker slots", 2, jesqueContainer.getWorkers().length);
+    assertNotNull("Grown slot should be filled", jesqueContainer.getWorkers()[1]);
+  }
+
+  @Test
+  public void testPauseQueue() throws Exception {
+    WorkerWithQueueStrategy strategyWorker = mock(WorkerWithQueueStrategy.class);
+    when(mockWorkerFactory.call()).thenReturn(strategyWorker);
+    jesqueContainer.pauseQueue("a");
+    jesqueContainer.checkWorkers();
+    verify(strategyWorker).setPausedQueues(new LinkedHashSet<String>(Arrays.asList("a")));
+    assertEquals("Expected paused queue", Arrays.asList("a"), Arrays.asList(jesqueContainer.getPausedQueues()));
+
+    jesqueContainer.resumeQueue("a");
+    verify(strategyWorker).setPausedQueues(Collections.<String> emptySet());
+    verify(strategyWorker, never()).setQueues(anyCollectionOf(String.class));
+    assertEquals("Expected no paused queues", 0, jesqueContainer.getPausedQueues().length);
+  }
+
+  @Test
+  public void testPauseQueueLeavesPlainWorkerQueues() {
+    jesqueContainer.pauseQueue("a");
+    jesqueContainer.checkWorkers();
+    verify(mockWorker, never()).setQueues(anyCollectionOf(String.class));
+  }
+
+  @Test
+  public void testStuckWorkerReplaced() throws Exception {
+    final AtomicBoolean release = new AtomicBoolean();
+    final Worker[] created = new Worker[2];
+    Callable<Worker> stuckWorkerFactory = new Callable<Worker>() {
+      int count = 0;
+
+      @Override
+      public Worker call() throws Exception {
+        Worker worker = mock(Worker.class);
+        if (count == 0) {
+          // a job ignoring the interrupt for its timeout
+          doAnswer(new Answer<Void>() {
+            @Override
+            public Void answer(InvocationOnMock invocation) throws Throwable {
+              try {
+                new TimeoutProxy(new Runnable() {
+                  @Override
+                  public void run() {
+                    while (!release.get()) {
+                      Thread.yield();
+                    }
+                  }
+                }, 20, 20, "stuckJob").call();
+              } catch (JobTimeoutException e) {
+                // expected once released
+              }
+              return null;
+            }
+          }).when(worker).run();
+        }
+        created[count++] = worker;
+        return worker;
+      }
+    };
+    jesqueContainer = new JesqueContainer(stuckWorkerFactory);
+    jesqueContainer.setBeanName("testJesqueContainerStuck");
+    jesqueContainer.checkWorkers();
+    Thread stuckThread = jesqueContainer.getWorkerThreads()[0];
+    for (int i = 0; i < 100 && !JobWatchdog.isStuck(stuckThread); i++) {
+      Thread.sleep(10);
+    }
+    assertTrue("Worker should be reported stuck", JobWatchdog.isStuck(stuckThread));
+
+    jesqueContainer.checkWorkers();
+    verify(created[0]).end(true);
+    assertEquals("Stuck worker should be replaced", created[1], jesqueContainer.getWorkers()[0]);
+
+    release.set(true);
+    stuckThread.join(1000);
+    assertFalse("Finished job should no longer be stuck", JobWatchdog.isStuck(stuckThread));
+  }
+}
@@ -4,8 +4,12 @@ import javax.annotation.Resource;
 
 import org.junit.Assert;
 
+import java.util.Arrays;
+
+import net.greghaines.jesque.Config;
 import net.greghaines.jesque.Job;
 import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.json.ObjectMapperFactory;
 
 import org.junit.After;
 import org.junit.Before;
@@ -18,6 +22,7 @@ import com.tjhruska.spring.jesque.JesqueJobTransporter;
 
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.JedisPool;
+import redis.clients.util.SafeEncoder;
 
 @RunWith(SpringJUnit4ClassRunner.class)
 @ContextConfiguration()
@@ -37,6 +42,9 @@ public class JesqueJobTransporterFunctionalTest {
   @Resource (name="jesqueClient2")
   public Client jesqueClient2;
   
+  @Resource (name="jesqueConfig2")
+  public Config jesqueConfig2;
+  
   Jedis jedis1;
   Jedis jedis2;
   
@@ -147,4 +155,133 @@ public class JesqueJobTransporterFunctionalTest {
     transporter.run();
     assertSrcDestQueueSizes(0L, 254L);
   }
-} 
\ No newline at end of file
+  
+  @Test
+  public void adaptiveLimitStartsAtMin() {
+    transporter.setAdaptiveDestinationLimit(new AdaptiveDestinationLimit(5, 15, 100));
+    loadSomeJobs(jesqueClient1, transporter.getSourceQueueName(), 127);
+    transporter.run();
+    assertSrcDestQueueSizes(112L, 15L);
+    Assert.assertEquals("Wrong destination limit", Integer.valueOf(15), transporter.getDestinationLimit());
+  }
+  
+  @Test
+  public void statisticsAfterRuns() throws Exception {
+    transporter.setDestinationLimit(10);
+    loadSomeJobs(jesqueClient1, transporter.getSourceQueueName(), 127);
+    transporter.run();
+    Assert.assertEquals("Wrong runs", 1L, transporter.getRuns());
+    Assert.assertEquals("Wrong jobs moved", 10L, transporter.getJobsMoved());
+    Assert.assertEquals("Wrong source depth", 117L, transporter.getSourceDepth());
+    Assert.assertEquals("Wrong destination depth", 10L, transporter.getDestDepth());
+    // 11 checks of 2 LLEN, and an LPOP and RPUSH per job
+    Assert.assertEquals("Wrong round trips", 42L, transporter.getLastRunRoundTrips());
+    Assert.assertEquals("Wrong round trips per job", 4.2d, transporter.getRoundTripsPerJob(), 0.001);
+    Assert.assertEquals("No pushes should have failed", 0L, transporter.getFailedPushesReturned());
+
+    Thread.sleep(20L);
+    Assert.assertTrue("Time at the destination limit should be counted", transporter.getBlockedAtLimitMillis() >= 20L);
+    jedis2.del(transporter.getQualifiedQueueName(transporter.getDestQueueName()));
+    transporter.run();
+    Assert.assertEquals("Wrong jobs moved", 20L, transporter.getJobsMoved());
+  }
+  
+  @Test
+  public void compressedTransportDecodedByWorker() throws Exception {
+    StringBuilder arg = new StringBuilder();
+    for (int i = 0; i < 500; i++) {
+      arg.append("customer-").append(i % 10).append(',');
+    }
+    jesqueClient1.enqueue(transporter.getSourceQueueName(), new BeanJob("testBeanJob", arg.toString()));
+    jesqueClient1.enqueue(transporter.getSourceQueueName(), new BeanJob("testBeanJob"));
+    transporter.setCompressionMinBytes(1024);
+    transporter.run();
+
+    byte[] compressed = jedis2.lindex(SafeEncoder.encode(transporter.getQualifiedQueueName(transporter.getDestQueueName())), 0);
+    byte[] plain = jedis2.lindex(SafeEncoder.encode(transporter.getQualifiedQueueName(transporter.getDestQueueName())), 1);
+    Assert.assertTrue("Large job should be compressed", JobPayloadCodec.isCompressed(compressed));
+    Assert.assertFalse("Small job should not be compressed", JobPayloadCodec.isCompressed(plain));
+    Assert.assertTrue("Fewer bytes should be written", transporter.getBytesWritten() < transporter.getBytesRead());
+
+    WorkerWithQueueStrategy worker = new WorkerWithQueueStrategy(jesqueConfig2,
+        Arrays.asList(transporter.getDestQueueName()), new BeanJobFactory());
+    try {
+      Job job = ObjectMapperFactory.get().readValue(worker.pop(transporter.getDestQueueName()), Job.class);
+      Assert.assertEquals("Worker should see the decompressed arg", arg.toString(), job.getArgs()[1]);
+      job = ObjectMapperFactory.get().readValue(worker.pop(transporter.getDestQueueName()), Job.class);
+      Assert.assertEquals("Worker should see the plain job", 1, job.getArgs().length);
+    } finally {
+      worker.end(true);
+    }
+  }
+
+  @Test
+  public void hopsStampedOnTracedJobs() throws Exception {
+    jesqueClient1.enqueue(transporter.getSourceQueueName(), JobTracing.startTrace(new BeanJob("testBeanJob")));
+    jesqueClient1.enqueue(transporter.getSourceQueueName(), new BeanJob("testBeanJob"));
+    transporter.setStampHops(true);
+    transporter.run();
+
+    String destKey = transporter.getQualifiedQueueName(transporter.getDestQueueName());
+    Job traced = ObjectMapperFactory.get().readValue(jedis2.lindex(destKey, 0), Job.class);
+    Job untraced = ObjectMapperFactory.get().readValue(jedis2.lindex(destKey, 1), Job.class);
+    Assert.assertEquals("Traced job should have one hop", 1, JobTracing.getHops(traced).size());
+    Assert.assertEquals("Hop should name the destination", transporter.getDestQueueName(),
+        ((java.util.Map<?, ?>) JobTracing.getHops(traced).get(0)).get("queue"));
+    Assert.assertNull("Untraced job should be left alone", JobVars.get(untraced, JobVars.HOPS));
+  }
+
+  @Test
+  public void hopsStampedOnTracedSmileJobs() throws Exception {
+    new SmileJobClient(jedisPool1, "resque").enqueue(transporter.getSourceQueueName(),
+        JobTracing.startTrace(new BeanJob("testBeanJob")));
+    transporter.setStampHops(true);
+    transporter.run();
+
+    byte[] payload = jedis2.lindex(SafeEncoder.encode(transporter.getQualifiedQueueName(transporter
+        .getDestQueueName())), 0);
+    Assert.assertTrue("Smile job should stay Smile", JobPayloadCodec.isSmile(payload));
+    Job traced = JobPayloadCodec.readJob(payload);
+    Assert.assertEquals("Traced Smile job should have one hop", 1, JobTracing.getHops(traced).size());
+    Assert.assertEquals("Hop should name the destination", transporter.getDestQueueName(),
+        ((java.util.Map<?, ?>) JobTracing.getHops(traced).get(0)).get("queue"));
+  }
+
+  @Test
+  public void smileTransportReadByWorker() throws Exception {
+    jesqueClient1.enqueue(transporter.getSourceQueueName(), new BeanJob("testBeanJob", "json"));
+    new SmileJobClient(jedisPool1, "resque").enqueue(transporter.getSourceQueueName(),
+        new BeanJob("testBeanJob", "smile"));
+    transporter.setSmileEncoding(true);
+    transporter.run();
+
+    String destKey = transporter.getQualifiedQueueName(transporter.getDestQueueName());
+    Assert.assertTrue("JSON job should be re-encoded", JobPayloadCodec.isSmile(jedis2.lindex(SafeEncoder.encode(destKey), 0)));
+    Assert.assertTrue("Smile job should stay Smile", JobPayloadCodec.isSmile(jedis2.lindex(SafeEncoder.encode(destKey), 1)));
+
+    WorkerWithQueueStrategy worker = new WorkerWithQueueStrategy(jesqueConfig2,
+        Arrays.asList(transporter.getDestQueueName()), new BeanJobFactory());
+    try {
+      Assert.assertEquals("Worker should read the re-encoded job", "json",
+          JobPayloadCodec.readJob(worker.pop(transporter.getDestQueueName())).getArgs()[1]);
+      Assert.assertEquals("Worker should read the Smile job", "smile",
+          JobPayloadCodec.readJob(worker.pop(transporter.getDestQueueName())).getArgs()[1]);
+    } finally {
+      worker.end(true);
+    }
+  }
+
+  @Test
+  public void unreadablePayloadMovedWithSmileEncoding() throws Exception {
+    jedis1.rpush(transporter.getQualifiedQueueName(transporter.getSourceQueueName()), "{not a job");
+    jesqueClient1.enqueue(transporter.getSourceQueueName(), new BeanJob("testBeanJob"));
+    transporter.setSmileEncoding(true);
+    transporter.run();
+
+    String destKey = transporter.getQualifiedQueueName(transporter.getDestQueueName());
+    assertSrcDestQueueSizes(0L, 2L);
+    Assert.assertEquals("Unreadable payload should be moved as is", "{not a job", jedis2.lindex(destKey, 0));
+    Assert.assertTrue("Readable job should still be re-encoded",
+        JobPayloadCodec.isSmile(jedis2.lindex(SafeEncoder.encode(destKey), 1)));
+  }
+}
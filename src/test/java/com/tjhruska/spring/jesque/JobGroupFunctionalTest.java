@@ -0,0 +1,117 @@
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_FAILURE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_PROCESS;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class JobGroupFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  Jedis jedis1;
+  JobGroupClient client;
+  JobGroupListener listener;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    client = new JobGroupClient(jedisPool1, "resque");
+    listener = new JobGroupListener(jedisPool1, "resque");
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private Job pop(String queue) throws Exception {
+    return ObjectMapperFactory.get().readValue(jedis1.lpop("resque:queue:" + queue), Job.class);
+  }
+
+  @Test
+  public void lastChildEnqueuesCompletion() throws Exception {
+    List<Job> children = new ArrayList<Job>();
+    for (int i = 0; i < 3; i++) {
+      children.add(new BeanJob("testBeanJob", i));
+    }
+    String groupId = client.enqueueGroup("work", children, "done", new BeanJob("testBeanJobCallable"));
+    assertEquals("Children should be queued", 3L, jedis1.llen("resque:queue:work").longValue());
+    assertTrue("Queue should be registered", jedis1.sismember("resque:queues", "work"));
+
+    listener.onEvent(JOB_SUCCESS, null, "work", pop("work"), null, null, null);
+    listener.onEvent(JOB_PROCESS, null, "work", children.get(1), null, null, null);
+    listener.onEvent(JOB_FAILURE, null, "work", pop("work"), null, null, new RuntimeException("boom"));
+    assertEquals("Completion should wait for the last child", 0L, jedis1.llen("resque:queue:done").longValue());
+
+    listener.onEvent(JOB_SUCCESS, null, "work", pop("work"), null, null, null);
+    Job completion = pop("done");
+    assertEquals("Wrong completion job", "testBeanJobCallable", completion.getArgs()[0]);
+    assertEquals("Completion job should know its group", groupId, JobVars.getString(completion, JobVars.GROUP_ID));
+    assertTrue("Completion queue should be registered", jedis1.sismember("resque:queues", "done"));
+
+    Map<String, Long> status = client.getGroupStatus(groupId);
+    assertEquals("Wrong remaining", Long.valueOf(0), status.get(JobGroupClient.REMAINING));
+    assertEquals("Wrong failed", Long.valueOf(1), status.get(JobGroupClient.FAILED));
+    assertEquals("Wrong total", Long.valueOf(3), status.get(JobGroupClient.TOTAL));
+
+    listener.onEvent(JOB_SUCCESS, null, "done", completion, null, null, null);
+    assertEquals("Completion job should not count as a child", Long.valueOf(0),
+        client.getGroupStatus(groupId).get(JobGroupClient.REMAINING));
+  }
+
+  @Test
+  public void childFinishingTwiceCountedOnce() throws Exception {
+    List<Job> children = new ArrayList<Job>();
+    for (int i = 0; i < 2; i++) {
+      children.add(new BeanJob("testBeanJob", i));
+    }
+    String groupId = client.enqueueGroup("work", children, "done", new BeanJob("testBeanJobCallable"));
+    Job first = pop("work");
+    listener.onEvent(JOB_FAILURE, null, "work", first, null, null, new RuntimeException("boom"));
+    listener.onEvent(JOB_SUCCESS, null, "work", first, null, null, null);
+    assertEquals("Child should only be counted once", Long.valueOf(1),
+        client.getGroupStatus(groupId).get(JobGroupClient.REMAINING));
+    assertEquals("Completion should wait for the other child", 0L, jedis1.llen("resque:queue:done").longValue());
+    assertTrue("Counted children should expire with the group",
+        jedis1.ttl(JobGroupClient.getDoneKey("resque", groupId)) > 0);
+
+    listener.onEvent(JOB_SUCCESS, null, "work", pop("work"), null, null, null);
+    assertEquals("Completion should be enqueued", 1L, jedis1.llen("resque:queue:done").longValue());
+  }
+
+  @Test
+  public void jobsOutsideGroupsIgnored() {
+    listener.onEvent(JOB_SUCCESS, null, "work", new BeanJob("testBeanJob"), null, null, null);
+    assertTrue("Unknown group should have no status", client.getGroupStatus("missing").isEmpty());
+  }
+}
@@ -0,0 +1,46 @@
+package com.tjhruska.spring.jesque;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.Ignore;
+import org.junit.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compares the read cost of JSON and Smile payloads.  Timings depend on the machine, so this is run by hand
+ * (remove the @Ignore) rather than with every build.
+ */
+@Ignore("benchmark, run by hand")
+public class JobPayloadCodecBenchmark {
+  private static final Logger log = LoggerFactory.getLogger(JobPayloadCodecBenchmark.class);
+
+  private static final int ROUNDS = 50000;
+
+  @Test
+  public void smileReadSpeed() throws Exception {
+    Job job = JobPayloadCodecUnitTest.wideBeanJob();
+    byte[] json = ObjectMapperFactory.get().writeValueAsBytes(job);
+    byte[] smile = JobPayloadCodec.toSmile(job);
+
+    // both timed the way workers read payloads popped from redis
+    for (int i = 0; i < ROUNDS; i++) {
+      // warm up both parsers
+      JobPayloadCodec.readJob(JobPayloadCodec.decode(json));
+      JobPayloadCodec.readJob(JobPayloadCodec.decode(smile));
+    }
+    long start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      JobPayloadCodec.readJob(JobPayloadCodec.decode(json));
+    }
+    long jsonNanos = System.nanoTime() - start;
+    start = System.nanoTime();
+    for (int i = 0; i < ROUNDS; i++) {
+      JobPayloadCodec.readJob(JobPayloadCodec.decode(smile));
+    }
+    long smileNanos = System.nanoTime() - start;
+    log.info("Job payload JSON {} bytes {} ns/read, Smile {} bytes {} ns/read", new Object[] { json.length,
+        jsonNanos / ROUNDS, smile.length, smileNanos / ROUNDS });
+  }
+}
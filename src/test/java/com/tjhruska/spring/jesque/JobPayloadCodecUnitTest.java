@@ -0,0 +1,97 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.Test;
+
+public class JobPayloadCodecUnitTest {
+
+  private String largeJobJson() throws Exception {
+    StringBuilder arg = new StringBuilder();
+    for (int i = 0; i < 2000; i++) {
+      arg.append("{\"customer\":").append(i % 50).append(",\"status\":\"ACTIVE\"},");
+    }
+    return ObjectMapperFactory.get().writeValueAsString(new BeanJob("testBeanJob", arg.toString()));
+  }
+
+  @Test
+  public void compressedRoundTrip() throws Exception {
+    String json = largeJobJson();
+    byte[] compressed = JobPayloadCodec.compress(json, 1024);
+
+    assertTrue("Payload should carry the gzip header", JobPayloadCodec.isCompressed(compressed));
+    assertTrue("Payload should shrink, was " + compressed.length + " of " + json.length(),
+        compressed.length * 10 < json.length());
+    assertEquals("Wrong decoded payload", json, JobPayloadCodec.decode(compressed));
+    assertEquals("Decoded payload should still be a BeanJob", "testBeanJob",
+        ObjectMapperFactory.get().readValue(JobPayloadCodec.decode(compressed), Job.class).getArgs()[0]);
+  }
+
+  @Test
+  public void smallPayloadsAreNotCompressed() throws Exception {
+    String json = ObjectMapperFactory.get().writeValueAsString(new BeanJob("testBeanJob"));
+    byte[] payload = JobPayloadCodec.compress(json, 1024);
+
+    assertFalse("Small payload should not be compressed", JobPayloadCodec.isCompressed(payload));
+    assertEquals("Wrong decoded payload", json, JobPayloadCodec.decode(payload));
+  }
+
+  @Test
+  public void compressedPayloadsAreNotCompressedTwice() throws Exception {
+    byte[] compressed = JobPayloadCodec.compress(largeJobJson(), 1024);
+    assertSame("Compressed payload should be passed through", compressed, JobPayloadCodec.compress(compressed, 0));
+  }
+
+  @Test
+  public void plainPayloadsDecode() {
+    assertNull("Null payload should decode to null", JobPayloadCodec.decode(null));
+    assertEquals("Wrong decoded payload", "{\"class\":\"x\"}", JobPayloadCodec.decode("{\"class\":\"x\"}".getBytes()));
+    assertArrayEquals("Incompressible payload should be kept", new byte[] { 1, 2, 3 },
+        JobPayloadCodec.compress(new byte[] { 1, 2, 3 }, 0));
+  }
+
+  @Test
+  public void smileRoundTrip() throws Exception {
+    Job job = new BeanJob("testBeanJob", "a", 1, 2.5d, "\u00e9t\u00e9");
+    byte[] smile = JobPayloadCodec.toSmile(job);
+
+    assertTrue("Payload should carry the Smile header", JobPayloadCodec.isSmile(smile));
+    String decoded = JobPayloadCodec.decode(smile);
+    assertTrue("Decoded payload should still be Smile", JobPayloadCodec.isSmile(decoded));
+    assertEquals("Wrong job read from decoded payload", job, JobPayloadCodec.readJob(decoded));
+    assertEquals("Wrong job read from raw payload", job, JobPayloadCodec.readJob(smile));
+    assertEquals("Wrong job read from compressed payload", job,
+        JobPayloadCodec.readJob(JobPayloadCodec.decode(JobPayloadCodec.compress(smile, 0))));
+    assertEquals("JSON should still be read", job,
+        JobPayloadCodec.readJob(ObjectMapperFactory.get().writeValueAsString(job)));
+    assertSame("Smile payloads should not be re-encoded", smile, JobPayloadCodec.toSmile(smile));
+  }
+
+  /**
+   * Job with many small arguments, the case Smile shrinks most.
+   */
+  static Job wideBeanJob() {
+    Object[] args = new Object[40];
+    args[0] = "testBeanJob";
+    for (int i = 1; i < args.length; i++) {
+      args[i] = (i % 2 == 0) ? (Object) ("customer-" + i) : (Object) (i * 1000L);
+    }
+    return new Job(BeanJobFactory.BEAN_JOB_CLASS_NAME, args);
+  }
+
+  @Test
+  public void smileIsSmaller() throws Exception {
+    Job job = wideBeanJob();
+    byte[] json = ObjectMapperFactory.get().writeValueAsBytes(job);
+    byte[] smile = JobPayloadCodec.toSmile(job);
+    assertTrue("Smile should be smaller, was " + smile.length + " of " + json.length, smile.length < json.length);
+  }
+}
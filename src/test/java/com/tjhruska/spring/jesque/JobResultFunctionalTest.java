@@ -0,0 +1,146 @@
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_FAILURE;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class JobResultFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  JobResultStore store;
+  JobResultClient client;
+
+  @Before
+  public void setup() throws Exception {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    store = new JobResultStore(jedisPool1, "resque");
+    store.afterPropertiesSet();
+    client = new JobResultClient(jedisPool1, jesqueClient1, "resque");
+    client.afterPropertiesSet();
+  }
+
+  @After
+  public void teardown() throws Exception {
+    client.destroy();
+    store.destroy();
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private Job popJob() throws Exception {
+    return ObjectMapperFactory.get().readValue(jedis1.lpop("resque:queue:foo"), Job.class);
+  }
+
+  @Test
+  public void resultCompletesFuture() throws Exception {
+    JobResultFuture future = client.enqueue("foo", new BeanJob("testBeanJobCallable", 3));
+    Job job = popJob();
+    assertEquals("Result id should travel with the job", future.getResultId(),
+        JobVars.getString(job, JobVars.RESULT_ID));
+
+    store.onEvent(JOB_SUCCESS, null, "foo", job, null, Arrays.asList("a", "b"), null);
+    assertEquals("Wrong result", Arrays.asList("a", "b"), future.get(5, TimeUnit.SECONDS));
+    assertTrue("Future should be done", future.isDone());
+    assertEquals("Completed future should be forgotten", 0, client.getWaitingCount());
+    assertTrue("Result should expire", jedis1.ttl("resque:result:" + future.getResultId()) > 0);
+  }
+
+  @Test
+  public void failureCompletesFutureExceptionally() throws Exception {
+    JobResultFuture future = client.enqueue("foo", new BeanJob("testBeanJobCallable"));
+    store.onEvent(JOB_FAILURE, null, "foo", popJob(), null, null, new IllegalStateException("boom"));
+    try {
+      future.get(5, TimeUnit.SECONDS);
+      fail("Expected an exception, but didn't see it");
+    } catch (ExecutionException e) {
+      assertEquals("Wrong exception message", "java.lang.IllegalStateException: boom", e.getCause().getMessage());
+    }
+  }
+
+  @Test
+  public void missedNotificationReadFromStore() throws Exception {
+    JobResultFuture future = client.enqueue("foo", new BeanJob("testBeanJobCallable"));
+    Job job = popJob();
+    JobVars.set(job, JobVars.RESULT_CHANNEL, "resque:result:channel:somebodyElse");
+    store.onEvent(JOB_SUCCESS, null, "foo", job, null, 42, null);
+    Thread.sleep(100L);
+
+    assertEquals("Result should be read from the store", 42, future.get(10, TimeUnit.MILLISECONDS));
+    assertEquals("Stored result should be readable by id", 42, client.getStoredResult(future.getResultId()).get());
+  }
+
+  @Test
+  public void missedNotificationReadFromStoreWithoutTimeout() throws Exception {
+    client.setStoreCheckMillis(50L);
+    JobResultFuture future = client.enqueue("foo", new BeanJob("testBeanJobCallable"));
+    Job job = popJob();
+    JobVars.set(job, JobVars.RESULT_CHANNEL, "resque:result:channel:somebodyElse");
+    store.onEvent(JOB_SUCCESS, null, "foo", job, null, 42, null);
+
+    assertEquals("Result should be read from the store", 42, future.get());
+  }
+
+  @Test
+  public void unreadFuturesForgottenAfterResultTtl() throws Exception {
+    client.setResultTtlSeconds(1);
+    client.enqueue("foo", new BeanJob("testBeanJobCallable"));
+    Thread.sleep(1100L);
+    client.enqueue("foo", new BeanJob("testBeanJobCallable"));
+    assertEquals("Expired future should be forgotten", 1, client.getWaitingCount());
+  }
+
+  @Test
+  public void noResultYet() throws Exception {
+    JobResultFuture future = client.enqueue("foo", new BeanJob("testBeanJobCallable"));
+    try {
+      future.get(10, TimeUnit.MILLISECONDS);
+      fail("Expected a timeout, but didn't see it");
+    } catch (TimeoutException e) {
+      assertNull("Nothing should be stored", client.getStoredResult(future.getResultId()));
+    }
+  }
+
+  @Test
+  public void jobsWithoutResultIdIgnored() throws Exception {
+    store.onEvent(JOB_SUCCESS, null, "foo", new BeanJob("testBeanJob"), null, null, null);
+    Thread.sleep(50L);
+    assertEquals("Nothing should be stored", 0, jedis1.keys("resque:result:*").size());
+  }
+}
@@ -0,0 +1,84 @@
+package com.tjhruska.spring.jesque;
+
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_PROCESS;
+import static net.greghaines.jesque.worker.WorkerEvent.JOB_SUCCESS;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.worker.Worker;
+
+import org.junit.Test;
+
+public class JobTracingUnitTest {
+
+  @Test
+  public void testStartTrace() {
+    Job job = JobTracing.startTrace(new BeanJob("testBeanJob"));
+    assertNotNull("Expected a trace id", JobVars.get(job, JobVars.TRACE_ID));
+    assertNotNull("Expected a span id", JobVars.get(job, JobVars.SPAN_ID));
+    assertNotNull("Expected an enqueue time", JobVars.get(job, JobVars.ENQUEUED_AT));
+
+    Job child = JobTracing.startTrace(new BeanJob("testBeanJob"), JobVars.getString(job, JobVars.TRACE_ID));
+    assertEquals("Child should share the trace", JobVars.get(job, JobVars.TRACE_ID),
+        JobVars.get(child, JobVars.TRACE_ID));
+  }
+
+  @Test
+  public void testStampHop() throws Exception {
+    byte[] untraced = ObjectMapperFactory.get().writeValueAsBytes(new BeanJob("testBeanJob"));
+    assertSame("Untraced payloads should pass through", untraced, JobTracing.stampHop(untraced, "bar"));
+
+    byte[] traced = ObjectMapperFactory.get().writeValueAsBytes(JobTracing.startTrace(new BeanJob("testBeanJob")));
+    byte[] stamped = JobTracing.stampHop(JobPayloadCodec.compress(JobTracing.stampHop(traced, "bar"), 1), "baz");
+    Job job = ObjectMapperFactory.get().readValue(stamped, Job.class);
+    assertEquals("Expected two hops", 2, JobTracing.getHops(job).size());
+  }
+
+  @Test
+  public void testTraceSpans() throws Exception {
+    Job job = JobTracing.startTrace(new BeanJob("testBeanJob"));
+    long enqueuedAt = ((Number) JobVars.get(job, JobVars.ENQUEUED_AT)).longValue();
+    job = ObjectMapperFactory.get().readValue(JobTracing.stampHop(ObjectMapperFactory.get().writeValueAsBytes(job),
+        "bar"), Job.class);
+
+    JobTrace trace = new JobTrace(job, "bar", enqueuedAt + 1000, enqueuedAt + 1500, null);
+    assertEquals("Expected transport, wait, and execute spans", 3, trace.getSpans().size());
+    assertEquals("Wrong first span", "transport:bar", trace.getSpans().get(0).getName());
+    assertEquals("Wrong queued millis", 1000, trace.getQueuedMillis());
+    assertEquals("Wrong execution millis", 500, trace.getExecutionMillis());
+    assertEquals("Wrong job name", "testBeanJob", trace.getJobName());
+  }
+
+  @Test
+  public void testListenerExports() {
+    final List<JobTrace> exported = new ArrayList<JobTrace>();
+    JobTraceListener listener = new JobTraceListener(new JobTraceExporter() {
+      @Override
+      public void export(JobTrace trace) {
+        exported.add(trace);
+      }
+    });
+    Worker worker = mock(Worker.class);
+    Job traced = JobTracing.startTrace(new BeanJob("testBeanJob"));
+    Job untraced = new BeanJob("testBeanJob");
+
+    listener.onEvent(JOB_PROCESS, worker, "foo", untraced, null, null, null);
+    listener.onEvent(JOB_SUCCESS, worker, "foo", untraced, null, null, null);
+    assertTrue("Untraced jobs should not be exported", exported.isEmpty());
+
+    listener.onEvent(JOB_PROCESS, worker, "foo", traced, null, null, null);
+    listener.onEvent(JOB_SUCCESS, worker, "foo", traced, null, null, null);
+    assertEquals("Expected one trace", 1, exported.size());
+    assertEquals("Wrong queue", "foo", exported.get(0).getQueue());
+    assertNull("Job succeeded", exported.get(0).getFailure());
+  }
+}
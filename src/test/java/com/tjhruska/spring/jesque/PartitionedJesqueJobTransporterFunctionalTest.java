@@ -0,0 +1,132 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class PartitionedJesqueJobTransporterFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  PartitionedJesqueJobTransporter transporter;
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jedisPool2")
+  public JedisPool jedisPool2;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  Jedis jedis2;
+
+  @Before
+  public void setup() {
+    List<TransportPartition> partitions = new ArrayList<TransportPartition>();
+    partitions.add(new TransportPartition("local-a", jedisPool1, "partA"));
+    partitions.add(new TransportPartition("remote-b", jedisPool2, "partB"));
+    partitions.add(new TransportPartition("remote-c", jedisPool2, "partC"));
+    transporter = new PartitionedJesqueJobTransporter(jedisPool1, "foo", partitions, "resque:queue:");
+    transporter.setBeanName("testPartitionedTransporter");
+    transporter.setBatchSize(7);
+    jedis1 = jedisPool1.getResource();
+    jedis2 = jedisPool2.getResource();
+
+    jedis1.flushDB();
+    jedis2.flushDB();
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedis2.flushDB();
+
+    jedisPool1.returnBrokenResource(jedis1);
+    jedisPool2.returnBrokenResource(jedis2);
+  }
+
+  private List<Job> readQueue(Jedis jedis, String queueName) throws Exception {
+    List<Job> jobs = new ArrayList<Job>();
+    for (String payload : jedis.lrange("resque:queue:" + queueName, 0, -1)) {
+      jobs.add(ObjectMapperFactory.get().readValue(payload, Job.class));
+    }
+    return jobs;
+  }
+
+  @Test
+  public void keysStayInOrderOnTheirPartition() throws Exception {
+    for (int sequence = 0; sequence < 20; sequence++) {
+      for (int customer = 0; customer < 10; customer++) {
+        jesqueClient1.enqueue("foo", new BeanJob("testBeanJob", "customer-" + customer, sequence));
+      }
+    }
+    transporter.run();
+
+    assertEquals("Source should be empty", 0L, jedis1.llen("resque:queue:foo").longValue());
+    assertEquals("Wrong jobs moved", 200L, transporter.getJobsMoved());
+
+    Map<String, Integer> nextSequence = new HashMap<String, Integer>();
+    Map<String, String> partitionOfKey = new HashMap<String, String>();
+    List<List<Job>> queues = new ArrayList<List<Job>>();
+    queues.add(readQueue(jedis1, "partA"));
+    queues.add(readQueue(jedis2, "partB"));
+    queues.add(readQueue(jedis2, "partC"));
+    String[] names = { "local-a", "remote-b", "remote-c" };
+    int total = 0;
+    for (int i = 0; i < queues.size(); i++) {
+      for (Job job : queues.get(i)) {
+        String key = (String) job.getArgs()[1];
+        int sequence = (Integer) job.getArgs()[2];
+        Integer expected = nextSequence.containsKey(key) ? nextSequence.get(key) : 0;
+        assertEquals("Jobs for " + key + " out of order", expected.intValue(), sequence);
+        nextSequence.put(key, sequence + 1);
+        assertEquals("Wrong partition for " + key, transporter.getPartition(key).getName(), names[i]);
+        if (partitionOfKey.containsKey(key)) {
+          assertEquals("Key should stay on one partition", partitionOfKey.get(key), names[i]);
+        }
+        partitionOfKey.put(key, names[i]);
+        total++;
+      }
+    }
+    assertEquals("Jobs lost", 200, total);
+    // 29 batch takes, and at most one push per partition per batch
+    assertTrue("Too many round trips: " + transporter.getRoundTrips(), transporter.getRoundTrips() <= 29 + 29 * 3);
+  }
+
+  @Test
+  public void jobsWithoutKeyShareAPartition() throws Exception {
+    jesqueClient1.enqueue("foo", new BeanJob("testBeanJob"));
+    jesqueClient1.enqueue("foo", new Job("testJob"));
+    transporter.run();
+
+    String emptyKeyQueue = transporter.getPartition(null).getQueueName();
+    Jedis jedis = "partA".equals(emptyKeyQueue) ? jedis1 : jedis2;
+    assertEquals("Keyless jobs should share a partition", 2, readQueue(jedis, emptyKeyQueue).size());
+  }
+}
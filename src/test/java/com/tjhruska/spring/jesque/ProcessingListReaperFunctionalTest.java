@@ -0,0 +1,168 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.json.ObjectMapperFactory;
+import net.greghaines.jesque.worker.JobFactory;
+import net.greghaines.jesque.worker.Worker;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class ProcessingListReaperFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueConfig1")
+  public Config jesqueConfig1;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  WorkerWithQueueStrategy worker;
+  ProcessingListReaper reaper;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    worker = new WorkerWithQueueStrategy(jesqueConfig1, Arrays.asList("work"), new BeanJobFactory());
+    worker.setReliableDequeue(true);
+    reaper = new ProcessingListReaper(jedisPool1, "resque");
+  }
+
+  @After
+  public void teardown() {
+    worker.end(true);
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private String processingKey() {
+    return ProcessingListReaper.getProcessingKey("resque", worker.getName());
+  }
+
+  private List<String> queuedArgs() throws Exception {
+    List<String> payloads = jedis1.lrange("resque:queue:work", 0, -1);
+    String[] args = new String[payloads.size()];
+    for (int i = 0; i < payloads.size(); i++) {
+      args[i] = (String) ObjectMapperFactory.get().readValue(payloads.get(i), Job.class).getArgs()[1];
+    }
+    return Arrays.asList(args);
+  }
+
+  @Test
+  public void deadWorkerJobsRequeuedInOrder() throws Exception {
+    for (int i = 1; i <= 3; i++) {
+      jesqueClient1.enqueue("work", new BeanJob("testBeanJob", "job" + i));
+    }
+    worker.pop("work");
+    worker.pop("work");
+    assertEquals("Popped jobs should be on the processing list", 2L, jedis1.llen(processingKey()).longValue());
+    assertTrue("Worker should have a heartbeat",
+        jedis1.pttl(ProcessingListReaper.getHeartbeatKey(processingKey())) > 0);
+
+    reaper.run();
+    assertEquals("Live worker should keep its jobs", 2L, jedis1.llen(processingKey()).longValue());
+
+    jedis1.del(ProcessingListReaper.getHeartbeatKey(processingKey()));
+    reaper.run();
+    assertEquals("Jobs should be back in popped order", Arrays.asList("job1", "job2", "job3"), queuedArgs());
+    assertEquals("Processing list should be gone", 0L, jedis1.llen(processingKey()).longValue());
+    assertEquals("Registry should be empty", 0L, jedis1.hlen("resque:processingLists").longValue());
+  }
+
+  @Test
+  public void handledJobsLeaveProcessingList() throws Exception {
+    jesqueClient1.enqueue("work", new BeanJob("missingBean"));
+    jesqueClient1.enqueue("work", new BeanJob("missingBean"));
+    Thread thread = new Thread(worker);
+    thread.start();
+    for (int i = 0; i < 100 && jedis1.llen("resque:failed") < 2; i++) {
+      Thread.sleep(20);
+    }
+    assertEquals("Both jobs should have been handled", 2L, jedis1.llen("resque:failed").longValue());
+    Thread.sleep(50);
+    assertEquals("Processing list should be cleared", 0L, jedis1.llen(processingKey()).longValue());
+    worker.end(false);
+    thread.join(2000);
+  }
+
+  @Test
+  public void containerWorkersKeptAlive() {
+    JesqueContainer container = mock(JesqueContainer.class);
+    when(container.getWorkers()).thenReturn(new Worker[] { worker });
+    when(container.getWorkerThreads()).thenReturn(new Thread[] { Thread.currentThread() });
+    reaper.setJesqueContainers(Arrays.asList(container));
+
+    reaper.run();
+    assertTrue("Reaper should refresh heartbeats of local workers",
+        jedis1.pttl(ProcessingListReaper.getHeartbeatKey(processingKey())) > 0);
+  }
+
+  @Test
+  public void runningJobKeepsItsHeartbeatWithoutContainers() throws Exception {
+    worker = new WorkerWithQueueStrategy(jesqueConfig1, Arrays.asList("work"), new JobFactory() {
+      @Override
+      public Object materializeJob(Job job) throws Exception {
+        return new Runnable() {
+          @Override
+          public void run() {
+            try {
+              Thread.sleep(1500);
+            } catch (InterruptedException e) {
+              Thread.currentThread().interrupt();
+            }
+          }
+        };
+      }
+    });
+    worker.setReliableDequeue(true);
+    worker.setHeartbeatMillis(300);
+    jesqueClient1.enqueue("work", new BeanJob("slowJob"));
+    Thread thread = new Thread(worker);
+    thread.start();
+    for (int i = 0; i < 100 && jedis1.llen(processingKey()) < 1; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("Job should be running", 1L, jedis1.llen(processingKey()).longValue());
+
+    Thread.sleep(900);
+    reaper.run();
+    assertEquals("Running job should keep its processing list", 1L, jedis1.llen(processingKey()).longValue());
+    assertEquals("Running job should not be requeued", 0L, jedis1.llen("resque:queue:work").longValue());
+
+    for (int i = 0; i < 200 && jedis1.llen(processingKey()) > 0; i++) {
+      Thread.sleep(10);
+    }
+    assertEquals("Processing list should be cleared", 0L, jedis1.llen(processingKey()).longValue());
+    worker.end(false);
+    thread.join(2000);
+  }
+}
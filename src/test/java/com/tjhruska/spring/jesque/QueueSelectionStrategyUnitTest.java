@@ -0,0 +1,94 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class QueueSelectionStrategyUnitTest {
+
+  private final List<String> queues = Arrays.asList("critical", "bulk");
+
+  @Test
+  public void roundRobinRotates() {
+    QueueSelectionStrategy strategy = new RoundRobinQueueSelectionStrategy();
+    assertEquals("Wrong order", Arrays.asList("critical", "bulk"), strategy.selectQueues(queues, null, "resque"));
+    assertEquals("Wrong order", Arrays.asList("bulk", "critical"), strategy.selectQueues(queues, null, "resque"));
+    assertEquals("Wrong order", Arrays.asList("critical", "bulk"), strategy.selectQueues(queues, null, "resque"));
+  }
+
+  @Test
+  public void strictPriorityKeepsConfiguredOrder() {
+    QueueSelectionStrategy strategy = new StrictPriorityQueueSelectionStrategy();
+    for (int i = 0; i < 3; i++) {
+      assertEquals("Wrong order", queues, strategy.selectQueues(queues, null, "resque"));
+    }
+  }
+
+  @Test
+  public void weightedSpreadsFirstChoices() {
+    Map<String, Integer> weights = new HashMap<String, Integer>();
+    weights.put("critical", 3);
+    QueueSelectionStrategy strategy = new WeightedQueueSelectionStrategy(weights);
+
+    int criticalFirst = 0;
+    for (int i = 0; i < 400; i++) {
+      List<String> ordered = strategy.selectQueues(queues, null, "resque");
+      assertEquals("Every queue should be tried", 2, ordered.size());
+      if (ordered.get(0).equals("critical")) {
+        criticalFirst++;
+      }
+    }
+    assertEquals("Critical should be tried first 3 of every 4 polls", 300, criticalFirst);
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void weightedRejectsZeroWeight() {
+    Map<String, Integer> weights = new HashMap<String, Integer>();
+    weights.put("critical", 0);
+    new WeightedQueueSelectionStrategy(weights);
+  }
+
+  @Test
+  public void depthProportionalPicksByDepth() {
+    Map<String, Long> depths = new HashMap<String, Long>();
+    depths.put("critical", 10L);
+    depths.put("bulk", 90L);
+
+    assertEquals("Low roll should land on the deepest queue", Arrays.asList("bulk", "critical"),
+        DepthProportionalQueueSelectionStrategy.order(queues, depths, 0.5));
+    assertEquals("High roll should land on the shallow queue", Arrays.asList("critical", "bulk"),
+        DepthProportionalQueueSelectionStrategy.order(queues, depths, 0.95));
+  }
+
+  @Test
+  public void depthProportionalKeepsOrderWhenEmpty() {
+    Map<String, Long> depths = new HashMap<String, Long>();
+    assertEquals("Wrong order", queues, DepthProportionalQueueSelectionStrategy.order(queues, depths, 0.5));
+  }
+
+  @Test
+  public void affinityStealsOnlyFromBackloggedPeers() {
+    List<String> subscribed = Arrays.asList("overflow", "node2", "node1", "node3");
+    Map<String, Long> depths = new HashMap<String, Long>();
+    depths.put("node2", 99L);
+    depths.put("node3", 500L);
+    assertEquals("Wrong order", Arrays.asList("node1", "overflow", "node3"),
+        AffinityQueueSelectionStrategy.order(subscribed, "node1", "overflow", depths, 100L));
+
+    depths.put("node2", 1000L);
+    assertEquals("Deepest peer should be stolen from first", Arrays.asList("node1", "overflow", "node2", "node3"),
+        AffinityQueueSelectionStrategy.order(subscribed, "node1", "overflow", depths, 100L));
+  }
+
+  @Test
+  public void affinityWithoutPeers() {
+    QueueSelectionStrategy strategy = new AffinityQueueSelectionStrategy("node1", "overflow");
+    assertEquals("Wrong order", Arrays.asList("node1", "overflow"),
+        strategy.selectQueues(Arrays.asList("overflow", "node1"), null, "resque"));
+  }
+}
@@ -0,0 +1,85 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class QueueStatisticsFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  QueueStatistics queueStatistics;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    queueStatistics = new QueueStatistics(jedisPool1, "resque");
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  @Test
+  public void depthsAndMix() {
+    for (int i = 0; i < 30; i++) {
+      jesqueClient1.enqueue("foo", new BeanJob(i % 3 == 0 ? "rareJob" : "commonJob", i));
+    }
+    jesqueClient1.enqueue("bar", new Job("com.example.PlainJob"));
+    jedis1.rpush("resque:failed", "{}");
+    queueStatistics.setSampleSize(15);
+
+    QueueStatistics.Snapshot snapshot = queueStatistics.getSnapshot();
+    QueueStatistics.QueueStats foo = snapshot.getQueues().get("foo");
+    assertEquals("Wrong foo depth", 30L, foo.getDepth());
+    assertEquals("Wrong sample size", 15, foo.getSampled());
+    assertEquals("Wrong sampled rare jobs", Long.valueOf(5), foo.getSampledJobTypes().get("rareJob"));
+    assertEquals("Wrong estimated common jobs", Long.valueOf(20), foo.getEstimatedJobTypes().get("commonJob"));
+    assertEquals("Non bean jobs should count by class", Long.valueOf(1),
+        snapshot.getQueues().get("bar").getSampledJobTypes().get("com.example.PlainJob"));
+    assertEquals("Wrong failed count", 1L, snapshot.getFailedCount());
+    assertEquals("Wrong total depth", 31L, queueStatistics.getTotalDepth());
+  }
+
+  @Test
+  public void cachedUntilTtl() throws Exception {
+    jesqueClient1.enqueue("foo", new BeanJob("commonJob"));
+    queueStatistics.setTtlMillis(200L);
+    QueueStatistics.Snapshot first = queueStatistics.getSnapshot();
+    jesqueClient1.enqueue("foo", new BeanJob("commonJob"));
+    assertSame("Snapshot should be cached", first, queueStatistics.getSnapshot());
+    Thread.sleep(250L);
+    QueueStatistics.Snapshot second = queueStatistics.getSnapshot();
+    assertTrue("Snapshot should be refreshed", second != first);
+    assertEquals("Refreshed depth", 2L, second.getQueues().get("foo").getDepth());
+  }
+}
@@ -0,0 +1,146 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerEvent;
+import net.greghaines.jesque.worker.WorkerListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class RateLimitAdmissionPolicyFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueConfig1")
+  public Config jesqueConfig1;
+
+  Jedis jedis1;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private RateLimitAdmissionPolicy createPolicy() {
+    RateLimitAdmissionPolicy policy = new RateLimitAdmissionPolicy(jedisPool1, "resque");
+    policy.setPermitsPerSecond(Collections.singletonMap("testBeanJob", 10));
+    policy.setLeaseSize(4);
+    policy.setLeaseMillis(60000L);
+    return policy;
+  }
+
+  @Test
+  public void unlimitedBeansAreAdmitted() {
+    assertSame("Unlimited bean should be admitted", JobPermit.NONE,
+        createPolicy().tryAcquire("otherBeanJob", new BeanJob("otherBeanJob")));
+  }
+
+  @Test
+  public void limitIsSharedAcrossNodes() {
+    RateLimitAdmissionPolicy node1 = createPolicy();
+    RateLimitAdmissionPolicy node2 = createPolicy();
+
+    int admitted = 0;
+    for (int i = 0; i < 20; i++) {
+      RateLimitAdmissionPolicy node = (i % 2 == 0) ? node1 : node2;
+      if (node.tryAcquire("testBeanJob", new BeanJob("testBeanJob")) != null) {
+        admitted++;
+      }
+    }
+    assertEquals("Only one second worth of permits should be admitted across both nodes", 10, admitted);
+  }
+
+  @Test
+  public void permitsAreLeasedInChunks() {
+    RateLimitAdmissionPolicy policy = createPolicy();
+    for (int i = 0; i < 4; i++) {
+      policy.tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    }
+    assertEquals("Only one lease of 4 should have been taken", 6.0,
+        Double.parseDouble(jedis1.hget("resque:rateLimit:testBeanJob", "tokens")), 0.5);
+  }
+
+  @Test
+  public void throttledJobsAreDeferred() throws Exception {
+    BeanJobFactory beanJobFactory = new BeanJobFactory();
+    beanJobFactory.setAdmissionPolicies(Collections.<JobAdmissionPolicy> singletonList(createPolicy()));
+    for (int i = 0; i < 10; i++) {
+      createPolicy().tryAcquire("testBeanJob", new BeanJob("testBeanJob"));
+    }
+    Object job = beanJobFactory.materializeJob(new BeanJob("testBeanJob"));
+    assertEquals("Throttled job should be deferred", DeferredJob.class, job.getClass());
+    assertEquals("Wrong defer time", 1000L, ((DeferredJob) job).getDeferMillis());
+  }
+
+  @Test
+  public void deferredJobsAreNotCountedAsProcessed() throws Exception {
+    BeanJobFactory beanJobFactory = new BeanJobFactory();
+    beanJobFactory.setAdmissionPolicies(Collections.<JobAdmissionPolicy> singletonList(new JobAdmissionPolicy() {
+      @Override
+      public JobPermit tryAcquire(String beanId, Job job) {
+        return null;
+      }
+
+      @Override
+      public long getDeferMillis(String beanId) {
+        return 60000L;
+      }
+    }));
+    jedis1.rpush("resque:queue:testQueue", DelayedJobScheduler.toPayload(new BeanJob("testBeanJob")));
+
+    WorkerWithQueueStrategy worker = new WorkerWithQueueStrategy(jesqueConfig1, Collections.singletonList("testQueue"),
+        beanJobFactory);
+    final AtomicInteger successes = new AtomicInteger();
+    worker.getWorkerEventEmitter().addListener(new WorkerListener() {
+      @Override
+      public void onEvent(WorkerEvent event, Worker worker, String queue, Job job, Object runner, Object result,
+          Throwable t) {
+        successes.incrementAndGet();
+      }
+    }, WorkerEvent.JOB_SUCCESS);
+    Thread thread = new Thread(worker);
+    thread.start();
+    String delayedKey = DelayedJobScheduler.getDelayedQueueKey("resque", "testQueue");
+    for (int i = 0; i < 50 && jedis1.zcard(delayedKey) == 0; i++) {
+      Thread.sleep(100);
+    }
+    worker.end(true);
+    thread.join(5000);
+
+    assertEquals("Throttled job should have been deferred", 1L, jedis1.zcard(delayedKey).longValue());
+    assertNull("Deferred job should not be counted as processed", jedis1.get("resque:stat:processed"));
+    assertEquals("Deferred job should not be reported as a success", 0, successes.get());
+  }
+}
@@ -0,0 +1,176 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class RedisLeaderLeaseFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jedisPool2")
+  public JedisPool jedisPool2;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  Jedis jedis2;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis2 = jedisPool2.getResource();
+    jedis1.flushDB();
+    jedis2.flushDB();
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedis2.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+    jedisPool2.returnBrokenResource(jedis2);
+  }
+
+  private RedisLeaderLease createLease(long leaseMillis) {
+    RedisLeaderLease lease = new RedisLeaderLease(jedisPool1, "resque:leader:testTransporter");
+    lease.setLeaseMillis(leaseMillis);
+    return lease;
+  }
+
+  @Test
+  public void onlyOneLeader() {
+    RedisLeaderLease node1 = createLease(5000L);
+    RedisLeaderLease node2 = createLease(5000L);
+
+    assertEquals("First node should lead with token 1", 1L, node1.tryAcquire());
+    assertEquals("Second node should not lead", 0L, node2.tryAcquire());
+    assertEquals("Renewal should keep the token", 1L, node1.tryAcquire());
+
+    node1.release();
+    assertEquals("Released lease should be taken with a new token", 2L, node2.tryAcquire());
+  }
+
+  @Test
+  public void renewalWithoutFenceTakesNewToken() {
+    RedisLeaderLease node1 = createLease(5000L);
+    assertEquals("First node should lead with token 1", 1L, node1.tryAcquire());
+    jedis1.del(node1.getFenceKey());
+    assertEquals("Renewal should take a new token", 1L, node1.tryAcquire());
+    assertEquals("Fence should be restored", "1", jedis1.get(node1.getFenceKey()));
+  }
+
+  @Test
+  public void staleLeaderIsFenced() throws Exception {
+    RedisLeaderLease node1 = createLease(100L);
+    RedisLeaderLease node2 = createLease(100L);
+    jesqueClient1.enqueue("foo", new Job("testJob"));
+
+    long token1 = node1.tryAcquire();
+    Thread.sleep(200L);
+    assertEquals("Expired lease should fail over", 2L, node2.tryAcquire());
+    try {
+      node1.fencedLpop(jedis1, "resque:queue:foo", token1);
+      fail("Stale leader should not pop");
+    } catch (RedisLeaderLease.LeaseLostException e) {
+      assertEquals("Job should still be queued", 1L, jedis1.llen("resque:queue:foo").longValue());
+    }
+  }
+
+  @Test
+  public void onlyLeaderTransports() {
+    JesqueJobTransporter transporter1 = new JesqueJobTransporter(jedisPool1, "foo", jedisPool2, "bar",
+        "resque:queue:", 10);
+    transporter1.setLeaderLease(createLease(5000L));
+    JesqueJobTransporter transporter2 = new JesqueJobTransporter(jedisPool1, "foo", jedisPool2, "bar",
+        "resque:queue:", 10);
+    transporter2.setLeaderLease(createLease(5000L));
+    for (int i = 0; i < 15; i++) {
+      jesqueClient1.enqueue("foo", new Job("testJob"));
+    }
+
+    transporter1.run();
+    transporter2.run();
+    jedis2.del("resque:queue:bar");
+    transporter2.run();
+
+    assertTrue("First node should lead", transporter1.isLeader());
+    assertFalse("Second node should not lead", transporter2.isLeader());
+    assertEquals("Second node should skip its runs", 2L, transporter2.getRunsSkippedNotLeader());
+    assertEquals("Only the leader should move jobs", 10L, transporter1.getJobsMoved() + transporter2.getJobsMoved());
+  }
+
+  @Test
+  public void staleLeaderCannotTake() throws Exception {
+    RedisLeaderLease node1 = createLease(100L);
+    RedisLeaderLease node2 = createLease(100L);
+    for (int i = 0; i < 3; i++) {
+      jesqueClient1.enqueue("foo", new Job("testJob"));
+    }
+
+    long token1 = node1.tryAcquire();
+    assertEquals("Leader should take from the head", 2, node1.fencedTake(jedis1, "resque:queue:foo", 2, token1)
+        .size());
+    Thread.sleep(200L);
+    long token2 = node2.tryAcquire();
+    try {
+      node1.fencedTake(jedis1, "resque:queue:foo", 2, token1);
+      fail("Stale leader should not take");
+    } catch (RedisLeaderLease.LeaseLostException e) {
+      assertEquals("Job should still be queued", 1L, jedis1.llen("resque:queue:foo").longValue());
+    }
+    assertEquals("New leader should take the rest", 1, node2.fencedTake(jedis1, "resque:queue:foo", 2, token2)
+        .size());
+  }
+
+  @Test
+  public void onlyLeaderPartitions() {
+    List<TransportPartition> partitions = Arrays.asList(new TransportPartition("a", jedisPool2, "partA"),
+        new TransportPartition("b", jedisPool2, "partB"));
+    PartitionedJesqueJobTransporter transporter1 = new PartitionedJesqueJobTransporter(jedisPool1, "foo", partitions,
+        "resque:queue:");
+    transporter1.setLeaderLease(createLease(5000L));
+    PartitionedJesqueJobTransporter transporter2 = new PartitionedJesqueJobTransporter(jedisPool1, "foo", partitions,
+        "resque:queue:");
+    transporter2.setLeaderLease(createLease(5000L));
+    for (int i = 0; i < 15; i++) {
+      jesqueClient1.enqueue("foo", new BeanJob("testBeanJob", "customer" + i));
+    }
+
+    transporter1.run();
+    transporter2.run();
+
+    assertTrue("First node should lead", transporter1.isLeader());
+    assertFalse("Second node should not lead", transporter2.isLeader());
+    assertEquals("Second node should skip its run", 1L, transporter2.getRunsSkippedNotLeader());
+    assertEquals("Leader should move every job", 15L, transporter1.getJobsMoved());
+    assertEquals("Source should be empty", 0L, jedis1.llen("resque:queue:foo").longValue());
+  }
+}
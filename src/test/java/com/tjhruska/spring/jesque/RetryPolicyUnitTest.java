@@ -0,0 +1,75 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Collections;
+
+import net.greghaines.jesque.Job;
+
+import org.junit.Before;
+import org.junit.Test;
+
+import com.tjhruska.spring.jesque.testJobs.TestJobJobFactory;
+
+public class RetryPolicyUnitTest {
+
+  private RetryPolicy retryPolicy;
+
+  @Before
+  public void setup() {
+    retryPolicy = new RetryPolicy();
+    retryPolicy.setInitialDelayMillis(1000L);
+    retryPolicy.setMultiplier(2.0);
+    retryPolicy.setMaxDelayMillis(5000L);
+    retryPolicy.setJitter(0.5);
+  }
+
+  @Test
+  public void backoffGrowsAndIsCapped() {
+    assertEquals("Wrong first delay", 1000L, retryPolicy.getDelayMillis(1, 0.0));
+    assertEquals("Wrong second delay", 2000L, retryPolicy.getDelayMillis(2, 0.0));
+    assertEquals("Wrong third delay", 4000L, retryPolicy.getDelayMillis(3, 0.0));
+    assertEquals("Delay should be capped", 5000L, retryPolicy.getDelayMillis(10, 0.0));
+  }
+
+  @Test
+  public void jitterShortensDelay() {
+    assertEquals("Full jitter should halve the delay", 1000L, retryPolicy.getDelayMillis(2, 1.0));
+    long delay = retryPolicy.getDelayMillis(2, 0.3);
+    assertTrue("Jittered delay out of range: " + delay, delay > 1000L && delay < 2000L);
+    retryPolicy.setJitter(0.0);
+    assertEquals("No jitter should give fixed delays", 2000L, retryPolicy.getDelayMillis(2, 0.9));
+  }
+
+  @Test
+  public void attemptsCounted() {
+    retryPolicy.setMaxAttempts(3);
+    BeanJobFactory beanJobFactory = new BeanJobFactory();
+    beanJobFactory.setRetryPolicies(Collections.singletonMap("flaky", retryPolicy));
+
+    Job job = new BeanJob("flaky", "arg");
+    RetryPolicy.Retry retry = RetryPolicy.nextAttempt(beanJobFactory, job);
+    assertNotNull("First failure should be retried", retry);
+    assertEquals("Wrong attempt", 1, RetryPolicy.getAttempt(retry.job));
+    assertTrue("Wrong delay: " + retry.delayMillis, retry.delayMillis >= 500L && retry.delayMillis <= 1000L);
+    assertEquals("Args should be kept", "arg", retry.job.getArgs()[1]);
+
+    retry = RetryPolicy.nextAttempt(beanJobFactory, retry.job);
+    assertNotNull("Second failure should be retried", retry);
+    assertFalse("Third failure is the last attempt", retryPolicy.shouldRetry(retry.job));
+    assertNull("Third failure should not be retried", RetryPolicy.nextAttempt(beanJobFactory, retry.job));
+
+    assertNull("Beans without a policy are not retried",
+        RetryPolicy.nextAttempt(beanJobFactory, new BeanJob("steady")));
+    assertNull("Other job factories are not retried", RetryPolicy.nextAttempt(new TestJobJobFactory(), job));
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void jitterMustBeAFraction() {
+    retryPolicy.setJitter(1.5);
+  }
+}
@@ -7,7 +7,11 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.verify;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -50,9 +54,65 @@ public class SpringConfiguredJesqueServerUnitTest {
     springConfiguredJesqueServer.destroy();
     verify(mockContainer1).stop(false);
     verify(mockContainer2).stop(false);
+    // the server thread joins the containers after it sees the shutdown
+    springConfiguredJesqueServer.join(1000);
     verify(mockContainer1).join(0);
     verify(mockContainer2).join(0);
     assertTrue("Shutdown was false", springConfiguredJesqueServer.isShutdown());
     assertFalse("Thread alive", springConfiguredJesqueServer.isAlive());
   }
+
+  @Test
+  public void testServerTasks() throws Exception {
+    final AtomicInteger runCount = new AtomicInteger();
+    JesqueServerTask failingTask = new JesqueServerTask() {
+      @Override
+      public void run() {
+        if (runCount.incrementAndGet() == 1) {
+          throw new RuntimeException("task failures should not stop later runs");
+        }
+      }
+
+      @Override
+      public long getIntervalMillis() {
+        return 1;
+      }
+    };
+    springConfiguredJesqueServer.setServerTasks(Collections.singletonList(failingTask));
+    springConfiguredJesqueServer.afterPropertiesSet();
+    Thread.sleep(50);
+    assertTrue("Server task should have run more than once", runCount.get() > 1);
+
+    springConfiguredJesqueServer.destroy();
+    Thread.sleep(20);
+    int stoppedCount = runCount.get();
+    Thread.sleep(20);
+    assertTrue("Server task should stop with the server", runCount.get() == stoppedCount);
+  }
+
+  @Test
+  public void testLifecycle() throws Exception {
+    springConfiguredJesqueServer.setStartOnInit(false);
+    springConfiguredJesqueServer.afterPropertiesSet();
+    JesqueServerLifecycle lifecycle = new JesqueServerLifecycle(springConfiguredJesqueServer);
+    assertFalse("Server should wait for the lifecycle", springConfiguredJesqueServer.isAlive());
+    assertFalse("Lifecycle should not be running", lifecycle.isRunning());
+
+    lifecycle.start();
+    Thread.sleep(50);
+    verify(mockContainer1, atLeastOnce()).checkWorkers();
+    assertTrue("Lifecycle should be running", lifecycle.isRunning());
+
+    final CountDownLatch stopped = new CountDownLatch(1);
+    lifecycle.stop(new Runnable() {
+      @Override
+      public void run() {
+        stopped.countDown();
+      }
+    });
+    assertTrue("Stop callback should run", stopped.await(1, TimeUnit.SECONDS));
+    verify(mockContainer1).join(0);
+    assertFalse("Thread alive", springConfiguredJesqueServer.isAlive());
+    assertFalse("Lifecycle should not be running", lifecycle.isRunning());
+  }
 }
@@ -0,0 +1,158 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.worker.Worker;
+import net.greghaines.jesque.worker.WorkerEvent;
+import net.greghaines.jesque.worker.WorkerListener;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.context.support.StaticApplicationContext;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+import com.tjhruska.spring.jesque.testJobs.TestBatchBeanJob;
+import com.tjhruska.spring.jesque.testJobs.TestBeanJob;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class WorkerBatchingFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueConfig1")
+  public Config jesqueConfig1;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  BeanJobFactory beanJobFactory;
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    TestBatchBeanJob.batchSizes.clear();
+
+    StaticApplicationContext context = new StaticApplicationContext();
+    context.registerPrototype("testBatchBeanJob", TestBatchBeanJob.class);
+    context.registerPrototype("testBeanJob", TestBeanJob.class);
+    beanJobFactory = new BeanJobFactory();
+    beanJobFactory.setApplicationContext(context);
+  }
+
+  @After
+  public void teardown() {
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private void enqueue(String... items) {
+    for (String item : items) {
+      jesqueClient1.enqueue("batch", "single".equals(item) ? new BeanJob("testBeanJob") : new BeanJob(
+          "testBatchBeanJob", item));
+    }
+  }
+
+  /**
+   * Run a batching worker until it reported expectedEvents job successes and failures.
+   * @return one "EVENT item" entry per job, in the order the worker reported them
+   */
+  private List<String> runWorker(int maxBatchSize, long maxBatchWaitMillis, int expectedEvents)
+      throws InterruptedException {
+    final List<String> events = Collections.synchronizedList(new ArrayList<String>());
+    WorkerBatching worker = new WorkerBatching(jesqueConfig1, Arrays.asList("batch"), beanJobFactory, maxBatchSize,
+        maxBatchWaitMillis);
+    worker.getWorkerEventEmitter().addListener(new WorkerListener() {
+      @Override
+      public void onEvent(WorkerEvent event, Worker worker, String queue, Job job, Object runner, Object result,
+          Throwable t) {
+        Object[] args = job.getArgs();
+        events.add(event + " " + (args.length > 1 ? args[1] : "single"));
+      }
+    }, WorkerEvent.JOB_SUCCESS, WorkerEvent.JOB_FAILURE);
+    Thread thread = new Thread(worker);
+    thread.start();
+    for (int i = 0; i < 300 && events.size() < expectedEvents; i++) {
+      Thread.sleep(10);
+    }
+    worker.end(true);
+    thread.join(5000);
+    return new ArrayList<String>(events);
+  }
+
+  @Test
+  public void drainsUpToMaxBatchSize() throws Exception {
+    enqueue("ok1", "ok2", "ok3", "ok4", "ok5");
+    List<String> events = runWorker(2, 200, 5);
+
+    assertEquals("Wrong batches", Arrays.asList(2, 2, 1), TestBatchBeanJob.batchSizes);
+    assertEquals("Every item should succeed in order", Arrays.asList("JOB_SUCCESS ok1", "JOB_SUCCESS ok2",
+        "JOB_SUCCESS ok3", "JOB_SUCCESS ok4", "JOB_SUCCESS ok5"), events);
+  }
+
+  @Test
+  public void stopsCollectingAtMaxBatchWait() throws Exception {
+    enqueue("ok1", "ok2");
+    long start = System.currentTimeMillis();
+    List<String> events = runWorker(10, 300, 2);
+
+    assertEquals("Short batch should run once the wait is over", Arrays.asList(2), TestBatchBeanJob.batchSizes);
+    assertEquals("Both items should succeed", 2, events.size());
+    assertTrue("Batch should have waited for more jobs", System.currentTimeMillis() - start >= 300);
+  }
+
+  @Test
+  public void stopsAtJobForAnotherBean() throws Exception {
+    enqueue("ok1", "ok2", "single", "ok3");
+    List<String> events = runWorker(10, 200, 4);
+
+    assertEquals("Other bean should split the batches", Arrays.asList(2, 1), TestBatchBeanJob.batchSizes);
+    assertEquals("Other bean's job should run between the batches", Arrays.asList("JOB_SUCCESS ok1",
+        "JOB_SUCCESS ok2", "JOB_SUCCESS single", "JOB_SUCCESS ok3"), events);
+  }
+
+  @Test
+  public void reportedItemFailuresFailOnlyThoseJobs() throws Exception {
+    enqueue("ok1", "fail", "ok2");
+    List<String> events = runWorker(10, 100, 3);
+
+    assertEquals("Wrong batches", Arrays.asList(3), TestBatchBeanJob.batchSizes);
+    assertEquals("Only the reported item should fail", Arrays.asList("JOB_SUCCESS ok1", "JOB_FAILURE fail",
+        "JOB_SUCCESS ok2"), events);
+    assertEquals("Failure should be recorded", 1L, jedis1.llen("resque:failed").longValue());
+  }
+
+  @Test
+  public void throwingBatchFailsEveryItem() throws Exception {
+    enqueue("ok1", "boom", "ok2");
+    List<String> events = runWorker(10, 100, 3);
+
+    assertEquals("Every item should fail", Arrays.asList("JOB_FAILURE ok1", "JOB_FAILURE boom",
+        "JOB_FAILURE ok2"), events);
+    assertEquals("Failures should be recorded", 3L, jedis1.llen("resque:failed").longValue());
+  }
+}
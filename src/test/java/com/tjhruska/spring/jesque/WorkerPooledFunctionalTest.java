@@ -0,0 +1,140 @@
+package com.tjhruska.spring.jesque;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.annotation.Resource;
+
+import net.greghaines.jesque.Config;
+import net.greghaines.jesque.ConfigBuilder;
+import net.greghaines.jesque.Job;
+import net.greghaines.jesque.client.Client;
+import net.greghaines.jesque.worker.JobFactory;
+
+import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.test.context.ContextConfiguration;
+import org.springframework.test.context.junit4.SpringJUnit4ClassRunner;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+
+@RunWith(SpringJUnit4ClassRunner.class)
+@ContextConfiguration("JesqueJobTransporterFunctionalTest-context.xml")
+public class WorkerPooledFunctionalTest {
+
+  /*
+   * THIS TEST WILL FLUSH THE REDIS DB!
+   */
+
+  @Resource(name = "jedisPool1")
+  public JedisPool jedisPool1;
+
+  @Resource(name = "jesqueClient1")
+  public Client jesqueClient1;
+
+  Jedis jedis1;
+  JedisPool workerPool;
+  JesqueContainer container;
+  final AtomicInteger runs = new AtomicInteger();
+  final AtomicInteger maxClients = new AtomicInteger();
+
+  @Before
+  public void setup() {
+    jedis1 = jedisPool1.getResource();
+    jedis1.flushDB();
+    GenericObjectPoolConfig poolConfig = new GenericObjectPoolConfig();
+    poolConfig.setMaxTotal(2);
+    workerPool = new JedisPool(poolConfig, "localhost", 6379);
+  }
+
+  @After
+  public void teardown() throws InterruptedException {
+    if (container != null) {
+      container.stop(true);
+      container.join(1000);
+    }
+    workerPool.destroy();
+    jedis1.flushDB();
+    jedisPool1.returnBrokenResource(jedis1);
+  }
+
+  private int clientCount() {
+    return jedis1.clientList().split("\n").length;
+  }
+
+  @Test
+  public void workersShareCappedPool() throws Exception {
+    for (int i = 0; i < 30; i++) {
+      jesqueClient1.enqueue("pooled", new Job("ok"));
+    }
+    jesqueClient1.enqueue("pooled", new Job("fail"));
+    int baseline = clientCount();
+    Config config = ConfigBuilder.getDefaultConfig();
+    WorkerPooledFactory factory = new WorkerPooledFactory(config, Arrays.asList("pooled"), new JobFactory() {
+      @Override
+      public Object materializeJob(final Job job) throws Exception {
+        return new Runnable() {
+          @Override
+          public void run() {
+            if ("fail".equals(job.getClassName())) {
+              throw new RuntimeException("boom");
+            }
+            try {
+              Thread.sleep(20);
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            runs.incrementAndGet();
+          }
+        };
+      }
+    });
+    container = new JesqueContainer(factory, 6);
+    container.setJedisPool(workerPool);
+    container.checkWorkers();
+
+    for (int i = 0; i < 200 && (runs.get() < 30 || jedis1.llen("resque:failed") < 1); i++) {
+      maxClients.set(Math.max(maxClients.get(), clientCount() - baseline));
+      Thread.sleep(10);
+    }
+    assertEquals("Wrong jobs run", 30, runs.get());
+    assertEquals("Failure should be recorded", 1L, jedis1.llen("resque:failed").longValue());
+    assertEquals("Wrong processed stat", "30", jedis1.get("resque:stat:processed"));
+    assertTrue("Container should not exceed its pool, saw " + maxClients.get(), maxClients.get() <= 2);
+    assertEquals("Workers should be registered", 6L, jedis1.scard("resque:workers").longValue());
+
+    container.stop(false);
+    container.join(2000);
+    assertEquals("Workers should unregister", 0L, jedis1.scard("resque:workers").longValue());
+  }
+
+  @Test
+  public void exitsOnEmptyWithoutOwnConnection() throws Exception {
+    WorkerPooled worker = new WorkerPooled(ConfigBuilder.getDefaultConfig(), Arrays.asList("pooled"),
+        new JobFactory() {
+          @Override
+          public Object materializeJob(final Job job) throws Exception {
+            return new Runnable() {
+              @Override
+              public void run() {
+                runs.incrementAndGet();
+              }
+            };
+          }
+        }, workerPool);
+    worker.setMaxLoopsOnEmptyQueues(2);
+    jesqueClient1.enqueue("pooled", new Job("ok"));
+    Thread thread = new Thread(worker);
+    thread.start();
+    thread.join(5000);
+    assertTrue("Worker should have exited", !thread.isAlive());
+    assertEquals("Job should have run", 1, runs.get());
+  }
+}
@@ -0,0 +1,44 @@
+package com.tjhruska.spring.jesque.testJobs;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.tjhruska.spring.jesque.RunnableWithBatchInit;
+
+public class TestBatchBeanJob implements RunnableWithBatchInit {
+  private static final Logger log = LoggerFactory.getLogger(TestBatchBeanJob.class);
+
+  public static final List<Integer> batchSizes = Collections.synchronizedList(new ArrayList<Integer>());
+
+  public List<Object[]> batchArgs;
+  public Map<Integer, Throwable> failures = new HashMap<Integer, Throwable>();
+
+  public void run() {
+    log.info("TestBatchBeanJob run called with {} items.", batchArgs.size());
+    batchSizes.add(batchArgs.size());
+    for (int i = 0; i < batchArgs.size(); i++) {
+      if (batchArgs.get(i).length > 0 && "fail".equals(batchArgs.get(i)[0])) {
+        failures.put(i, new RuntimeException("item " + i + " failed"));
+      }
+      if (batchArgs.get(i).length > 0 && "boom".equals(batchArgs.get(i)[0])) {
+        throw new IllegalStateException("batch failed on item " + i);
+      }
+    }
+  }
+
+  @Override
+  public void initBatch(List<Object[]> batchArgs) {
+    this.batchArgs = batchArgs;
+  }
+
+  @Override
+  public Map<Integer, Throwable> getFailures() {
+    return failures;
+  }
+}
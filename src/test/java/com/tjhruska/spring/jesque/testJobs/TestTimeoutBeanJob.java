@@ -0,0 +1,17 @@
+package com.tjhruska.spring.jesque.testJobs;
+
+import com.tjhruska.spring.jesque.JobTimeout;
+
+@JobTimeout(50)
+public class TestTimeoutBeanJob implements Runnable {
+
+  public static volatile long sleepMillis = 0;
+
+  public void run() {
+    try {
+      Thread.sleep(sleepMillis);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}